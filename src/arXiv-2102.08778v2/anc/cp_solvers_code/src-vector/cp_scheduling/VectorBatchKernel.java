@@ -0,0 +1,78 @@
+package cp_scheduling;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Step of BatchEvaluator with the Vector API: the lanes are processed a
+ * vector at a time, the ready times and next operations being gathered and
+ * scattered through index vectors. Needs --add-modules jdk.incubator.vector
+ * to compile and run, which is why it lives outside src, see BatchEvaluator
+ * for the build; BatchEvaluator falls back to its scalar kernel when this
+ * class cannot be loaded.
+ */
+class VectorBatchKernel implements BatchEvaluator.Kernel {
+
+	static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+	final JobShopInstance instance;
+	final int lanes;
+	final int[] next, jobReady, machineReady;
+	final int[] laneIds;
+	// index maps of one vector
+	final int[] jobIndex, machineIndex, operations;
+
+	VectorBatchKernel(JobShopInstance instance, int lanes) {
+		this.instance = instance;
+		int length = SPECIES.length();
+		this.lanes = (lanes + length - 1) / length * length;
+		this.next = new int[instance.nJobs * this.lanes];
+		this.jobReady = new int[instance.nJobs * this.lanes];
+		this.machineReady = new int[instance.nMachines * this.lanes];
+		this.laneIds = new int[this.lanes];
+		for (int c = 0; c < this.lanes; c++)
+			laneIds[c] = c;
+		this.jobIndex = new int[length];
+		this.machineIndex = new int[length];
+		this.operations = new int[length];
+	}
+
+	public int lanes() {
+		return lanes;
+	}
+
+	public String name() {
+		return "vector" + SPECIES.length();
+	}
+
+	public void decode(int[] genes, int[] makespans) {
+		int k = lanes;
+		int length = SPECIES.length();
+		for (int i = 0; i < instance.nJobs; i++)
+			Arrays.fill(next, i * k, (i + 1) * k, instance.jobStart[i]);
+		Arrays.fill(jobReady, 0);
+		Arrays.fill(machineReady, 0);
+		Arrays.fill(makespans, 0, k, 0);
+		int[] machine = instance.machine, duration = instance.duration;
+		for (int c = 0; c < k; c += length) {
+			IntVector ids = IntVector.fromArray(SPECIES, laneIds, c);
+			IntVector makespan = IntVector.zero(SPECIES);
+			for (int p = 0, base = c; p < instance.nOps; p++, base += k) {
+				IntVector.fromArray(SPECIES, genes, base).mul(k).add(ids).intoArray(jobIndex, 0);
+				IntVector o = IntVector.fromArray(SPECIES, next, 0, jobIndex, 0);
+				o.add(1).intoArray(next, 0, jobIndex, 0);
+				o.intoArray(operations, 0);
+				IntVector.fromArray(SPECIES, machine, 0, operations, 0).mul(k).add(ids).intoArray(machineIndex, 0);
+				IntVector end = IntVector.fromArray(SPECIES, jobReady, 0, jobIndex, 0)
+						.max(IntVector.fromArray(SPECIES, machineReady, 0, machineIndex, 0))
+						.add(IntVector.fromArray(SPECIES, duration, 0, operations, 0));
+				end.intoArray(jobReady, 0, jobIndex, 0);
+				end.intoArray(machineReady, 0, machineIndex, 0);
+				makespan = makespan.max(end);
+			}
+			makespan.intoArray(makespans, c);
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/*
+ * Makespans of many operation-based chromosomes (job ids, the k-th
+ * occurrence of job i standing for its k-th operation) decoded as
+ * semi-active schedules, several at once. The chromosomes of a batch are
+ * laid out across lanes: gene p of lane c at p * lanes + c, and the ready
+ * time of job i (machine m) of lane c at i * lanes + c, so one step of the
+ * decoding reads and writes the same position of every lane and distinct
+ * lanes never share an index.
+ *
+ * The step runs on a Kernel: VectorBatchKernel with jdk.incubator.vector
+ * when the JVM has the module and the class, or else the scalar loop over
+ * the lanes below. batch_vector=off forces the scalar kernel. An evaluator
+ * holds its scratch arrays, one per thread.
+ *
+ * VectorBatchKernel is kept apart in src-vector, so that src compiles with a
+ * plain javac. It needs JDK 16 or later, compiled after src with
+ *   javac --add-modules jdk.incubator.vector -cp <classes> -d <classes> src-vector/cp_scheduling/VectorBatchKernel.java
+ * and the JVM run with --add-modules jdk.incubator.vector.
+ *
+ * The schedules are semi-active, not the active ones of the
+ * Giffler-Thompson decoder of IslandSearch, whose genetic algorithm islands
+ * evaluate their offspring in batches here with island_decoder=semiactive.
+ */
+public class BatchEvaluator {
+
+	/* decodes lanes chromosomes laid out in genes and writes their makespans */
+	interface Kernel {
+		void decode(int[] genes, int[] makespans);
+
+		/* chromosomes decoded at once, the vector kernel rounds the requested number up to a multiple of its length */
+		int lanes();
+
+		String name();
+	}
+
+	final JobShopInstance instance;
+	final Kernel kernel;
+	final int lanes;
+	private final int[] genes;
+	private final int[] makespans;
+
+	BatchEvaluator(JobShopInstance instance, int lanes, boolean vector) {
+		this.instance = instance;
+		Kernel k = vector ? vectorKernel(instance, lanes) : null;
+		this.kernel = k != null ? k : new ScalarKernel(instance, lanes);
+		this.lanes = kernel.lanes();
+		this.genes = new int[instance.nOps * this.lanes];
+		this.makespans = new int[this.lanes];
+	}
+
+	/* lanes is rounded up to a multiple of the vector length by the vector kernel */
+	public static BatchEvaluator create(JobShopInstance instance, int lanes) {
+		return new BatchEvaluator(instance, lanes, !Main.option("batch_vector", "on").equals("off"));
+	}
+
+	/* the vector kernel, null when the class or the incubator module is missing; any other failure is thrown */
+	static Kernel vectorKernel(JobShopInstance instance, int lanes) {
+		try {
+			return (Kernel) Class.forName("cp_scheduling.VectorBatchKernel").getDeclaredConstructor(JobShopInstance.class, int.class).newInstance(instance,
+					lanes);
+		} catch (ClassNotFoundException | LinkageError e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			// the module classes are resolved when the constructor first uses them
+			if (e.getCause() instanceof LinkageError)
+				return null;
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("VectorBatchKernel cannot be instantiated", e);
+		}
+	}
+
+	/* Makespans of chromosomes[from..from + count), in batches of lanes chromosomes. */
+	public void evaluate(int[][] chromosomes, int from, int count, long[] out) {
+		int n = instance.nOps;
+		for (int batch = from; batch < from + count; batch += lanes) {
+			int size = Math.min(lanes, from + count - batch);
+			// transposed by blocks of positions, so that the lanes written stay in cache
+			for (int block = 0; block < n; block += 64)
+				for (int c = 0; c < lanes; c++) {
+					// idle lanes decode a copy of the first chromosome
+					int[] chromosome = chromosomes[batch + (c < size ? c : 0)];
+					for (int p = block, end = Math.min(n, block + 64); p < end; p++)
+						genes[p * lanes + c] = chromosome[p];
+				}
+			kernel.decode(genes, makespans);
+			for (int c = 0; c < size; c++)
+				out[batch - from + c] = makespans[c];
+		}
+	}
+
+	/*
+	 * Makespans of the lanes chromosomes already laid out in genes (gene p of
+	 * lane c at p * lanes + c), for searches that build their candidates in
+	 * place and save the transposition.
+	 */
+	public void evaluateLanes(int[] genes, int[] makespans) {
+		kernel.decode(genes, makespans);
+	}
+
+	/* one chromosome at a time, the reference of the benchmark */
+	static long decode(JobShopInstance instance, int[] chromosome, int[] next, long[] jobReady, long[] machineReady) {
+		for (int i = 0; i < instance.nJobs; i++) {
+			next[i] = instance.jobStart[i];
+			jobReady[i] = 0;
+		}
+		Arrays.fill(machineReady, 0);
+		long makespan = 0;
+		for (int j : chromosome) {
+			int o = next[j]++;
+			int m = instance.machine[o];
+			long end = Math.max(jobReady[j], machineReady[m]) + instance.duration[o];
+			jobReady[j] = end;
+			machineReady[m] = end;
+			makespan = Math.max(makespan, end);
+		}
+		return makespan;
+	}
+
+	/* the step as a loop over the lanes, in ints like the vector kernel */
+	static class ScalarKernel implements Kernel {
+
+		final JobShopInstance instance;
+		final int lanes;
+		final int[] next, jobReady, machineReady;
+
+		ScalarKernel(JobShopInstance instance, int lanes) {
+			this.instance = instance;
+			this.lanes = lanes;
+			this.next = new int[instance.nJobs * lanes];
+			this.jobReady = new int[instance.nJobs * lanes];
+			this.machineReady = new int[instance.nMachines * lanes];
+		}
+
+		public int lanes() {
+			return lanes;
+		}
+
+		public String name() {
+			return "lanes";
+		}
+
+		public void decode(int[] genes, int[] makespans) {
+			int k = lanes;
+			for (int i = 0; i < instance.nJobs; i++)
+				for (int c = 0; c < k; c++)
+					next[i * k + c] = instance.jobStart[i];
+			Arrays.fill(jobReady, 0);
+			Arrays.fill(machineReady, 0);
+			Arrays.fill(makespans, 0, k, 0);
+			int[] machine = instance.machine, duration = instance.duration;
+			for (int p = 0, base = 0; p < instance.nOps; p++, base += k)
+				for (int c = 0; c < k; c++) {
+					int ji = genes[base + c] * k + c;
+					int o = next[ji]++;
+					int mi = machine[o] * k + c;
+					int end = Math.max(jobReady[ji], machineReady[mi]) + duration[o];
+					jobReady[ji] = end;
+					machineReady[mi] = end;
+					if (end > makespans[c])
+						makespans[c] = end;
+				}
+		}
+	}
+
+	static final String COLUMNS = "instance;jobs;machines;lanes;kernel;schedules_per_s;speedup";
+
+	/*
+	 * Schedules per second of the one-at-a-time decoding and of the scalar and
+	 * vector kernels, on Taillard-like instances of batch_sizes (jobs x
+	 * machines, 100x100,1000x100) with batch_count (1024) random chromosomes
+	 * in batches of batch_lanes (16), each measured for batch_time_s (timeout)
+	 * seconds after a warm-up. The makespans of the kernels are checked
+	 * against the reference.
+	 */
+	public static void benchmark(String foldername, int timeout) throws Exception {
+		String instanceDir = Main.RESULTS_PATH + "scaling/instances/";
+		new File(instanceDir).mkdirs();
+		String outFile = "Batch_" + foldername + ".csv";
+		int lanes = Integer.parseInt(Main.option("batch_lanes", "16"));
+		int count = Integer.parseInt(Main.option("batch_count", "1024"));
+		double seconds = Double.parseDouble(Main.option("batch_time_s", Integer.toString(timeout)));
+		System.out.println("Batch makespan evaluation\noutput= " + outFile + "\nlanes= " + lanes + "\nseconds= " + seconds);
+		PrintWriter csv = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		csv.println(COLUMNS);
+		for (String size : Main.option("batch_sizes", "100x100,1000x100").split(",")) {
+			String[] jm = size.split("x");
+			String name = ScalingBenchmark.instance(instanceDir, "taillard", Integer.parseInt(jm[0]), Integer.parseInt(jm[1]), 1);
+			JobShopInstance instance = JobShopInstance.read(0, instanceDir, name);
+			IslandSearch search = new IslandSearch(instance, 1, 1);
+			SplittableRandom random = new SplittableRandom(1);
+			int[][] chromosomes = new int[count][];
+			for (int k = 0; k < count; k++)
+				chromosomes[k] = search.randomChromosome(random);
+
+			long[] reference = new long[count];
+			int[] next = new int[instance.nJobs];
+			long[] jobReady = new long[instance.nJobs], machineReady = new long[instance.nMachines];
+			double scalar = rate(seconds, count, () -> {
+				for (int k = 0; k < count; k++)
+					reference[k] = decode(instance, chromosomes[k], next, jobReady, machineReady);
+			});
+			csv.println(name + ";" + instance.nJobs + ";" + instance.nMachines + ";1;scalar;" + scalar + ";1.0");
+			for (boolean vector : new boolean[] { false, true }) {
+				BatchEvaluator evaluator = new BatchEvaluator(instance, lanes, vector);
+				if (vector && evaluator.kernel instanceof ScalarKernel) {
+					System.out.println("No vector kernel in this JVM, run with --add-modules jdk.incubator.vector");
+					continue;
+				}
+				long[] makespans = new long[count];
+				double rate = rate(seconds, count, () -> evaluator.evaluate(chromosomes, 0, count, makespans));
+				for (int k = 0; k < count; k++)
+					if (makespans[k] != reference[k])
+						throw new IllegalStateException(evaluator.kernel.name() + " kernel makespan " + makespans[k] + " instead of " + reference[k]);
+				csv.println(name + ";" + instance.nJobs + ";" + instance.nMachines + ";" + evaluator.lanes + ";" + evaluator.kernel.name() + ";" + rate + ";"
+						+ rate / scalar);
+			}
+			csv.flush();
+		}
+		csv.close();
+	}
+
+	/* schedules per second of pass, which decodes count schedules, after one pass of warm-up */
+	private static double rate(double seconds, int count, Runnable pass) {
+		pass.run();
+		long start = System.nanoTime();
+		long deadline = start + (long) (seconds * 1e9);
+		long passes = 0;
+		do {
+			pass.run();
+			passes++;
+		} while (System.nanoTime() < deadline);
+		double rate = passes * count / ((System.nanoTime() - start) / 1e9);
+		System.out.println(count + " schedules x " + passes + ": " + Math.round(rate) + " schedules/s");
+		return rate;
+	}
+}
@@ -0,0 +1,714 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+/*
+ * Exact job shop solver in pure Java, for machines without OR-Tools or CP
+ * Optimizer. The domain of operation o is its earliest start est[o] and
+ * latest completion lct[o]; precedences propagate along the jobs, and every
+ * machine is a disjunctive resource propagated with Theta-trees (Vilim):
+ * overload checking and edge-finding on a Theta-Lambda tree, detectable
+ * precedences and not-first/not-last, each run on the machine and on its
+ * mirror image (times negated) to update both bounds.
+ *
+ * The search is schedule-or-postpone (SetTimes): the unscheduled operation
+ * with the smallest earliest start is either started at it, or postponed
+ * until its earliest start increases. Every solution lowers the makespan
+ * bound put on all latest completions. Bound changes are recorded on a
+ * trail of primitive arrays and undone on backtrack.
+ *
+ * check compares the optimum proved by the search with exhaustive search
+ * over the active schedules of small random instances.
+ */
+public class BranchAndBound {
+
+	static final long NONE = Long.MIN_VALUE / 4;
+
+	/*
+	 * Balanced binary tree over the operations of a machine sorted by earliest
+	 * start, each leaf white (in Theta), gray (in Lambda) or empty. A node
+	 * keeps the processing time and earliest completion of its white leaves,
+	 * and the same values when one gray leaf may be added, with the gray leaf
+	 * responsible for them.
+	 */
+	static final class ThetaLambdaTree {
+		int size;
+		long[] sum = new long[2], ect = new long[2], sumBar = new long[2], ectBar = new long[2];
+		int[] respSum = new int[2], respEct = new int[2];
+
+		void reset(int k) {
+			size = 1;
+			while (size < k)
+				size <<= 1;
+			if (sum.length < 2 * size) {
+				sum = new long[2 * size];
+				ect = new long[2 * size];
+				sumBar = new long[2 * size];
+				ectBar = new long[2 * size];
+				respSum = new int[2 * size];
+				respEct = new int[2 * size];
+			}
+			Arrays.fill(sum, 0, 2 * size, 0);
+			Arrays.fill(ect, 0, 2 * size, NONE);
+			Arrays.fill(sumBar, 0, 2 * size, 0);
+			Arrays.fill(ectBar, 0, 2 * size, NONE);
+			Arrays.fill(respSum, 0, 2 * size, -1);
+			Arrays.fill(respEct, 0, 2 * size, -1);
+		}
+
+		void white(int leaf, long est, long p) {
+			set(leaf, p, est + p, p, est + p, -1);
+		}
+
+		void gray(int leaf, long est, long p) {
+			set(leaf, 0, NONE, p, est + p, leaf);
+		}
+
+		void clear(int leaf) {
+			set(leaf, 0, NONE, 0, NONE, -1);
+		}
+
+		private void set(int leaf, long s, long e, long sb, long eb, int resp) {
+			int v = size + leaf;
+			sum[v] = s;
+			ect[v] = e;
+			sumBar[v] = sb;
+			ectBar[v] = eb;
+			respSum[v] = resp;
+			respEct[v] = resp;
+			for (v >>= 1; v > 0; v >>= 1) {
+				int l = 2 * v, r = l + 1;
+				sum[v] = sum[l] + sum[r];
+				ect[v] = Math.max(ect[r], ect[l] + sum[r]);
+				// on ties the gray leaf is preferred, so that a responsible leaf is found
+				long a = sumBar[l] + sum[r], b = sum[l] + sumBar[r];
+				if (a > b || a == b && respSum[l] >= 0) {
+					sumBar[v] = a;
+					respSum[v] = respSum[l];
+				} else {
+					sumBar[v] = b;
+					respSum[v] = respSum[r];
+				}
+				long best = ectBar[r];
+				int by = respEct[r];
+				long c = ect[l] + sumBar[r];
+				if (c > best || c == best && by < 0) {
+					best = c;
+					by = respSum[r];
+				}
+				c = ectBar[l] + sum[r];
+				if (c > best || c == best && by < 0) {
+					best = c;
+					by = respEct[l];
+				}
+				ectBar[v] = best;
+				respEct[v] = by;
+			}
+		}
+	}
+
+	final JobShopInstance instance;
+	final int n;
+	final int[][] byMachine;
+	final int[] jobOf;
+	final long[] est, lct;
+	final boolean[] scheduled;
+	final long[] postponedAt;
+	/* makespan of the solutions still wanted, the incumbent minus one */
+	long bound;
+
+	// trail: code (0: est, 1: lct, 2: scheduled, 3: postponedAt) * n + o, and the old value
+	int[] trailWhat = new int[1024];
+	long[] trailOld = new long[1024];
+	int trailSize;
+
+	final boolean[] machineDirty, jobDirty;
+	final int[] dirtyMachines, dirtyJobs;
+	int nDirtyMachines, nDirtyJobs;
+
+	// scratch arrays of the machine propagators
+	final long[] e, l, p, newE, newL, keys;
+	final int[] byEst, rank, order, queue;
+	final ThetaLambdaTree tree = new ThetaLambdaTree();
+
+	long branches, fails;
+	long best = Long.MAX_VALUE;
+	long[] bestStarts;
+	boolean optimal;
+
+	BranchAndBound(JobShopInstance instance) {
+		this.instance = instance;
+		this.n = instance.nOps;
+		this.byMachine = instance.operationsByMachine();
+		this.jobOf = new int[n];
+		for (int i = 0; i < instance.nJobs; i++)
+			for (int o = instance.jobStart[i]; o < instance.jobStart[i + 1]; o++)
+				jobOf[o] = i;
+		this.est = new long[n];
+		this.lct = new long[n];
+		this.scheduled = new boolean[n];
+		this.postponedAt = new long[n];
+		this.machineDirty = new boolean[instance.nMachines];
+		this.jobDirty = new boolean[instance.nJobs];
+		this.dirtyMachines = new int[instance.nMachines];
+		this.dirtyJobs = new int[instance.nJobs];
+		int k = 1;
+		for (int[] ops : byMachine)
+			k = Math.max(k, ops.length);
+		e = new long[k];
+		l = new long[k];
+		p = new long[k];
+		newE = new long[k];
+		newL = new long[k];
+		keys = new long[k];
+		byEst = new int[k];
+		rank = new int[k];
+		order = new int[k];
+		queue = new int[k];
+	}
+
+	private void trail(int what, long old) {
+		if (trailSize == trailWhat.length) {
+			trailWhat = Arrays.copyOf(trailWhat, 2 * trailSize);
+			trailOld = Arrays.copyOf(trailOld, 2 * trailSize);
+		}
+		trailWhat[trailSize] = what;
+		trailOld[trailSize++] = old;
+	}
+
+	private void undo(int mark) {
+		while (trailSize > mark) {
+			int what = trailWhat[--trailSize];
+			long old = trailOld[trailSize];
+			int o = what % n;
+			switch (what / n) {
+			case 0:
+				est[o] = old;
+				break;
+			case 1:
+				lct[o] = old;
+				break;
+			case 2:
+				scheduled[o] = old != 0;
+				break;
+			default:
+				postponedAt[o] = old;
+			}
+		}
+	}
+
+	/* Raises the earliest start of o, false if its domain becomes empty. */
+	private boolean setEst(int o, long v) {
+		if (v <= est[o])
+			return true;
+		trail(o, est[o]);
+		est[o] = v;
+		dirty(o);
+		return v + instance.duration[o] <= lct[o];
+	}
+
+	private boolean setLct(int o, long v) {
+		if (v >= lct[o])
+			return true;
+		trail(n + o, lct[o]);
+		lct[o] = v;
+		dirty(o);
+		return est[o] + instance.duration[o] <= v;
+	}
+
+	private void dirty(int o) {
+		int m = instance.machine[o];
+		if (!machineDirty[m]) {
+			machineDirty[m] = true;
+			dirtyMachines[nDirtyMachines++] = m;
+		}
+		int i = jobOf[o];
+		if (!jobDirty[i]) {
+			jobDirty[i] = true;
+			dirtyJobs[nDirtyJobs++] = i;
+		}
+	}
+
+	private void clearDirty() {
+		while (nDirtyMachines > 0)
+			machineDirty[dirtyMachines[--nDirtyMachines]] = false;
+		while (nDirtyJobs > 0)
+			jobDirty[dirtyJobs[--nDirtyJobs]] = false;
+	}
+
+	/* Runs the job and machine propagators to a fixpoint, false on a failure. */
+	private boolean propagate() {
+		while (nDirtyJobs > 0 || nDirtyMachines > 0) {
+			while (nDirtyJobs > 0) {
+				int i = dirtyJobs[--nDirtyJobs];
+				if (!job(i)) {
+					clearDirty();
+					return false;
+				}
+				// one forward and one backward pass are a fixpoint of the chain
+				jobDirty[i] = false;
+			}
+			if (nDirtyMachines > 0) {
+				int m = dirtyMachines[--nDirtyMachines];
+				machineDirty[m] = false;
+				if (!machine(m)) {
+					clearDirty();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean job(int i) {
+		int from = instance.jobStart[i], to = instance.jobStart[i + 1];
+		for (int o = from + 1; o < to; o++)
+			if (!setEst(o, est[o - 1] + instance.duration[o - 1]))
+				return false;
+		for (int o = to - 2; o >= from; o--)
+			if (!setLct(o, lct[o + 1] - instance.duration[o + 1]))
+				return false;
+		return true;
+	}
+
+	private boolean machine(int m) {
+		int[] ops = byMachine[m];
+		int k = ops.length;
+		if (k < 2)
+			return true;
+		for (int a = 0; a < k; a++) {
+			int o = ops[a];
+			e[a] = est[o];
+			l[a] = lct[o];
+			p[a] = instance.duration[o];
+			newE[a] = e[a];
+			newL[a] = l[a];
+		}
+		// earliest starts, then latest completions on the mirror image
+		if (!edgeFinding(k, e, l, newE))
+			return false;
+		detectablePrecedences(k, e, l, newE);
+		notLast(k, e, l, newL);
+		for (int a = 0; a < k; a++) {
+			long t = e[a];
+			e[a] = -l[a];
+			l[a] = -t;
+			t = newE[a];
+			newE[a] = -newL[a];
+			newL[a] = -t;
+		}
+		if (!edgeFinding(k, e, l, newE))
+			return false;
+		detectablePrecedences(k, e, l, newE);
+		notLast(k, e, l, newL);
+		for (int a = 0; a < k; a++)
+			if (!setEst(ops[a], -newL[a]) || !setLct(ops[a], -newE[a]))
+				return false;
+		return true;
+	}
+
+	/* indices 0..k-1 sorted by value, packed with the index in one long */
+	private void sort(long[] value, int k, int[] sorted) {
+		for (int a = 0; a < k; a++)
+			keys[a] = (value[a] << 21) | a;
+		Arrays.sort(keys, 0, k);
+		for (int a = 0; a < k; a++)
+			sorted[a] = (int) (keys[a] & ((1 << 21) - 1));
+	}
+
+	private void sortDescending(long[] value, int k, int[] sorted) {
+		for (int a = 0; a < k; a++)
+			keys[a] = (-value[a] << 21) | a;
+		Arrays.sort(keys, 0, k);
+		for (int a = 0; a < k; a++)
+			sorted[a] = (int) (keys[a] & ((1 << 21) - 1));
+	}
+
+	/* leaves of the tree in order of earliest start */
+	private void ranks(int k, long[] e) {
+		sort(e, k, byEst);
+		for (int r = 0; r < k; r++)
+			rank[byEst[r]] = r;
+	}
+
+	/* overload checking and edge-finding on the earliest starts, false on an overload */
+	private boolean edgeFinding(int k, long[] e, long[] l, long[] out) {
+		ranks(k, e);
+		tree.reset(k);
+		for (int a = 0; a < k; a++)
+			tree.white(rank[a], e[a], p[a]);
+		sortDescending(l, k, queue);
+		for (int q = 0; q < k; q++) {
+			int j = queue[q];
+			if (tree.ect[1] > l[j])
+				return false;
+			if (q == k - 1)
+				break;
+			tree.gray(rank[j], e[j], p[j]);
+			int next = queue[q + 1];
+			while (tree.ectBar[1] > l[next]) {
+				int leaf = tree.respEct[1];
+				if (leaf < 0)
+					break;
+				int i = byEst[leaf];
+				out[i] = Math.max(out[i], tree.ect[1]);
+				tree.clear(leaf);
+			}
+		}
+		return true;
+	}
+
+	/* i starts after the operations that cannot start after i ends */
+	private void detectablePrecedences(int k, long[] e, long[] l, long[] out) {
+		ranks(k, e);
+		tree.reset(k);
+		long[] lst = newLst(k, l);
+		sort(lst, k, queue);
+		long[] ectOf = newEct(k, e);
+		sort(ectOf, k, order);
+		boolean[] in = inTheta(k);
+		int q = 0;
+		for (int x = 0; x < k; x++) {
+			int i = order[x];
+			while (q < k && e[i] + p[i] > lst[queue[q]]) {
+				int j = queue[q++];
+				tree.white(rank[j], e[j], p[j]);
+				in[j] = true;
+			}
+			long ect;
+			if (in[i]) {
+				tree.clear(rank[i]);
+				ect = tree.ect[1];
+				tree.white(rank[i], e[i], p[i]);
+			} else
+				ect = tree.ect[1];
+			out[i] = Math.max(out[i], ect);
+		}
+	}
+
+	/* i ends before the latest start of the others when it cannot be last among them */
+	private void notLast(int k, long[] e, long[] l, long[] out) {
+		ranks(k, e);
+		tree.reset(k);
+		long[] lst = newLst(k, l);
+		sort(lst, k, queue);
+		sort(l, k, order);
+		boolean[] in = inTheta(k);
+		int q = 0, last = -1, previous = -1;
+		for (int x = 0; x < k; x++) {
+			int i = order[x];
+			while (q < k && l[i] > lst[queue[q]]) {
+				int j = queue[q++];
+				tree.white(rank[j], e[j], p[j]);
+				in[j] = true;
+				previous = last;
+				last = j;
+			}
+			long ect;
+			if (in[i]) {
+				tree.clear(rank[i]);
+				ect = tree.ect[1];
+				tree.white(rank[i], e[i], p[i]);
+			} else
+				ect = tree.ect[1];
+			if (ect > lst[i]) {
+				int j = last == i ? previous : last;
+				if (j >= 0)
+					out[i] = Math.min(out[i], lst[j]);
+			}
+		}
+	}
+
+	private long[] lstScratch = new long[0], ectScratch = new long[0];
+	private boolean[] inScratch = new boolean[0];
+
+	private long[] newLst(int k, long[] l) {
+		if (lstScratch.length < k)
+			lstScratch = new long[e.length];
+		for (int a = 0; a < k; a++)
+			lstScratch[a] = l[a] - p[a];
+		return lstScratch;
+	}
+
+	private long[] newEct(int k, long[] e) {
+		if (ectScratch.length < k)
+			ectScratch = new long[e.length];
+		for (int a = 0; a < k; a++)
+			ectScratch[a] = e[a] + p[a];
+		return ectScratch;
+	}
+
+	private boolean[] inTheta(int k) {
+		if (inScratch.length < k)
+			inScratch = new boolean[e.length];
+		Arrays.fill(inScratch, 0, k, false);
+		return inScratch;
+	}
+
+	/* Puts the makespan bound on every latest completion, false if it empties a domain. */
+	private boolean tighten() {
+		for (int o = 0; o < n; o++)
+			if (!setLct(o, bound))
+				return false;
+		return true;
+	}
+
+	/*
+	 * Unscheduled operation with the smallest earliest start, ties broken by
+	 * latest start, postponed ones only once their earliest start increased.
+	 * -1 when every operation is scheduled, -2 when the remaining ones are all
+	 * postponed.
+	 */
+	private int select() {
+		int chosen = -1;
+		boolean remaining = false;
+		for (int o = 0; o < n; o++) {
+			if (scheduled[o])
+				continue;
+			remaining = true;
+			if (postponedAt[o] >= est[o])
+				continue;
+			if (chosen < 0 || est[o] < est[chosen] || est[o] == est[chosen] && lct[o] - instance.duration[o] < lct[chosen] - instance.duration[chosen])
+				chosen = o;
+		}
+		return chosen >= 0 ? chosen : remaining ? -2 : -1;
+	}
+
+	/*
+	 * Depth-first search until timeout seconds are spent, starting from the
+	 * greedy schedule of the instance. optimal is set when the search tree is
+	 * exhausted.
+	 */
+	void solve(double timeout) {
+		long deadline = System.nanoTime() + (long) (timeout * 1e9);
+		bestStarts = new long[n];
+		best = instance.greedySchedule(bestStarts);
+		long lowerBound = instance.lowerBound();
+		Arrays.fill(postponedAt, -1);
+		bound = best - 1;
+		optimal = best <= lowerBound;
+		if (optimal)
+			return;
+		Arrays.fill(lct, bound);
+		for (int o = 0; o < n; o++)
+			dirty(o);
+		if (!propagate()) {
+			optimal = true;
+			return;
+		}
+		// decisions of the open levels: operation, branch (0 started, 1 postponed) and trail mark
+		int[] op = new int[n + 1], branch = new int[n + 1], mark = new int[n + 1];
+		int level = 0;
+		boolean exhausted = false;
+		while (true) {
+			if ((branches & 255) == 0 && System.nanoTime() > deadline)
+				break;
+			int o = select();
+			boolean failed = false;
+			if (o == -1) {
+				long makespan = 0;
+				for (int x = 0; x < n; x++)
+					makespan = Math.max(makespan, est[x] + instance.duration[x]);
+				best = makespan;
+				System.arraycopy(est, 0, bestStarts, 0, n);
+				System.out.println("BnB solution " + best + " after " + branches + " branches, " + fails + " fails");
+				bound = best - 1;
+				failed = true;
+				if (best <= lowerBound) {
+					exhausted = true;
+					break;
+				}
+			} else if (o == -2)
+				failed = true;
+			else {
+				branches++;
+				if (level == op.length) {
+					op = Arrays.copyOf(op, 2 * level);
+					branch = Arrays.copyOf(branch, 2 * level);
+					mark = Arrays.copyOf(mark, 2 * level);
+				}
+				op[level] = o;
+				branch[level] = 0;
+				mark[level] = trailSize;
+				level++;
+				trail(2 * n + o, 0);
+				scheduled[o] = true;
+				failed = !setLct(o, est[o] + instance.duration[o]) || !propagate();
+				if (failed)
+					clearDirty();
+			}
+			// backtrack to the last level whose postpone branch is left
+			while (failed) {
+				fails++;
+				if (level == 0) {
+					exhausted = true;
+					break;
+				}
+				int x = level - 1;
+				undo(mark[x]);
+				if (branch[x] == 1) {
+					level--;
+					continue;
+				}
+				branch[x] = 1;
+				trail(3 * n + op[x], postponedAt[op[x]]);
+				postponedAt[op[x]] = est[op[x]];
+				failed = !tighten() || !propagate();
+				if (failed)
+					clearDirty();
+			}
+			if (exhausted)
+				break;
+		}
+		optimal = exhausted;
+	}
+
+	public static void scheduleFromDirectory(int dataset_id, String foldername, int timeout, int n_workers) throws Exception {
+		String outFile = "BnB_" + INFO.dataset_folder[dataset_id].substring(15, 20) + "_" + foldername + "_" + timeout + ".csv";
+		String inFile = INFO.dataset_folder[dataset_id] + foldername + "/";
+		System.out.println("Using the pure Java branch and bound to solve:\ninput= " + inFile + "\noutput= " + outFile + "\ntimeout= " + timeout);
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		File[] files = new File(inFile).listFiles();
+		int i = 0;
+		for (File file : files)
+			if (file.isFile()) {
+				i++;
+				System.out.println("Solving instance" + file.getName() + " " + i + "/" + files.length);
+				writer.println(scheduleFromFile(dataset_id, inFile, file.getName(), timeout));
+				writer.flush();
+			}
+		writer.close();
+	}
+
+	/* Same columns as SchedJobShopORTools, branches are decisions and conflicts failures. Single threaded. */
+	public static String scheduleFromFile(int dataset_id, String folder, String filename, int timeout) throws Exception {
+		long startTime = System.currentTimeMillis();
+		Profiler profiler = new Profiler("BnB", filename);
+		profiler.phase("variables");
+		JobShopInstance instance = JobShopInstance.read(dataset_id, folder, filename);
+		BranchAndBound solver = new BranchAndBound(instance);
+		profiler.end();
+		double instantiation_time = (double) (System.currentTimeMillis() - startTime) / 1000;
+		profiler.phase("solve");
+		long solveStart = System.nanoTime();
+		solver.solve(timeout);
+		double time = (System.nanoTime() - solveStart) / 1e9;
+		profiler.end();
+		if (ScheduleVerifier.enabled())
+			ScheduleVerifier.audit(dataset_id, folder, filename, "BnB", solver.bestStarts, solver.best);
+		String optimal = solver.optimal ? "Yes" : "No";
+		long bound = solver.optimal ? solver.best : instance.lowerBound();
+		System.out.println(filename + ";" + solver.best + ";" + time + ";" + optimal);
+		return filename + ";" + (double) solver.best + ";" + time + ";" + optimal + ";" + solver.branches + ";" + solver.fails + ";" + bound
+				+ profiler.columns(instantiation_time, instance.nOps);
+	}
+
+	/* Branch and bound and ORTools Advanced on every instance of the folder, one row per instance. */
+	public static void compareFromDirectory(int dataset_id, String foldername, int timeout, int n_workers) throws Exception {
+		String outFile = "BnB_vs_ORT_" + INFO.dataset_folder[dataset_id].substring(15, 20) + "_" + foldername + "_" + timeout + "_" + n_workers + ".csv";
+		String inFile = INFO.dataset_folder[dataset_id] + foldername + "/";
+		System.out.println("Branch and bound against ORTools Advanced:\ninput= " + inFile + "\noutput= " + outFile + "\ntimeout= " + timeout
+				+ "\nworkers= " + n_workers);
+		// both solvers are timed
+		Properties runOptions = new Properties();
+		runOptions.setProperty("store", "off");
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		writer.println("instance;operations;bnb_objective;bnb_time;bnb_optimal;ort_objective;ort_time;ort_optimal");
+		for (File file : new File(inFile).listFiles())
+			if (file.isFile()) {
+				String[] bnb = scheduleFromFile(dataset_id, inFile, file.getName(), timeout).split(";");
+				String[] ort = Main.withOptions(runOptions,
+						() -> SchedJobShopORTools.scheduleFromFile(dataset_id, inFile, file.getName(), timeout, false, n_workers)).split(";");
+				int nOps = JobShopInstance.read(dataset_id, inFile, file.getName()).nOps;
+				writer.println(file.getName() + ";" + nOps + ";" + bnb[1] + ";" + bnb[2] + ";" + bnb[3] + ";" + ort[1] + ";" + ort[2] + ";"
+						+ (ort.length > 3 ? ort[3] : "No"));
+				writer.flush();
+			}
+		writer.close();
+	}
+
+	/*
+	 * Solves instances random instances of 2 to 4 jobs on 2 to 3 machines,
+	 * every job visiting every machine in random order with durations in 0..9,
+	 * and compares the proved optimum with exhaustive search. Every best
+	 * schedule also goes through the verifier. Returns the number of failures.
+	 */
+	public static int check(int instances, long seed, double timeout) {
+		SplittableRandom random = new SplittableRandom(seed);
+		int failures = 0;
+		for (int k = 0; k < instances; k++) {
+			int nJobs = 2 + random.nextInt(3);
+			int nMachines = 2 + random.nextInt(2);
+			int[] jobStart = new int[nJobs + 1];
+			int[] machine = new int[nJobs * nMachines];
+			int[] duration = new int[nJobs * nMachines];
+			for (int i = 0; i < nJobs; i++) {
+				jobStart[i + 1] = jobStart[i] + nMachines;
+				for (int m = 0; m < nMachines; m++) {
+					int r = random.nextInt(m + 1);
+					machine[jobStart[i] + m] = machine[jobStart[i] + r];
+					machine[jobStart[i] + r] = m;
+				}
+				for (int o = jobStart[i]; o < jobStart[i + 1]; o++)
+					duration[o] = random.nextInt(10);
+			}
+			JobShopInstance instance = new JobShopInstance("random_" + k, nJobs, nMachines, jobStart, machine, duration);
+			BranchAndBound solver = new BranchAndBound(instance);
+			solver.solve(timeout);
+			long optimum = exhaustive(instance, Arrays.copyOf(jobStart, nJobs), new long[nJobs], new long[nMachines], 0, Long.MAX_VALUE);
+			ScheduleVerifier.Result schedule = new ScheduleVerifier(instance).check("BnB", solver.bestStarts, null, solver.best);
+			if (!solver.optimal || solver.best != optimum || !schedule.status().equals("OK")) {
+				failures++;
+				System.out.println("BnB check failed on " + instance.name + ": " + solver.best + (solver.optimal ? " optimal" : "") + ", exhaustive "
+						+ optimum + ", schedule " + schedule.status() + " " + schedule.firstViolation);
+			}
+		}
+		System.out.println("BnB check: " + (instances - failures) + " of " + instances + " random instances solved to the exhaustive optimum");
+		return failures;
+	}
+
+	/*
+	 * Best makespan of the active schedules completing the partial one, next[i]
+	 * being the next operation of job i, by Giffler-Thompson branching on the
+	 * machine of the earliest completion. Exponential, for tiny instances only.
+	 */
+	static long exhaustive(JobShopInstance in, int[] next, long[] jobReady, long[] machineReady, long makespan, long best) {
+		if (makespan >= best)
+			return best;
+		long c = Long.MAX_VALUE;
+		int m = -1;
+		for (int i = 0; i < in.nJobs; i++)
+			if (next[i] < in.jobStart[i + 1]) {
+				int o = next[i];
+				long e = Math.max(jobReady[i], machineReady[in.machine[o]]) + in.duration[o];
+				if (e < c) {
+					c = e;
+					m = in.machine[o];
+				}
+			}
+		if (m < 0)
+			return makespan;
+		for (int i = 0; i < in.nJobs; i++) {
+			int o = next[i];
+			if (o == in.jobStart[i + 1] || in.machine[o] != m)
+				continue;
+			long start = Math.max(jobReady[i], machineReady[m]);
+			long end = start + in.duration[o];
+			if (start >= c && end != c)
+				continue;
+			long job = jobReady[i], machine = machineReady[m];
+			jobReady[i] = end;
+			machineReady[m] = end;
+			next[i]++;
+			best = exhaustive(in, next, jobReady, machineReady, Math.max(makespan, end), best);
+			next[i]--;
+			jobReady[i] = job;
+			machineReady[m] = machine;
+		}
+		return best;
+	}
+}
@@ -0,0 +1,141 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * Splits a total wall-clock budget over the instances of a directory instead of
+ * giving each of them the same fixed timeout. Every instance gets a predicted
+ * difficulty from its size and from the gap between its trivial lower bound and
+ * a greedy probe; instances are solved from the easiest to the hardest and each
+ * one receives the share of the budget still left that matches its weight, so
+ * time not used by instances solved early flows to the harder ones. The
+ * probes are paid from the same budget and their parsed instances are reused
+ * by the solves.
+ */
+public class BudgetAllocator {
+
+	static final int MIN_TIMEOUT = 1;
+
+	static class Entry {
+		final String filename;
+		final int nOps;
+		final long lb;
+		final long ub;
+		final double weight;
+		/* parsed by the probe and handed to the solver, released once solved */
+		JobShopInstance instance;
+
+		Entry(String filename, JobShopInstance instance, long lb, long ub) {
+			this.filename = filename;
+			this.nOps = instance.nOps;
+			this.lb = lb;
+			this.ub = ub;
+			this.weight = difficulty(nOps, lb, ub);
+			this.instance = instance;
+		}
+
+		boolean provenOptimal() {
+			return lb == ub;
+		}
+	}
+
+	/*
+	 * Model size dominates instantiation and propagation cost (n log n), the
+	 * relative gap of the probe tells how much search is left to do.
+	 */
+	static double difficulty(int nOps, long lb, long ub) {
+		if (lb == ub)
+			return 0;
+		return nOps * Math.log(nOps + 1.0) * (1 + 10 * gap(lb, ub));
+	}
+
+	/* relative gap of the bounds, 0 for an empty instance (ub = 0) */
+	static double gap(long lb, long ub) {
+		return ub > 0 ? (double) (ub - lb) / ub : 0;
+	}
+
+	public static void scheduleFromDirectory(int dataset_id, String foldername, int budget, int n_workers) throws Exception {
+		String outFile = "ORT_Budget_" + INFO.dataset_folder[dataset_id].substring(15, 20) + "_" + foldername + "_" + budget + "_" + n_workers + ".csv";
+		String inFile = INFO.dataset_folder[dataset_id] + foldername + "/";
+		System.out.println("++Using Advanced ORTools Solver with a budget allocator to solve:\ninput= " + inFile + "\noutput= " + outFile
+				+ "\ntotal budget= " + budget);
+
+		PrintStream originalOut = System.out;
+		PrintStream fileOut = new PrintStream(Main.RESULTS_PATH + outFile.substring(0, outFile.length() - 3) + "txt");
+		System.setOut(fileOut);
+
+		// the probes are charged to the budget too
+		long deadline = System.currentTimeMillis() + budget * 1000L;
+
+		// probing pass: bounds and a greedy schedule for every instance
+		List<Entry> entries = new ArrayList<Entry>();
+		File[] files = new File(inFile).listFiles();
+		for (File file : files)
+			if (file.isFile()) {
+				JobShopInstance instance = JobShopInstance.read(dataset_id, inFile, file.getName());
+				long lb = instance.lowerBound();
+				long ub = instance.greedySchedule(null);
+				entries.add(new Entry(file.getName(), instance, lb, ub));
+				System.out.println("Probe " + file.getName() + " ops=" + instance.nOps + " lb=" + lb + " ub=" + ub);
+			}
+		entries.sort(Comparator.comparingDouble((Entry e) -> e.weight));
+
+		double remainingWeight = 0;
+		for (Entry e : entries)
+			remainingWeight += e.weight;
+
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		double cpuSeconds = 0;
+		double initialGaps = 0;
+		double finalGaps = 0;
+		int i = 0;
+		for (Entry e : entries) {
+			i++;
+			double initialGap = gap(e.lb, e.ub);
+			initialGaps += initialGap;
+			if (e.provenOptimal()) {
+				e.instance = null;
+				System.out.println("Instance " + e.filename + " " + i + "/" + entries.size() + " closed by the probe");
+				writer.println(e.filename + ";" + e.ub + ";0.0;Yes;0;0;" + e.lb + ";0");
+				continue;
+			}
+			double remaining = (deadline - System.currentTimeMillis()) / 1000.0;
+			int timeout = Math.max(MIN_TIMEOUT, (int) (remaining * e.weight / remainingWeight));
+			remainingWeight -= e.weight;
+			System.out.println("Solving instance" + e.filename + " " + i + "/" + entries.size() + " with a budget of " + timeout + "s");
+
+			long start = System.currentTimeMillis();
+			String row = SchedJobShopORTools.scheduleFromFile(dataset_id, inFile, e.filename, timeout, false, n_workers, null, null, e.instance);
+			e.instance = null;
+			double elapsed = (System.currentTimeMillis() - start) / 1000.0;
+			cpuSeconds += elapsed * workers(n_workers);
+			writer.println(row + ";" + timeout);
+			writer.flush();
+
+			// filename;objective;walltime;optimal;branches;conflicts;bound
+			String[] cols = row.split(";");
+			double obj = Double.parseDouble(cols[1]);
+			double bound = Math.max(e.lb, Double.parseDouble(cols[6]));
+			finalGaps += obj > 0 ? Math.min(initialGap, (obj - bound) / obj) : initialGap;
+		}
+		writer.close();
+
+		double cpuHours = cpuSeconds / 3600;
+		String summary = "Budget summary: instances=" + entries.size() + " cpu_hours=" + cpuHours
+				+ " mean_initial_gap=" + (entries.isEmpty() ? 0 : initialGaps / entries.size())
+				+ " mean_final_gap=" + (entries.isEmpty() ? 0 : finalGaps / entries.size())
+				+ " gap_closed_per_cpu_hour=" + (cpuHours > 0 ? (initialGaps - finalGaps) / cpuHours : 0);
+		System.out.println(summary);
+		originalOut.println(summary);
+	}
+
+	/* n_workers <= 0 lets CP-SAT pick, which means one worker per core */
+	static int workers(int n_workers) {
+		return n_workers > 0 ? n_workers : Runtime.getRuntime().availableProcessors();
+	}
+}
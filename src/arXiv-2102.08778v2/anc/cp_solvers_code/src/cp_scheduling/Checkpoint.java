@@ -0,0 +1,196 @@
+package cp_scheduling;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Last improving solution of an instance, persisted while the solver runs so an
+ * interrupted directory sweep can resume it. The file holds the objective, the
+ * seconds already spent on the instance and one int start time per operation,
+ * in the job-major operation order of JobShopInstance.
+ *
+ * While a solve runs (between begin and finish) the latest solution is written
+ * at most every PERIOD seconds when it improves, by a timer every PERIOD
+ * seconds in any case so that an improvement and the time spent are never
+ * older than PERIOD on disk, and one last time when the solve ends or the JVM
+ * shuts down.
+ */
+public class Checkpoint {
+
+	static final int MAGIC = 0x4a534350;
+	/* minimum number of seconds between two writes of the same checkpoint */
+	static final double PERIOD = 30;
+
+	private static ScheduledExecutorService timer;
+
+	final File file;
+	long objective;
+	double elapsed;
+	long[] starts;
+	private double lastSave = Double.NEGATIVE_INFINITY;
+	// clock of the running solve, started by begin
+	private long beginNanos;
+	private double offset;
+	private ScheduledFuture<?> periodic;
+	private Thread shutdownHook;
+
+	public Checkpoint(String path) {
+		this.file = new File(path);
+	}
+
+	public static String directory(String outFile) {
+		return Main.RESULTS_PATH + "checkpoints/" + outFile.substring(0, outFile.length() - 4) + "/";
+	}
+
+	/* Loads the checkpoint if a previous run left one, otherwise returns an empty one. */
+	public static Checkpoint open(String dir, String filename) throws IOException {
+		Checkpoint ckpt = new Checkpoint(dir + filename + ".ckpt");
+		if (!ckpt.file.isFile())
+			return ckpt;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(ckpt.file)))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a checkpoint file: " + ckpt.file);
+			ckpt.objective = in.readLong();
+			ckpt.elapsed = in.readDouble();
+			long[] starts = new long[in.readInt()];
+			for (int o = 0; o < starts.length; o++)
+				starts[o] = in.readInt();
+			ckpt.starts = starts;
+		}
+		return ckpt;
+	}
+
+	/* resume=true: keep the rows of an interrupted sweep, skip their instances and checkpoint the solves */
+	public static boolean enabled() {
+		return Main.option("resume", "false").equals("true");
+	}
+
+	public boolean hasSolution() {
+		return starts != null;
+	}
+
+	/* True when at least PERIOD seconds went by since the last write, or nothing was written yet. */
+	public boolean due(double time) {
+		return time - lastSave >= PERIOD;
+	}
+
+	/*
+	 * Starts the clock of a solve resumed after offset seconds, the periodic
+	 * writes and the write at JVM shutdown.
+	 */
+	public synchronized void begin(double offset) {
+		this.offset = offset;
+		this.beginNanos = System.nanoTime();
+		synchronized (Checkpoint.class) {
+			if (timer == null)
+				timer = Executors.newSingleThreadScheduledExecutor(r -> {
+					Thread t = new Thread(r, "checkpoint-timer");
+					t.setDaemon(true);
+					return t;
+				});
+		}
+		long period = (long) (PERIOD * 1000);
+		periodic = timer.scheduleAtFixedRate(this::flush, period, period, TimeUnit.MILLISECONDS);
+		shutdownHook = new Thread(this::flush, "checkpoint-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/* Seconds spent on the instance, earlier runs included. */
+	public synchronized double elapsed() {
+		return beginNanos == 0 ? elapsed : offset + (System.nanoTime() - beginNanos) / 1e9;
+	}
+
+	/* Improving solution of the running solve, written now if the last write is older than PERIOD. */
+	public synchronized void offer(long objective, long[] starts) {
+		this.objective = objective;
+		this.starts = starts;
+		double time = elapsed();
+		if (due(time))
+			write(time);
+	}
+
+	/* Writes the latest solution with the time spent so far, if there is a solution. */
+	public synchronized void flush() {
+		if (starts != null)
+			write(elapsed());
+	}
+
+	/* End of the solve: stops the timer and writes the latest solution and the time spent one last time. */
+	public synchronized void finish() {
+		if (periodic != null)
+			periodic.cancel(false);
+		periodic = null;
+		if (shutdownHook != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException e) {
+				// already shutting down, the hook writes the checkpoint
+			}
+			shutdownHook = null;
+		}
+		flush();
+		beginNanos = 0;
+	}
+
+	private void write(double time) {
+		try {
+			save(objective, time, starts);
+		} catch (IOException e) {
+			System.err.println("Error: " + e);
+		}
+	}
+
+	/* Writes to a temporary file first so a crash never leaves a truncated checkpoint. */
+	public synchronized void save(long objective, double elapsed, long[] starts) throws IOException {
+		this.objective = objective;
+		this.elapsed = elapsed;
+		this.starts = starts;
+		this.lastSave = elapsed;
+		file.getParentFile().mkdirs();
+		File tmp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeLong(objective);
+			out.writeDouble(elapsed);
+			out.writeInt(starts.length);
+			for (long s : starts)
+				out.writeInt((int) s);
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public synchronized void delete() {
+		file.delete();
+	}
+
+	/* Instances that already have a row in a results file left by a previous run. */
+	public static Set<String> completed(String resultsFile) throws IOException {
+		Set<String> done = new HashSet<String>();
+		File f = new File(resultsFile);
+		if (!f.isFile())
+			return done;
+		try (BufferedReader reader = new BufferedReader(new FileReader(f))) {
+			String line;
+			while ((line = reader.readLine()) != null)
+				if (line.indexOf(';') > 0)
+					done.add(line.substring(0, line.indexOf(';')));
+		}
+		return done;
+	}
+}
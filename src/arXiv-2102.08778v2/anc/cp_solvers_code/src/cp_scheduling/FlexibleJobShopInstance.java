@@ -0,0 +1,293 @@
+package cp_scheduling;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/*
+ * Flexible job shop instance: every operation can run on any machine of a
+ * set of alternatives, with a duration depending on the machine. Operations
+ * are stored like in JobShopInstance (job-major, contiguous per job, in
+ * precedence order) and alternative a of operation o is stored at index
+ * altStart[o] + k.
+ *
+ * Files are in the usual FJSP layout (Brandimarte, Hurink): "nJobs nMachines
+ * [average alternatives]", then one line per job with its number of
+ * operations followed, for every operation, by its number of alternatives
+ * and that many "machine duration" pairs. Machines are numbered from 1.
+ */
+public class FlexibleJobShopInstance {
+
+	final String name;
+	final int nJobs;
+	final int nMachines;
+	final int nOps;
+	final int[] jobStart;
+	final int[] altStart;
+	final int[] altMachine;
+	final int[] altDuration;
+
+	FlexibleJobShopInstance(String name, int nJobs, int nMachines, int[] jobStart, int[] altStart, int[] altMachine, int[] altDuration) {
+		this.name = name;
+		this.nJobs = nJobs;
+		this.nMachines = nMachines;
+		this.jobStart = jobStart;
+		this.nOps = jobStart[nJobs];
+		this.altStart = altStart;
+		this.altMachine = altMachine;
+		this.altDuration = altDuration;
+	}
+
+	public static FlexibleJobShopInstance read(String folder, String filename) throws IOException {
+		// read line by line: the third number of the header is optional
+		List<String> lines = Files.readAllLines(Paths.get(folder + filename));
+		int l = 0;
+		while (lines.get(l).trim().isEmpty())
+			l++;
+		String[] header = lines.get(l++).trim().split("\\s+");
+		int nJobs = Integer.parseInt(header[0]);
+		int nMachines = Integer.parseInt(header[1]);
+		int[] jobStart = new int[nJobs + 1];
+		IntList altStart = new IntList();
+		IntList machine = new IntList();
+		IntList duration = new IntList();
+		for (int i = 0; i < nJobs; i++) {
+			while (lines.get(l).trim().isEmpty())
+				l++;
+			String[] t = lines.get(l++).trim().split("\\s+");
+			jobStart[i] = altStart.size;
+			int k = 0;
+			int nJobOps = Integer.parseInt(t[k++]);
+			for (int o = 0; o < nJobOps; o++) {
+				altStart.add(machine.size);
+				int nAlts = Integer.parseInt(t[k++]);
+				for (int a = 0; a < nAlts; a++) {
+					machine.add(Integer.parseInt(t[k++]) - 1);
+					duration.add(Integer.parseInt(t[k++]));
+				}
+			}
+		}
+		jobStart[nJobs] = altStart.size;
+		altStart.add(machine.size);
+		return new FlexibleJobShopInstance(filename, nJobs, nMachines, jobStart, altStart.toArray(), machine.toArray(), duration.toArray());
+	}
+
+	/*
+	 * A job shop instance made flexible: every operation keeps its machine and
+	 * gets alternatives - 1 other distinct machines drawn at random, with the
+	 * duration multiplied by a factor drawn in [1, 1 + spread]. With one
+	 * alternative this is the job shop itself.
+	 */
+	public static FlexibleJobShopInstance fromJobShop(JobShopInstance js, int alternatives, double spread, long seed) {
+		int k = Math.max(1, Math.min(alternatives, js.nMachines));
+		SplittableRandom random = new SplittableRandom(seed);
+		int[] altStart = new int[js.nOps + 1];
+		int[] machine = new int[js.nOps * k];
+		int[] duration = new int[js.nOps * k];
+		int[] pool = new int[js.nMachines];
+		for (int m = 0; m < pool.length; m++)
+			pool[m] = m;
+		for (int o = 0; o < js.nOps; o++) {
+			int base = o * k;
+			altStart[o] = base;
+			machine[base] = js.machine[o];
+			duration[base] = js.duration[o];
+			// partial Fisher-Yates over the machines other than the original one
+			int last = pool.length - 1;
+			int at = js.machine[o];
+			pool[at] = pool[last];
+			pool[last] = js.machine[o];
+			for (int a = 1; a < k; a++) {
+				int r = a - 1 + random.nextInt(last - (a - 1));
+				int m = pool[r];
+				pool[r] = pool[a - 1];
+				pool[a - 1] = m;
+				machine[base + a] = m;
+				duration[base + a] = (int) Math.round(js.duration[o] * (1 + spread * random.nextDouble()));
+			}
+			for (int m = 0; m < pool.length; m++)
+				pool[m] = m;
+		}
+		altStart[js.nOps] = js.nOps * k;
+		return new FlexibleJobShopInstance(js.name, js.nJobs, js.nMachines, js.jobStart.clone(), altStart, machine, duration);
+	}
+
+	public int nAlternatives() {
+		return altStart[nOps];
+	}
+
+	public int minDuration(int o) {
+		int d = Integer.MAX_VALUE;
+		for (int a = altStart[o]; a < altStart[o + 1]; a++)
+			d = Math.min(d, altDuration[a]);
+		return d;
+	}
+
+	/* max(longest job with the fastest alternatives, fastest total work spread over all machines) */
+	public long lowerBound() {
+		long lb = 0;
+		long work = 0;
+		for (int i = 0; i < nJobs; i++) {
+			long len = 0;
+			for (int o = jobStart[i]; o < jobStart[i + 1]; o++)
+				len += minDuration(o);
+			lb = Math.max(lb, len);
+			work += len;
+		}
+		return Math.max(lb, (work + nMachines - 1) / Math.max(1, nMachines));
+	}
+
+	/* Sum of the longest alternative of every operation, a horizon valid for any assignment. */
+	public long horizon() {
+		long h = 0;
+		for (int o = 0; o < nOps; o++) {
+			int d = 0;
+			for (int a = altStart[o]; a < altStart[o + 1]; a++)
+				d = Math.max(d, altDuration[a]);
+			h += d;
+		}
+		return h;
+	}
+
+	/*
+	 * Greedy list scheduling: repeatedly schedules the next operation of the job
+	 * that is ready first, on the alternative that completes it first. Start
+	 * times and chosen alternatives are written to starts and choice when they
+	 * are not null. O(nAlternatives + nOps log nJobs).
+	 */
+	public long greedySchedule(long[] starts, int[] choice) {
+		long[] jobReady = new long[nJobs];
+		long[] machineReady = new long[nMachines];
+		int[] next = new int[nJobs];
+		PriorityQueue<long[]> queue = new PriorityQueue<>(Math.max(1, nJobs), (x, y) -> x[0] != y[0] ? Long.compare(x[0], y[0]) : Long.compare(x[1], y[1]));
+		for (int i = 0; i < nJobs; i++) {
+			next[i] = jobStart[i];
+			if (next[i] < jobStart[i + 1])
+				queue.add(new long[] { 0, i });
+		}
+		long makespan = 0;
+		while (!queue.isEmpty()) {
+			long[] top = queue.poll();
+			int i = (int) top[1];
+			int o = next[i];
+			int best = -1;
+			long bestEnd = Long.MAX_VALUE;
+			for (int a = altStart[o]; a < altStart[o + 1]; a++) {
+				long end = Math.max(jobReady[i], machineReady[altMachine[a]]) + altDuration[a];
+				if (end < bestEnd) {
+					bestEnd = end;
+					best = a;
+				}
+			}
+			if (starts != null)
+				starts[o] = bestEnd - altDuration[best];
+			if (choice != null)
+				choice[o] = best;
+			jobReady[i] = bestEnd;
+			machineReady[altMachine[best]] = bestEnd;
+			makespan = Math.max(makespan, bestEnd);
+			if (++next[i] < jobStart[i + 1]) {
+				top[0] = bestEnd;
+				queue.add(top);
+			}
+		}
+		return makespan;
+	}
+
+	/*
+	 * Pre-assignment: removes the alternatives that are dominated, so that the
+	 * model only gets optional intervals where there is a real choice.
+	 *
+	 * - with ratio > 0, alternatives more than ratio times slower than the
+	 *   fastest one of their operation (a heuristic, it may lose the optimum);
+	 * - alternatives that cannot be part of a schedule of makespan at most
+	 *   upperBound: the fastest head of their job, their duration and the
+	 *   fastest tail exceed it (exact for schedules up to upperBound).
+	 *
+	 * The fastest alternative of every operation always stays.
+	 */
+	public FlexibleJobShopInstance prune(double ratio, long upperBound) {
+		long[] head = new long[nOps];
+		long[] tail = new long[nOps];
+		for (int i = 0; i < nJobs; i++) {
+			long h = 0;
+			for (int o = jobStart[i]; o < jobStart[i + 1]; o++) {
+				head[o] = h;
+				h += minDuration(o);
+			}
+			long t = 0;
+			for (int o = jobStart[i + 1] - 1; o >= jobStart[i]; o--) {
+				tail[o] = t;
+				t += minDuration(o);
+			}
+		}
+		int[] newStart = new int[nOps + 1];
+		int[] machine = new int[nAlternatives()];
+		int[] duration = new int[nAlternatives()];
+		int n = 0;
+		for (int o = 0; o < nOps; o++) {
+			newStart[o] = n;
+			int fastest = minDuration(o);
+			boolean keptFastest = false;
+			for (int a = altStart[o]; a < altStart[o + 1]; a++) {
+				int d = altDuration[a];
+				boolean isFastest = d == fastest && !keptFastest;
+				if (!isFastest && ratio > 0 && d > ratio * fastest)
+					continue;
+				if (!isFastest && head[o] + d + tail[o] > upperBound)
+					continue;
+				keptFastest |= isFastest;
+				machine[n] = altMachine[a];
+				duration[n] = d;
+				n++;
+			}
+		}
+		newStart[nOps] = n;
+		return new FlexibleJobShopInstance(name, nJobs, nMachines, jobStart, newStart, Arrays.copyOf(machine, n), Arrays.copyOf(duration, n));
+	}
+
+	/* The job shop of one assignment, choice[o] being the alternative index of o, to verify schedules. */
+	JobShopInstance assigned(int[] choice) {
+		int[] machine = new int[nOps];
+		int[] duration = new int[nOps];
+		for (int o = 0; o < nOps; o++) {
+			machine[o] = altMachine[choice[o]];
+			duration[o] = altDuration[choice[o]];
+		}
+		return new JobShopInstance(name, nJobs, nMachines, jobStart, machine, duration);
+	}
+
+	/* alternative index of every operation on the given machine of that operation, which must be one of its alternatives */
+	int[] alternativesOn(int[] machine) {
+		int[] choice = new int[nOps];
+		for (int o = 0; o < nOps; o++) {
+			choice[o] = -1;
+			for (int a = altStart[o]; a < altStart[o + 1]; a++)
+				if (altMachine[a] == machine[o])
+					choice[o] = a;
+			if (choice[o] < 0)
+				throw new IllegalArgumentException("Operation " + o + " of " + name + " cannot run on machine " + machine[o]);
+		}
+		return choice;
+	}
+
+	/* growable int array of the reader */
+	static final class IntList {
+		int[] values = new int[1024];
+		int size;
+
+		void add(int v) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, 2 * size);
+			values[size++] = v;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
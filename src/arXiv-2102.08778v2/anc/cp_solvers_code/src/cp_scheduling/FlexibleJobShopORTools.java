@@ -0,0 +1,232 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import com.google.ortools.sat.ConstraintProto;
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpModelProto;
+import com.google.ortools.sat.CpObjectiveProto;
+import com.google.ortools.sat.CpSolver;
+import com.google.ortools.sat.CpSolverResponse;
+import com.google.ortools.sat.CpSolverStatus;
+import com.google.ortools.sat.IntegerArgumentProto;
+import com.google.ortools.sat.IntegerVariableProto;
+import com.google.ortools.sat.IntervalConstraintProto;
+import com.google.ortools.sat.LinearConstraintProto;
+import com.google.ortools.sat.NoOverlapConstraintProto;
+import com.google.ortools.sat.PartialVariableAssignment;
+
+/*
+ * Flexible job shop with CP-SAT. Operations keep the variable layout of
+ * LeanModelBuilder (start o, end nOps + o, makespan 2 * nOps) and every
+ * alternative of an operation is an optional interval over the same start
+ * and end, enforced by a presence literal. Exactly one literal per operation
+ * is true and each machine has a no-overlap over the intervals of its
+ * alternatives. Operations left with a single alternative after
+ * FlexibleJobShopInstance.prune get a plain interval and no literal.
+ *
+ * The greedy schedule of the pruned instance is the horizon and the hint.
+ * prune_ratio=<r> also drops alternatives more than r times slower than the
+ * fastest one of their operation (off by default).
+ */
+public class FlexibleJobShopORTools {
+
+	static {
+		System.loadLibrary("jniortools");
+	}
+
+	/* the CP-SAT model of an instance with the indices needed to read its solutions */
+	static class Model {
+		final CpModel model = new CpModel();
+		final FlexibleJobShopInstance instance;
+		/* presence literal of every alternative, -1 for the only alternative of an operation */
+		final int[] presence;
+		int[] startVars;
+
+		Model(FlexibleJobShopInstance instance) {
+			this.instance = instance;
+			this.presence = new int[instance.nAlternatives()];
+		}
+
+		/* chosen alternative of every operation in the solution of response */
+		int[] choice(CpSolverResponse response) {
+			int[] choice = new int[instance.nOps];
+			for (int o = 0; o < instance.nOps; o++) {
+				choice[o] = instance.altStart[o];
+				for (int a = instance.altStart[o]; a < instance.altStart[o + 1]; a++)
+					if (presence[a] >= 0 && response.getSolution(presence[a]) == 1)
+						choice[o] = a;
+			}
+			return choice;
+		}
+	}
+
+	public static void scheduleFromDirectory(String foldername, int timeout, int n_workers) throws Exception {
+		String outFile = "ORT_Flexible_" + foldername + "_" + timeout + "_" + n_workers + ".csv";
+		String inFile = INFO.FLEXIBLE_PATH + foldername + "/";
+		System.out.println("Using ORTools to solve flexible job shop instances:\ninput= " + inFile + "\noutput= " + outFile + "\ntimeout= " + timeout
+				+ "\nworkers= " + n_workers);
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		File[] files = new File(inFile).listFiles();
+		int i = 0;
+		for (File file : files)
+			if (file.isFile()) {
+				i++;
+				System.out.println("Solving instance" + file.getName() + " " + i + "/" + files.length);
+				writer.println(file.getName() + ";" + solve(FlexibleJobShopInstance.read(inFile, file.getName()), timeout, n_workers));
+				writer.flush();
+			}
+		writer.close();
+	}
+
+	/*
+	 * Model size and solve time against the number of alternatives: every job
+	 * shop instance of the dataset folder is made flexible with each count of
+	 * flex_alternatives (1,2,3,5 by default, durations of the added machines
+	 * up to flex_spread=0.5 longer) and solved.
+	 */
+	public static void alternativesFromDirectory(int dataset_id, String foldername, int timeout, int n_workers) throws Exception {
+		int[] counts = ScalingBenchmark.ints(Main.option("flex_alternatives", "1,2,3,5"));
+		double spread = Double.parseDouble(Main.option("flex_spread", "0.5"));
+		long seed = Long.parseLong(Main.option("flex_seed", "1"));
+		String outFile = "ORT_Flexible_" + INFO.dataset_folder[dataset_id].substring(15, 20) + "_" + foldername + "_" + timeout + "_" + n_workers + ".csv";
+		String inFile = INFO.dataset_folder[dataset_id] + foldername + "/";
+		System.out.println("Flexible job shop scaling with " + Arrays.toString(counts) + " alternatives:\ninput= " + inFile + "\noutput= " + outFile
+				+ "\ntimeout= " + timeout + "\nworkers= " + n_workers);
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		writer.println("instance;alternatives;" + COLUMNS);
+		for (File file : new File(inFile).listFiles())
+			if (file.isFile()) {
+				JobShopInstance js = JobShopInstance.read(dataset_id, inFile, file.getName());
+				for (int k : counts) {
+					System.out.println("Solving instance" + file.getName() + " with " + k + " alternatives");
+					FlexibleJobShopInstance instance = FlexibleJobShopInstance.fromJobShop(js, k, spread, KnownOptimaGenerator.mix(seed, k));
+					writer.println(file.getName() + ";" + k + ";" + solve(instance, timeout, n_workers));
+					writer.flush();
+				}
+			}
+		writer.close();
+	}
+
+	static final String COLUMNS = "operations;alternatives_before;alternatives_after;lower_bound;greedy;variables;booleans;constraints;proto_bytes;instantiation_s;objective;time;optimal;bound";
+
+	/* result columns of COLUMNS, without the instance name */
+	static String solve(FlexibleJobShopInstance instance, int timeout, int n_workers) throws Exception {
+		long start = System.nanoTime();
+		int before = instance.nAlternatives();
+		long ub = instance.greedySchedule(null, null);
+		FlexibleJobShopInstance pruned = instance.prune(Double.parseDouble(Main.option("prune_ratio", "0")), ub);
+		long[] starts = new long[pruned.nOps];
+		int[] choice = new int[pruned.nOps];
+		ub = pruned.greedySchedule(starts, choice);
+		Model m = buildModel(pruned, ub);
+		addHints(m, starts, choice);
+		CpModelProto.Builder proto = m.model.getBuilder();
+		int booleans = 0;
+		for (int p : m.presence)
+			if (p >= 0)
+				booleans++;
+		String size = proto.getVariablesCount() + ";" + booleans + ";" + proto.getConstraintsCount() + ";" + proto.build().getSerializedSize();
+		double instantiation = (System.nanoTime() - start) / 1e9;
+
+		CpSolver solver = new CpSolver();
+		solver.getParameters().setMaxTimeInSeconds(timeout);
+		solver.getParameters().setRelativeGapLimit(Main.gap());
+		if (Main.seed() >= 0)
+			solver.getParameters().setRandomSeed(Main.seed());
+		solver.getParameters().setNumSearchWorkers(n_workers);
+		CpSolverStatus status = solver.solve(m.model);
+		double objective = ub;
+		if (status == CpSolverStatus.OPTIMAL || status == CpSolverStatus.FEASIBLE) {
+			objective = solver.objectiveValue();
+			if (ScheduleVerifier.enabled()) {
+				CpSolverResponse response = solver.response();
+				int[] endVars = SchedJobShopORTools.endVars(m.model, m.startVars);
+				ScheduleVerifier.record(new ScheduleVerifier(pruned.assigned(m.choice(response))).check("ORT_Flexible",
+						SchedJobShopORTools.schedule(solver, m.startVars), endVars == null ? null : SchedJobShopORTools.schedule(solver, endVars), objective));
+			}
+		}
+		System.out.println(instance.name + ";" + objective + ";" + solver.wallTime() + ";" + before + "->" + pruned.nAlternatives() + " alternatives");
+		return instance.nOps + ";" + before + ";" + pruned.nAlternatives() + ";" + instance.lowerBound() + ";" + ub + ";" + size + ";" + instantiation + ";"
+				+ objective + ";" + solver.wallTime() + ";" + (status == CpSolverStatus.OPTIMAL ? "Yes" : "No") + ";"
+				+ Math.max(instance.lowerBound(), solver.bestObjectiveBound());
+	}
+
+	static Model buildModel(FlexibleJobShopInstance instance, long horizon) {
+		Model m = new Model(instance);
+		CpModelProto.Builder proto = m.model.getBuilder();
+		int n = instance.nOps;
+		for (int o = 0; o < 2 * n + 1; o++)
+			proto.addVariables(IntegerVariableProto.newBuilder().addDomain(0).addDomain(horizon));
+		int maxDuration = 0;
+		for (int d : instance.altDuration)
+			maxDuration = Math.max(maxDuration, d);
+		int[] sizeVar = new int[maxDuration + 1];
+		Arrays.fill(sizeVar, -1);
+
+		int[][] byMachine = new int[instance.nMachines][];
+		int[] count = new int[instance.nMachines];
+		for (int a = 0; a < instance.nAlternatives(); a++)
+			count[instance.altMachine[a]]++;
+		for (int k = 0; k < byMachine.length; k++)
+			byMachine[k] = new int[count[k]];
+		Arrays.fill(count, 0);
+
+		for (int o = 0; o < n; o++) {
+			boolean optional = instance.altStart[o + 1] - instance.altStart[o] > 1;
+			LinearConstraintProto.Builder exactlyOne = LinearConstraintProto.newBuilder().addDomain(1).addDomain(1);
+			for (int a = instance.altStart[o]; a < instance.altStart[o + 1]; a++) {
+				int d = instance.altDuration[a];
+				if (sizeVar[d] < 0) {
+					sizeVar[d] = proto.getVariablesCount();
+					proto.addVariables(IntegerVariableProto.newBuilder().addDomain(d).addDomain(d));
+				}
+				ConstraintProto.Builder interval = ConstraintProto.newBuilder()
+						.setInterval(IntervalConstraintProto.newBuilder().setStart(o).setEnd(n + o).setSize(sizeVar[d]));
+				m.presence[a] = -1;
+				if (optional) {
+					m.presence[a] = proto.getVariablesCount();
+					proto.addVariables(IntegerVariableProto.newBuilder().addDomain(0).addDomain(1));
+					interval.addEnforcementLiteral(m.presence[a]);
+					exactlyOne.addVars(m.presence[a]).addCoeffs(1);
+				}
+				int machine = instance.altMachine[a];
+				byMachine[machine][count[machine]++] = proto.getConstraintsCount();
+				proto.addConstraints(interval);
+			}
+			if (optional)
+				proto.addConstraints(ConstraintProto.newBuilder().setLinear(exactlyOne));
+		}
+		for (int i = 0; i < instance.nJobs; i++)
+			for (int o = instance.jobStart[i] + 1; o < instance.jobStart[i + 1]; o++)
+				proto.addConstraints(ConstraintProto.newBuilder().setLinear(LeanModelBuilder.difference(n + o - 1, o, -horizon, 0)));
+		for (int[] intervals : byMachine) {
+			NoOverlapConstraintProto.Builder noOverlap = NoOverlapConstraintProto.newBuilder();
+			for (int c : intervals)
+				noOverlap.addIntervals(c);
+			proto.addConstraints(ConstraintProto.newBuilder().setNoOverlap(noOverlap));
+		}
+		IntegerArgumentProto.Builder max = IntegerArgumentProto.newBuilder().setTarget(2 * n);
+		for (int i = 0; i < instance.nJobs; i++)
+			if (instance.jobStart[i + 1] > instance.jobStart[i])
+				max.addVars(n + instance.jobStart[i + 1] - 1);
+		proto.addConstraints(ConstraintProto.newBuilder().setIntMax(max));
+		proto.setObjective(CpObjectiveProto.newBuilder().addVars(2 * n).addCoeffs(1));
+
+		m.startVars = new int[n];
+		for (int o = 0; o < n; o++)
+			m.startVars[o] = o;
+		return m;
+	}
+
+	static void addHints(Model m, long[] starts, int[] choice) {
+		SchedJobShopORTools.addHints(m.model, m.startVars, starts);
+		PartialVariableAssignment.Builder hint = m.model.getBuilder().getSolutionHintBuilder();
+		for (int o = 0; o < choice.length; o++)
+			for (int a = m.instance.altStart[o]; a < m.instance.altStart[o + 1]; a++)
+				if (m.presence[a] >= 0)
+					hint.addVars(m.presence[a]).addValues(a == choice[o] ? 1 : 0);
+	}
+}
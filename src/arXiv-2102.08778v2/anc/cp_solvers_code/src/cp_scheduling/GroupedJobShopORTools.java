@@ -0,0 +1,334 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import com.google.ortools.sat.ConstraintProto;
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpModelProto;
+import com.google.ortools.sat.CpObjectiveProto;
+import com.google.ortools.sat.CpSolver;
+import com.google.ortools.sat.CpSolverResponse;
+import com.google.ortools.sat.CpSolverStatus;
+import com.google.ortools.sat.CumulativeConstraintProto;
+import com.google.ortools.sat.IntegerArgumentProto;
+import com.google.ortools.sat.IntegerVariableProto;
+import com.google.ortools.sat.IntervalConstraintProto;
+import com.google.ortools.sat.LinearConstraintProto;
+import com.google.ortools.sat.NoOverlapConstraintProto;
+import com.google.ortools.sat.PartialVariableAssignment;
+
+/*
+ * Job shop with groups of identical machines (MachineGroups) on CP-SAT. A
+ * group of several machines is one cumulative of capacity its size where
+ * every operation has demand 1, instead of a no-overlap and an optional
+ * interval per machine. An operation that can go to several groups gets one
+ * optional interval per group and an exactly-one constraint, as in
+ * FlexibleJobShopORTools, and groups of a single machine keep a no-overlap.
+ * The solver only decides the group of every operation; the machines inside
+ * the groups are assigned afterwards by MachineGroups.assign.
+ */
+public class GroupedJobShopORTools {
+
+	static {
+		System.loadLibrary("jniortools");
+	}
+
+	static final String COLUMNS = "operations;machines;groups;resources;variables;booleans;constraints;proto_bytes;instantiation_s;objective;time;optimal;bound;assign_s";
+
+	/* the model with the indices needed to read its solutions */
+	static class Model {
+		final CpModel model = new CpModel();
+		final FlexibleJobShopInstance instance;
+		final MachineGroups groups;
+		/* group choices of operation o are optionStart[o] .. optionStart[o + 1] - 1 */
+		final int[] optionStart;
+		int[] optionGroup;
+		int[] optionDuration;
+		int[] presence;
+		int nOptions;
+		int resources;
+		int[] startVars;
+
+		Model(FlexibleJobShopInstance instance, MachineGroups groups) {
+			this.instance = instance;
+			this.groups = groups;
+			this.optionStart = new int[instance.nOps + 1];
+			this.optionGroup = new int[instance.nOps];
+			this.optionDuration = new int[instance.nOps];
+			this.presence = new int[instance.nOps];
+		}
+
+		void addOption(int group, int duration) {
+			if (nOptions == optionGroup.length) {
+				optionGroup = Arrays.copyOf(optionGroup, 2 * nOptions);
+				optionDuration = Arrays.copyOf(optionDuration, 2 * nOptions);
+				presence = Arrays.copyOf(presence, 2 * nOptions);
+			}
+			optionGroup[nOptions] = group;
+			optionDuration[nOptions] = duration;
+			presence[nOptions] = -1;
+			nOptions++;
+		}
+
+		/* option of o whose presence literal is true in response */
+		int chosen(CpSolverResponse response, int o) {
+			for (int k = optionStart[o]; k < optionStart[o + 1]; k++)
+				if (presence[k] < 0 || response.getSolution(presence[k]) == 1)
+					return k;
+			return optionStart[o];
+		}
+	}
+
+	/* flexible instances of data/fjsp/<folder>, groups detected unless machine_groups says otherwise */
+	public static void scheduleFromDirectory(String foldername, int timeout, int n_workers) throws Exception {
+		String outFile = "ORT_Grouped_" + foldername + "_" + timeout + "_" + n_workers + ".csv";
+		String inFile = INFO.FLEXIBLE_PATH + foldername + "/";
+		System.out.println("Using ORTools with machine groups to solve flexible job shop instances:\ninput= " + inFile + "\noutput= " + outFile
+				+ "\ntimeout= " + timeout + "\nworkers= " + n_workers);
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		writer.println("instance;" + COLUMNS);
+		for (File file : new File(inFile).listFiles())
+			if (file.isFile()) {
+				System.out.println("Solving instance" + file.getName());
+				FlexibleJobShopInstance instance = FlexibleJobShopInstance.read(inFile, file.getName());
+				writer.println(file.getName() + ";" + solve(instance, MachineGroups.fromOptions(instance, "auto"), timeout, n_workers));
+				writer.flush();
+			}
+		writer.close();
+	}
+
+	/*
+	 * Job shop instances of a dataset folder where every operation can use any
+	 * machine of the group of its machine (machine_groups, size:5 by default).
+	 * With group_compare=true the same instances are also solved with one
+	 * optional interval per machine by FlexibleJobShopORTools, into a second file.
+	 */
+	public static void groupsFromDirectory(int dataset_id, String foldername, int timeout, int n_workers) throws Exception {
+		String outFile = "ORT_Grouped_" + INFO.dataset_folder[dataset_id].substring(15, 20) + "_" + foldername + "_" + timeout + "_" + n_workers + ".csv";
+		String inFile = INFO.dataset_folder[dataset_id] + foldername + "/";
+		boolean compare = Main.option("group_compare", "false").equals("true");
+		System.out.println("Using ORTools with machine groups " + Main.option("machine_groups", "size:5") + ":\ninput= " + inFile + "\noutput= " + outFile
+				+ "\ntimeout= " + timeout + "\nworkers= " + n_workers);
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		writer.println("instance;" + COLUMNS);
+		PrintWriter perMachine = null;
+		if (compare) {
+			perMachine = new PrintWriter(Main.RESULTS_PATH + outFile.substring(0, outFile.length() - 4) + "_per_machine.csv", "UTF-8");
+			perMachine.println("instance;" + FlexibleJobShopORTools.COLUMNS);
+		}
+		for (File file : new File(inFile).listFiles())
+			if (file.isFile()) {
+				System.out.println("Solving instance" + file.getName());
+				JobShopInstance js = JobShopInstance.read(dataset_id, inFile, file.getName());
+				FlexibleJobShopInstance flexible = FlexibleJobShopInstance.fromJobShop(js, 1, 0, 0);
+				MachineGroups groups = MachineGroups.fromOptions(flexible, "size:5");
+				FlexibleJobShopInstance instance = MachineGroups.widen(js, groups);
+				writer.println(file.getName() + ";" + solve(instance, groups, timeout, n_workers));
+				writer.flush();
+				if (compare) {
+					perMachine.println(file.getName() + ";" + FlexibleJobShopORTools.solve(instance, timeout, n_workers));
+					perMachine.flush();
+				}
+			}
+		writer.close();
+		if (perMachine != null)
+			perMachine.close();
+	}
+
+	/* result columns of COLUMNS, without the instance name */
+	static String solve(FlexibleJobShopInstance instance, MachineGroups groups, int timeout, int n_workers) throws Exception {
+		long start = System.nanoTime();
+		long ub = instance.greedySchedule(null, null);
+		FlexibleJobShopInstance pruned = instance.prune(Double.parseDouble(Main.option("prune_ratio", "0")), ub);
+		long[] starts = new long[pruned.nOps];
+		int[] choice = new int[pruned.nOps];
+		ub = pruned.greedySchedule(starts, choice);
+		Model m = buildModel(pruned, groups, ub);
+		addHints(m, starts, choice);
+		CpModelProto.Builder proto = m.model.getBuilder();
+		int booleans = 0;
+		for (int k = 0; k < m.nOptions; k++)
+			if (m.presence[k] >= 0)
+				booleans++;
+		String size = proto.getVariablesCount() + ";" + booleans + ";" + proto.getConstraintsCount() + ";" + proto.build().getSerializedSize();
+		double instantiation = (System.nanoTime() - start) / 1e9;
+
+		CpSolver solver = new CpSolver();
+		solver.getParameters().setMaxTimeInSeconds(timeout);
+		solver.getParameters().setRelativeGapLimit(Main.gap());
+		if (Main.seed() >= 0)
+			solver.getParameters().setRandomSeed(Main.seed());
+		solver.getParameters().setNumSearchWorkers(n_workers);
+		CpSolverStatus status = solver.solve(m.model);
+		double objective = ub;
+		double assignTime = 0;
+		if (status == CpSolverStatus.OPTIMAL || status == CpSolverStatus.FEASIBLE) {
+			objective = solver.objectiveValue();
+			long assignStart = System.nanoTime();
+			long[] solution = SchedJobShopORTools.schedule(solver, m.startVars);
+			int[] machine = machines(m, solver.response(), solution);
+			assignTime = (System.nanoTime() - assignStart) / 1e9;
+			if (ScheduleVerifier.enabled()) {
+				int[] endVars = SchedJobShopORTools.endVars(m.model, m.startVars);
+				ScheduleVerifier.record(new ScheduleVerifier(pruned.assigned(pruned.alternativesOn(machine))).check("ORT_Grouped", solution,
+						endVars == null ? null : SchedJobShopORTools.schedule(solver, endVars), objective));
+			}
+		}
+		System.out.println(instance.name + ";" + objective + ";" + solver.wallTime() + ";" + groups.nGroups + " groups, " + m.resources + " resources");
+		return instance.nOps + ";" + instance.nMachines + ";" + groups.nGroups + ";" + m.resources + ";" + size + ";" + instantiation + ";" + objective + ";"
+				+ solver.wallTime() + ";" + (status == CpSolverStatus.OPTIMAL ? "Yes" : "No") + ";" + Math.max(instance.lowerBound(), solver.bestObjectiveBound())
+				+ ";" + assignTime;
+	}
+
+	/* machine of every operation: group from the solution, machine by colouring */
+	static int[] machines(Model m, CpSolverResponse response, long[] starts) {
+		int n = m.instance.nOps;
+		int[] opGroup = new int[n];
+		long[] ends = new long[n];
+		for (int o = 0; o < n; o++) {
+			int k = m.chosen(response, o);
+			opGroup[o] = m.optionGroup[k];
+			ends[o] = starts[o] + m.optionDuration[k];
+		}
+		return m.groups.assign(opGroup, starts, ends);
+	}
+
+	static Model buildModel(FlexibleJobShopInstance instance, MachineGroups groups, long horizon) {
+		Model m = new Model(instance, groups);
+		CpModelProto.Builder proto = m.model.getBuilder();
+		int n = instance.nOps;
+		for (int v = 0; v < 2 * n + 1; v++)
+			proto.addVariables(IntegerVariableProto.newBuilder().addDomain(0).addDomain(horizon));
+
+		// one option per group among the alternatives of every operation, which must run on every machine of the group
+		int[] seen = new int[groups.nGroups];
+		Arrays.fill(seen, -1);
+		int[] covered = new int[groups.nGroups];
+		int[] machineSeen = new int[instance.nMachines];
+		Arrays.fill(machineSeen, -1);
+		for (int o = 0; o < n; o++) {
+			m.optionStart[o] = m.nOptions;
+			for (int a = instance.altStart[o]; a < instance.altStart[o + 1]; a++) {
+				int g = groups.groupOf[instance.altMachine[a]];
+				if (machineSeen[instance.altMachine[a]] != o) {
+					machineSeen[instance.altMachine[a]] = o;
+					covered[g] = seen[g] >= m.optionStart[o] ? covered[g] + 1 : 1;
+				}
+				if (seen[g] >= m.optionStart[o]) {
+					if (m.optionDuration[seen[g]] != instance.altDuration[a])
+						throw new IllegalArgumentException("Operation " + o + " of " + instance.name + " has different durations on machines of group " + g);
+					continue;
+				}
+				seen[g] = m.nOptions;
+				m.addOption(g, instance.altDuration[a]);
+			}
+			for (int k = m.optionStart[o]; k < m.nOptions; k++) {
+				int g = m.optionGroup[k];
+				if (covered[g] != groups.members[g].length)
+					throw new IllegalArgumentException("Operation " + o + " of " + instance.name + " can only run on " + covered[g] + " of the "
+							+ groups.members[g].length + " machines of group " + g);
+			}
+		}
+		m.optionStart[n] = m.nOptions;
+
+		int maxDuration = 0;
+		for (int k = 0; k < m.nOptions; k++)
+			maxDuration = Math.max(maxDuration, m.optionDuration[k]);
+		int[] sizeVar = new int[maxDuration + 1];
+		Arrays.fill(sizeVar, -1);
+		int[] count = new int[groups.nGroups];
+		for (int k = 0; k < m.nOptions; k++)
+			count[m.optionGroup[k]]++;
+		int[][] byGroup = new int[groups.nGroups][];
+		for (int g = 0; g < groups.nGroups; g++)
+			byGroup[g] = new int[count[g]];
+		Arrays.fill(count, 0);
+
+		for (int o = 0; o < n; o++) {
+			boolean optional = m.optionStart[o + 1] - m.optionStart[o] > 1;
+			LinearConstraintProto.Builder exactlyOne = LinearConstraintProto.newBuilder().addDomain(1).addDomain(1);
+			for (int k = m.optionStart[o]; k < m.optionStart[o + 1]; k++) {
+				int d = m.optionDuration[k];
+				if (sizeVar[d] < 0) {
+					sizeVar[d] = proto.getVariablesCount();
+					proto.addVariables(IntegerVariableProto.newBuilder().addDomain(d).addDomain(d));
+				}
+				ConstraintProto.Builder interval = ConstraintProto.newBuilder()
+						.setInterval(IntervalConstraintProto.newBuilder().setStart(o).setEnd(n + o).setSize(sizeVar[d]));
+				if (optional) {
+					m.presence[k] = proto.getVariablesCount();
+					proto.addVariables(IntegerVariableProto.newBuilder().addDomain(0).addDomain(1));
+					interval.addEnforcementLiteral(m.presence[k]);
+					exactlyOne.addVars(m.presence[k]).addCoeffs(1);
+				}
+				int g = m.optionGroup[k];
+				byGroup[g][count[g]++] = proto.getConstraintsCount();
+				proto.addConstraints(interval);
+			}
+			if (optional)
+				proto.addConstraints(ConstraintProto.newBuilder().setLinear(exactlyOne));
+		}
+		for (int i = 0; i < instance.nJobs; i++)
+			for (int o = instance.jobStart[i] + 1; o < instance.jobStart[i + 1]; o++)
+				proto.addConstraints(ConstraintProto.newBuilder().setLinear(LeanModelBuilder.difference(n + o - 1, o, -horizon, 0)));
+
+		// demands and capacities are variables in this version of the proto
+		int one = -1;
+		int[] capacityVar = new int[groups.nGroups + 1];
+		Arrays.fill(capacityVar, -1);
+		for (int g = 0; g < groups.nGroups; g++) {
+			if (byGroup[g].length == 0)
+				continue;
+			m.resources++;
+			int capacity = groups.members[g].length;
+			if (capacity == 1) {
+				NoOverlapConstraintProto.Builder noOverlap = NoOverlapConstraintProto.newBuilder();
+				for (int c : byGroup[g])
+					noOverlap.addIntervals(c);
+				proto.addConstraints(ConstraintProto.newBuilder().setNoOverlap(noOverlap));
+				continue;
+			}
+			if (one < 0) {
+				one = proto.getVariablesCount();
+				proto.addVariables(IntegerVariableProto.newBuilder().addDomain(1).addDomain(1));
+			}
+			int c = capacity < capacityVar.length ? capacityVar[capacity] : -1;
+			if (c < 0) {
+				c = proto.getVariablesCount();
+				proto.addVariables(IntegerVariableProto.newBuilder().addDomain(capacity).addDomain(capacity));
+				if (capacity < capacityVar.length)
+					capacityVar[capacity] = c;
+			}
+			CumulativeConstraintProto.Builder cumulative = CumulativeConstraintProto.newBuilder().setCapacity(c);
+			for (int interval : byGroup[g])
+				cumulative.addIntervals(interval).addDemands(one);
+			proto.addConstraints(ConstraintProto.newBuilder().setCumulative(cumulative));
+		}
+
+		IntegerArgumentProto.Builder max = IntegerArgumentProto.newBuilder().setTarget(2 * n);
+		for (int i = 0; i < instance.nJobs; i++)
+			if (instance.jobStart[i + 1] > instance.jobStart[i])
+				max.addVars(n + instance.jobStart[i + 1] - 1);
+		proto.addConstraints(ConstraintProto.newBuilder().setIntMax(max));
+		proto.setObjective(CpObjectiveProto.newBuilder().addVars(2 * n).addCoeffs(1));
+
+		m.startVars = new int[n];
+		for (int o = 0; o < n; o++)
+			m.startVars[o] = o;
+		return m;
+	}
+
+	/* hints of a schedule given with one alternative per operation */
+	static void addHints(Model m, long[] starts, int[] choice) {
+		SchedJobShopORTools.addHints(m.model, m.startVars, starts);
+		PartialVariableAssignment.Builder hint = m.model.getBuilder().getSolutionHintBuilder();
+		for (int o = 0; o < choice.length; o++) {
+			int g = m.groups.groupOf[m.instance.altMachine[choice[o]]];
+			for (int k = m.optionStart[o]; k < m.optionStart[o + 1]; k++)
+				if (m.presence[k] >= 0)
+					hint.addVars(m.presence[k]).addValues(m.optionGroup[k] == g ? 1 : 0);
+		}
+	}
+}
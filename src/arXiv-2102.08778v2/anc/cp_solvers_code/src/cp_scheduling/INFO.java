@@ -4,5 +4,9 @@ public class INFO {
 
 	public static final String RESULTS_PATH = "./results/";
 	public static final String DATA_PATH = "./data/jobshop/";
+	public static final String OPENSHOP_PATH = "./data/openshop/";
+	public static final String FLEXIBLE_PATH = "./data/fjsp/";
 	public static final String dataset_folder[] = {"./data/jobshop/large/","./data/jobshop/bench/","./data/jobshop/small/"};
+	// makespan of every instance of the known optima benchmark (dataset 1)
+	public static final int KNOWN_OPTIMUM = 600000;
 }
@@ -0,0 +1,154 @@
+package cp_scheduling;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.ortools.sat.CpSolverSolutionCallback;
+
+/*
+ * Start times of the incumbents of a CP-SAT search, for warm starts,
+ * checkpoints or neighbourhood search. Reading every start variable of a large
+ * model on each improvement stalls the search workers, so an incumbent is only
+ * extracted when enough time went by since the previous extraction or when it
+ * improves the previous one enough. Values are read one by one from the
+ * callback into a reusable vector and compared with the previous incumbent.
+ * A Snapshot only keeps the changed entries, as (index, value) pairs against
+ * the previous snapshot, and rebuilds the complete schedule on demand. A full
+ * copy is taken again once the deltas since the last one add up to the number
+ * of operations, so the chain never holds more than about two schedules. The
+ * latest Snapshot is published through an atomic reference that any thread
+ * can read without locking.
+ *
+ * due and extract are called from the solution callback, which CP-SAT never
+ * runs concurrently.
+ */
+public class IncumbentExtractor {
+
+	public static final class Snapshot {
+		public final int version;
+		public final long objective;
+		public final double time;
+		/* operations whose start changed since the previous snapshot, all of them in the first one */
+		public final int[] changed;
+		/* their new starts */
+		final long[] values;
+		/* complete schedule of a full snapshot, null for a delta */
+		private final long[] base;
+		/* snapshot the delta applies to, null for a full snapshot */
+		private final Snapshot previous;
+		/* entries held by the deltas since the last full snapshot, this one included */
+		private final long chained;
+
+		Snapshot(int version, long objective, double time, int[] changed, long[] values, long[] base, Snapshot previous) {
+			this.version = version;
+			this.objective = objective;
+			this.time = time;
+			this.changed = changed;
+			this.values = values;
+			this.base = base;
+			this.previous = previous;
+			this.chained = previous == null ? 0 : previous.chained + changed.length;
+		}
+
+		/* Complete schedule, rebuilt from the last full snapshot and the deltas since. */
+		public long[] starts() {
+			Snapshot full = this;
+			int deltas = 0;
+			while (full.base == null) {
+				full = full.previous;
+				deltas++;
+			}
+			Snapshot[] chain = new Snapshot[deltas];
+			for (Snapshot s = this; s != full; s = s.previous)
+				chain[--deltas] = s;
+			long[] starts = full.base.clone();
+			for (Snapshot s : chain)
+				for (int k = 0; k < s.changed.length; k++)
+					starts[s.changed[k]] = s.values[k];
+			return starts;
+		}
+	}
+
+	private final int[] startIndex;
+	private final long intervalNanos;
+	private final double improvement;
+	// reused by every extraction
+	private final long[] current;
+	private final int[] delta;
+	private final AtomicReference<Snapshot> latest = new AtomicReference<Snapshot>();
+	private long lastNanos;
+	private double lastObjective = Double.NaN;
+	private int offered;
+	private int extracted;
+	private long changedTotal;
+
+	/*
+	 * startIndex: indices of the start variables in the model proto. An
+	 * incumbent is extracted at most every intervalMillis, unless it improves
+	 * the last extracted objective by the relative improvement or more.
+	 */
+	public IncumbentExtractor(int[] startIndex, long intervalMillis, double improvement) {
+		this.startIndex = startIndex;
+		this.intervalNanos = intervalMillis * 1_000_000L;
+		this.improvement = improvement;
+		this.current = new long[startIndex.length];
+		this.delta = new int[startIndex.length];
+	}
+
+	/* extract=true, checkpoints extract their incumbents in any case */
+	public static boolean enabled() {
+		return Main.option("extract", "false").equals("true");
+	}
+
+	/* Throttle of the extract_ms (default 1000) and extract_improvement (default 0.01) options. */
+	public static IncumbentExtractor fromOptions(int[] startIndex) {
+		return new IncumbentExtractor(startIndex, Long.parseLong(Main.option("extract_ms", "1000")),
+				Double.parseDouble(Main.option("extract_improvement", "0.01")));
+	}
+
+	/* True when the incumbent with this objective has to be extracted. */
+	public boolean due(double objective) {
+		offered++;
+		if (Double.isNaN(lastObjective))
+			return true;
+		return System.nanoTime() - lastNanos >= intervalNanos || lastObjective - objective >= improvement * Math.abs(lastObjective);
+	}
+
+	/* Reads the start variables of the solution being reported to callback, without copying its response. */
+	public Snapshot extract(CpSolverSolutionCallback callback, double objective, double time) {
+		Snapshot previous = latest.get();
+		int n = 0;
+		for (int o = 0; o < startIndex.length; o++) {
+			long v = callback.solutionIntegerValue(startIndex[o]);
+			if (previous == null || v != current[o]) {
+				current[o] = v;
+				delta[n++] = o;
+			}
+		}
+		int[] changed = Arrays.copyOf(delta, n);
+		long[] values = new long[n];
+		for (int k = 0; k < n; k++)
+			values[k] = current[changed[k]];
+		int version = previous == null ? 1 : previous.version + 1;
+		Snapshot s;
+		if (previous == null || previous.chained + n >= startIndex.length)
+			s = new Snapshot(version, Math.round(objective), time, changed, values, current.clone(), null);
+		else
+			s = new Snapshot(version, Math.round(objective), time, changed, values, null, previous);
+		latest.set(s);
+		lastNanos = System.nanoTime();
+		lastObjective = objective;
+		extracted++;
+		changedTotal += n;
+		return s;
+	}
+
+	/* Latest extracted incumbent, null before the first one. */
+	public Snapshot latest() {
+		return latest.get();
+	}
+
+	public String summary() {
+		return "Extracted " + extracted + " of " + offered + " incumbents, " + (extracted > 0 ? changedTotal / extracted : 0) + " changed starts on average";
+	}
+}
@@ -0,0 +1,465 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Island model metaheuristic: every island runs on its own thread, even
+ * islands a steady-state genetic algorithm and odd ones simulated annealing,
+ * over operation-based chromosomes (a permutation of the job ids where job i
+ * appears once per operation, its k-th occurrence standing for its k-th
+ * operation). Chromosomes are decoded into active schedules by the
+ * Giffler-Thompson algorithm, the chromosome breaking the ties of each
+ * conflict set. With island_decoder=semiactive they are decoded into
+ * semi-active schedules instead, every operation in chromosome order at the
+ * earliest time after its job and machine predecessors, and the genetic
+ * algorithm islands breed batch_lanes offspring per generation and evaluate
+ * them at once with a BatchEvaluator.
+ *
+ * Populations are primitive arrays owned by their island. Every
+ * island_migration decodings an island publishes a copy of its best
+ * chromosome in its slot of an AtomicReferenceArray and takes the elite of
+ * the previous island, the only state shared between threads. Islands stop
+ * at the timeout or when one of them reaches the lower bound.
+ */
+public class IslandSearch {
+
+	/* a published chromosome, never modified once published */
+	static final class Elite {
+		final int[] chromosome;
+		final long makespan;
+
+		Elite(int[] chromosome, long makespan) {
+			this.chromosome = chromosome;
+			this.makespan = makespan;
+		}
+	}
+
+	/*
+	 * Giffler-Thompson decoder with its scratch arrays, one per island. Each
+	 * step takes the machine with the earliest completion time among the
+	 * next operations of the jobs and, among its operations that could start
+	 * before that time, the one coming first in the chromosome. Machines keep
+	 * their candidate operations and earliest completion time, so a step
+	 * costs a scan of the machines and of two candidate lists.
+	 */
+	static final class Decoder {
+		final JobShopInstance instance;
+		final boolean semiActive;
+		final int[] jobOf;
+		final int[] position, count;
+		final long[] jobReady, machineReady, minEnd;
+		final int[][] candidates;
+		final int[] candidateCount;
+
+		Decoder(JobShopInstance instance) {
+			this(instance, false);
+		}
+
+		Decoder(JobShopInstance instance, boolean semiActive) {
+			this.instance = instance;
+			this.semiActive = semiActive;
+			this.jobOf = new int[instance.nOps];
+			for (int i = 0; i < instance.nJobs; i++)
+				for (int o = instance.jobStart[i]; o < instance.jobStart[i + 1]; o++)
+					jobOf[o] = i;
+			this.position = new int[instance.nOps];
+			this.count = new int[instance.nJobs];
+			this.jobReady = new long[instance.nJobs];
+			this.machineReady = new long[instance.nMachines];
+			this.minEnd = new long[instance.nMachines];
+			this.candidates = new int[instance.nMachines][Math.max(1, instance.nJobs)];
+			this.candidateCount = new int[instance.nMachines];
+		}
+
+		/* Returns the makespan, the start times are written to starts when it is not null. */
+		long decode(int[] chromosome, long[] starts) {
+			if (semiActive)
+				return decodeSemiActive(chromosome, starts);
+			JobShopInstance in = instance;
+			Arrays.fill(count, 0);
+			for (int p = 0; p < chromosome.length; p++) {
+				int i = chromosome[p];
+				position[in.jobStart[i] + count[i]++] = p;
+			}
+			Arrays.fill(jobReady, 0);
+			Arrays.fill(machineReady, 0);
+			Arrays.fill(candidateCount, 0);
+			for (int i = 0; i < in.nJobs; i++)
+				if (in.jobStart[i + 1] > in.jobStart[i]) {
+					int o = in.jobStart[i];
+					int m = in.machine[o];
+					candidates[m][candidateCount[m]++] = o;
+				}
+			for (int m = 0; m < in.nMachines; m++)
+				minEnd[m] = earliestEnd(m);
+			long makespan = 0;
+			for (int step = 0; step < in.nOps; step++) {
+				int best = -1;
+				for (int m = 0; m < in.nMachines; m++)
+					if (candidateCount[m] > 0 && (best < 0 || minEnd[m] < minEnd[best]))
+						best = m;
+				int m = best;
+				long c = minEnd[m];
+				int[] cands = candidates[m];
+				int chosen = -1;
+				// conflict set: candidates starting before c, and those completing at c, which a zero duration may not start before
+				for (int k = 0; k < candidateCount[m]; k++) {
+					int o = cands[k];
+					long est = Math.max(jobReady[jobOf[o]], machineReady[m]);
+					if ((est < c || est + in.duration[o] == c) && (chosen < 0 || position[o] < position[cands[chosen]]))
+						chosen = k;
+				}
+				int o = cands[chosen];
+				cands[chosen] = cands[--candidateCount[m]];
+				int i = jobOf[o];
+				long start = Math.max(jobReady[i], machineReady[m]);
+				long end = start + in.duration[o];
+				if (starts != null)
+					starts[o] = start;
+				jobReady[i] = end;
+				machineReady[m] = end;
+				makespan = Math.max(makespan, end);
+				if (o + 1 < in.jobStart[i + 1]) {
+					int next = in.machine[o + 1];
+					candidates[next][candidateCount[next]++] = o + 1;
+					// the new candidate can only lower the earliest completion of its machine
+					long e = Math.max(end, machineReady[next]) + in.duration[o + 1];
+					if (candidateCount[next] == 1 || e < minEnd[next])
+						minEnd[next] = e;
+				}
+				minEnd[m] = earliestEnd(m);
+			}
+			return makespan;
+		}
+
+		/* the schedule of BatchEvaluator */
+		private long decodeSemiActive(int[] chromosome, long[] starts) {
+			JobShopInstance in = instance;
+			Arrays.fill(count, 0);
+			Arrays.fill(jobReady, 0);
+			Arrays.fill(machineReady, 0);
+			long makespan = 0;
+			for (int i : chromosome) {
+				int o = in.jobStart[i] + count[i]++;
+				int m = in.machine[o];
+				long start = Math.max(jobReady[i], machineReady[m]);
+				long end = start + in.duration[o];
+				if (starts != null)
+					starts[o] = start;
+				jobReady[i] = end;
+				machineReady[m] = end;
+				makespan = Math.max(makespan, end);
+			}
+			return makespan;
+		}
+
+		private long earliestEnd(int m) {
+			long e = Long.MAX_VALUE;
+			for (int k = 0; k < candidateCount[m]; k++) {
+				int o = candidates[m][k];
+				e = Math.min(e, Math.max(jobReady[jobOf[o]], machineReady[m]) + instance.duration[o]);
+			}
+			return e;
+		}
+	}
+
+	/* one island, run by its own thread */
+	static final class Island implements Runnable {
+		final int id;
+		final IslandSearch search;
+		final Decoder decoder;
+		final SplittableRandom random;
+		long decodings, migrations;
+		int[] best;
+		long bestMakespan = Long.MAX_VALUE;
+
+		Island(int id, IslandSearch search, long seed) {
+			this.id = id;
+			this.search = search;
+			this.decoder = new Decoder(search.instance, search.semiActive);
+			this.random = new SplittableRandom(KnownOptimaGenerator.mix(seed, id));
+		}
+
+		public void run() {
+			if (id % 2 == 0)
+				geneticAlgorithm();
+			else
+				annealing();
+		}
+
+		private long evaluate(int[] chromosome) {
+			return evaluated(chromosome, decoder.decode(chromosome, null));
+		}
+
+		private long evaluated(int[] chromosome, long makespan) {
+			decodings++;
+			if (makespan < bestMakespan) {
+				bestMakespan = makespan;
+				best = chromosome.clone();
+				search.improved(makespan);
+			}
+			return makespan;
+		}
+
+		/* Publishes the best chromosome and returns the elite of the previous island if it is better than limit. */
+		private int[] migrate(long limit) {
+			search.elites.set(id, new Elite(best, bestMakespan));
+			Elite elite = search.elites.get((id + search.islands.length - 1) % search.islands.length);
+			if (elite == null || elite.makespan >= limit)
+				return null;
+			migrations++;
+			return elite.chromosome.clone();
+		}
+
+		private boolean stop() {
+			return System.nanoTime() > search.deadline || search.best.get() <= search.lowerBound;
+		}
+
+		/* one offspring per generation, or a batch of them with the semi-active decoder */
+		private void geneticAlgorithm() {
+			int size = search.population;
+			int n = search.instance.nOps;
+			int[][] population = new int[size][];
+			long[] fitness = new long[size];
+			for (int p = 0; p < size; p++) {
+				population[p] = search.randomChromosome(random);
+				fitness[p] = evaluate(population[p]);
+			}
+			BatchEvaluator batch = search.semiActive ? BatchEvaluator.create(search.instance, search.lanes) : null;
+			int[][] children = new int[batch != null ? batch.lanes : 1][n];
+			long[] childFitness = new long[children.length];
+			boolean[] kept = new boolean[search.instance.nJobs];
+			long nextMigration = search.migration;
+			while (!stop()) {
+				for (int[] child : children) {
+					int[] a = population[tournament(fitness)];
+					int[] b = population[tournament(fitness)];
+					crossover(a, b, child, kept);
+					if (random.nextDouble() < search.mutation)
+						swap(child);
+				}
+				if (batch != null)
+					batch.evaluate(children, 0, children.length, childFitness);
+				else
+					childFitness[0] = decoder.decode(children[0], null);
+				for (int c = 0; c < children.length; c++) {
+					long f = evaluated(children[c], childFitness[c]);
+					int worst = worst(fitness);
+					if (f < fitness[worst]) {
+						int[] replaced = population[worst];
+						population[worst] = children[c];
+						fitness[worst] = f;
+						children[c] = replaced;
+					}
+				}
+				if (decodings >= nextMigration) {
+					nextMigration += search.migration;
+					// the last child may have replaced the worst member
+					int worst = worst(fitness);
+					int[] migrant = migrate(fitness[worst]);
+					if (migrant != null) {
+						population[worst] = migrant;
+						fitness[worst] = evaluate(migrant);
+					}
+				}
+			}
+			search.elites.set(id, new Elite(best, bestMakespan));
+		}
+
+		private static int worst(long[] fitness) {
+			int worst = 0;
+			for (int p = 1; p < fitness.length; p++)
+				if (fitness[p] > fitness[worst])
+					worst = p;
+			return worst;
+		}
+
+		private int tournament(long[] fitness) {
+			int a = random.nextInt(fitness.length), b = random.nextInt(fitness.length);
+			return fitness[a] <= fitness[b] ? a : b;
+		}
+
+		/* job order crossover: the genes of a random half of the jobs stay where they are in a, the others come in the order of b */
+		private void crossover(int[] a, int[] b, int[] child, boolean[] kept) {
+			for (int i = 0; i < kept.length; i++)
+				kept[i] = random.nextBoolean();
+			int q = 0;
+			for (int p = 0; p < a.length; p++) {
+				if (kept[a[p]]) {
+					child[p] = a[p];
+					continue;
+				}
+				while (kept[b[q]])
+					q++;
+				child[p] = b[q++];
+			}
+		}
+
+		private void swap(int[] chromosome) {
+			int p = random.nextInt(chromosome.length), q = random.nextInt(chromosome.length);
+			int t = chromosome[p];
+			chromosome[p] = chromosome[q];
+			chromosome[q] = t;
+		}
+
+		/* swaps of two genes, geometric cooling from island_temperature times the lower bound, reheated at every migration */
+		private void annealing() {
+			int[] current = search.randomChromosome(random);
+			long currentMakespan = evaluate(current);
+			double initial = search.temperature * search.lowerBound;
+			double temperature = initial;
+			while (!stop()) {
+				int p = random.nextInt(current.length), q = random.nextInt(current.length);
+				if (current[p] == current[q])
+					continue;
+				int t = current[p];
+				current[p] = current[q];
+				current[q] = t;
+				long makespan = evaluate(current);
+				long delta = makespan - currentMakespan;
+				if (delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature))
+					currentMakespan = makespan;
+				else {
+					current[q] = current[p];
+					current[p] = t;
+				}
+				temperature = Math.max(1e-3, temperature * search.cooling);
+				if (decodings % search.migration == 0) {
+					int[] migrant = migrate(currentMakespan);
+					if (migrant != null) {
+						current = migrant;
+						currentMakespan = evaluate(current);
+						temperature = initial;
+					}
+				}
+			}
+			search.elites.set(id, new Elite(best, bestMakespan));
+		}
+	}
+
+	final JobShopInstance instance;
+	final Island[] islands;
+	final AtomicReferenceArray<Elite> elites;
+	/* best makespan over the islands, read to stop at the lower bound */
+	final AtomicLong best = new AtomicLong(Long.MAX_VALUE);
+	final long lowerBound;
+	final int population = Integer.parseInt(Main.option("island_population", "50"));
+	final int migration = Integer.parseInt(Main.option("island_migration", "500"));
+	final double mutation = Double.parseDouble(Main.option("island_mutation", "0.3"));
+	final double temperature = Double.parseDouble(Main.option("island_temperature", "0.01"));
+	final double cooling = Double.parseDouble(Main.option("island_cooling", "0.9995"));
+	final boolean semiActive = Main.option("island_decoder", "active").equals("semiactive");
+	final int lanes = Integer.parseInt(Main.option("batch_lanes", "16"));
+	long deadline;
+
+	IslandSearch(JobShopInstance instance, int n_islands, long seed) {
+		this.instance = instance;
+		this.lowerBound = instance.lowerBound();
+		this.islands = new Island[n_islands];
+		this.elites = new AtomicReferenceArray<Elite>(n_islands);
+		for (int k = 0; k < n_islands; k++)
+			islands[k] = new Island(k, this, seed);
+	}
+
+	void improved(long makespan) {
+		long b;
+		while (makespan < (b = best.get()) && !best.compareAndSet(b, makespan))
+			;
+	}
+
+	int[] randomChromosome(SplittableRandom random) {
+		int[] chromosome = new int[instance.nOps];
+		for (int i = 0; i < instance.nJobs; i++)
+			for (int o = instance.jobStart[i]; o < instance.jobStart[i + 1]; o++)
+				chromosome[o] = i;
+		for (int p = chromosome.length - 1; p > 0; p--) {
+			int q = random.nextInt(p + 1);
+			int t = chromosome[p];
+			chromosome[p] = chromosome[q];
+			chromosome[q] = t;
+		}
+		return chromosome;
+	}
+
+	/* Runs the islands until the timeout and returns the best elite. */
+	Elite solve(int timeout) throws InterruptedException {
+		deadline = System.nanoTime() + (long) (timeout * 1e9);
+		Thread[] threads = new Thread[islands.length];
+		for (int k = 0; k < islands.length; k++) {
+			threads[k] = new Thread(islands[k], "island-" + k);
+			threads[k].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		Elite winner = null;
+		for (int k = 0; k < islands.length; k++) {
+			Elite e = elites.get(k);
+			if (e != null && (winner == null || e.makespan < winner.makespan))
+				winner = e;
+		}
+		return winner;
+	}
+
+	public static void scheduleFromDirectory(int dataset_id, String foldername, int timeout, int n_workers) throws Exception {
+		String outFile = "Islands_" + INFO.dataset_folder[dataset_id].substring(15, 20) + "_" + foldername + "_" + timeout + "_" + n_workers + ".csv";
+		String inFile = INFO.dataset_folder[dataset_id] + foldername + "/";
+		System.out.println("Using the island metaheuristic to solve:\ninput= " + inFile + "\noutput= " + outFile + "\ntimeout= " + timeout
+				+ "\nworkers= " + n_workers);
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		File[] files = new File(inFile).listFiles();
+		int i = 0;
+		for (File file : files)
+			if (file.isFile()) {
+				i++;
+				System.out.println("Solving instance" + file.getName() + " " + i + "/" + files.length);
+				writer.println(scheduleFromFile(dataset_id, inFile, file.getName(), timeout, n_workers));
+				writer.flush();
+			}
+		writer.close();
+	}
+
+	/*
+	 * Same columns as SchedJobShopORTools: objective, time, optimal (the lower
+	 * bound is reached), branches (decoded schedules), conflicts (migrations)
+	 * and bound (the lower bound of JobShopInstance).
+	 */
+	public static String scheduleFromFile(int dataset_id, String folder, String filename, int timeout, int n_workers) throws Exception {
+		long startTime = System.currentTimeMillis();
+		Profiler profiler = new Profiler("Islands", filename);
+		profiler.phase("variables");
+		JobShopInstance instance = JobShopInstance.read(dataset_id, folder, filename);
+		int n_islands = n_workers > 0 ? n_workers : Runtime.getRuntime().availableProcessors();
+		IslandSearch search = new IslandSearch(instance, n_islands, Main.seed() >= 0 ? Main.seed() : 1);
+		profiler.end();
+		double instantiation_time = (double) (System.currentTimeMillis() - startTime) / 1000;
+		profiler.phase("solve");
+		long solveStart = System.nanoTime();
+		Elite winner = search.solve(timeout);
+		double time = (System.nanoTime() - solveStart) / 1e9;
+		profiler.end();
+		long decodings = 0, migrations = 0;
+		for (Island island : search.islands) {
+			decodings += island.decodings;
+			migrations += island.migrations;
+		}
+		System.out.println(n_islands + " islands, " + decodings + " schedules decoded (" + Math.round(decodings / time) + "/s), " + migrations + " migrations");
+		if (winner == null) {
+			System.out.println("No solution found.");
+			return filename + ";NoSolution;" + time + ";No;" + decodings + ";" + migrations + ";" + search.lowerBound + profiler.columns(instantiation_time, instance.nOps);
+		}
+		if (ScheduleVerifier.enabled()) {
+			long[] starts = new long[instance.nOps];
+			new Decoder(instance, search.semiActive).decode(winner.chromosome, starts);
+			ScheduleVerifier.audit(dataset_id, folder, filename, "Islands", starts, winner.makespan);
+		}
+		String optimal = winner.makespan <= search.lowerBound ? "Yes" : "No";
+		System.out.println(filename + ";" + winner.makespan + ";" + time + ";" + optimal);
+		return filename + ";" + (double) winner.makespan + ";" + time + ";" + optimal + ";" + decodings + ";" + migrations + ";" + search.lowerBound
+				+ profiler.columns(instantiation_time, instance.nOps);
+	}
+}
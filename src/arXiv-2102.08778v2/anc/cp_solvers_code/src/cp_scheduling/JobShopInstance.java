@@ -0,0 +1,249 @@
+package cp_scheduling;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import cp_scheduling.SchedJobShop.DataReader;
+
+/*
+ * Job shop instance held in flat primitive arrays. Operation o of job i is
+ * stored at index jobStart[i] + k, k being its position in the job route, so
+ * the operations of a job are contiguous and in precedence order.
+ */
+public class JobShopInstance {
+
+	final String name;
+	final int nJobs;
+	final int nMachines;
+	final int nOps;
+	final int[] jobStart;
+	final int[] machine;
+	final int[] duration;
+
+	JobShopInstance(String name, int nJobs, int nMachines, int[] jobStart, int[] machine, int[] duration) {
+		this.name = name;
+		this.nJobs = nJobs;
+		this.nMachines = nMachines;
+		this.jobStart = jobStart;
+		this.nOps = jobStart[nJobs];
+		this.machine = machine;
+		this.duration = duration;
+	}
+
+	/*
+	 * Reads an instance with the same conventions as the scheduleFromFile
+	 * methods: for dataset 1 (known optima) jobs have a variable number of
+	 * operations terminated by "-1 -1", otherwise every job has nMachines
+	 * operations. Files ending with .jsb are binary, see readBinary.
+	 */
+	public static JobShopInstance read(int dataset_id, String folder, String filename) throws IOException {
+		Map<String, JobShopInstance> cache = JobShopInstance.cache;
+		if (cache == null)
+			return parse(dataset_id, folder, filename);
+		String key = dataset_id + ":" + cacheKey(folder + filename);
+		JobShopInstance instance = cache.get(key);
+		if (instance == null) {
+			instance = parse(dataset_id, folder, filename);
+			cache.put(key, instance);
+		}
+		return instance;
+	}
+
+	/*
+	 * Keeps the instances read from now on in memory, keyed by path and
+	 * modification time, for the resident solver: the parsed instances and,
+	 * for the encoders that read the file themselves, its numbers (see
+	 * DataReader). Each cache holds the capacity most recently used files.
+	 * Instances are never modified once read.
+	 */
+	static void enableCache(int capacity) {
+		if (cache == null)
+			cache = lru(capacity);
+		DataReader.enableCache(capacity);
+	}
+
+	private static volatile Map<String, JobShopInstance> cache;
+
+	/* thread-safe map dropping the least recently used entry beyond capacity */
+	static <V> Map<String, V> lru(int capacity) {
+		return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+				return size() > capacity;
+			}
+		});
+	}
+
+	/* path and version of a file, a modified file gets a new key */
+	static String cacheKey(String path) throws IOException {
+		File file = new File(path);
+		return file.getCanonicalPath() + ":" + file.lastModified() + ":" + file.length();
+	}
+
+	private static JobShopInstance parse(int dataset_id, String folder, String filename) throws IOException {
+		if (filename.endsWith(".jsb"))
+			return readBinary(folder, filename);
+		DataReader data = new DataReader(folder + filename);
+		int nJobs = data.next();
+		int nMachines = data.next();
+		int boundary = nMachines;
+		if (dataset_id == 1)
+			boundary = nMachines * nJobs;
+
+		int[] jobStart = new int[nJobs + 1];
+		// known optima jobs are shorter than nMachines * nJobs operations, grow as needed
+		int capacity = (int) Math.min((long) nJobs * nMachines, dataset_id == 1 ? 1 << 16 : Integer.MAX_VALUE - 8);
+		int[] machine = new int[Math.max(1, capacity)];
+		int[] duration = new int[Math.max(1, capacity)];
+		int n = 0;
+		for (int i = 0; i < nJobs; i++) {
+			jobStart[i] = n;
+			for (int j = 0; j < boundary; j++) {
+				int m = data.next();
+				int d = data.next();
+				if (m == -1)
+					break;
+				if (n == machine.length) {
+					machine = Arrays.copyOf(machine, 2 * n);
+					duration = Arrays.copyOf(duration, 2 * n);
+				}
+				machine[n] = m;
+				duration[n] = d;
+				n++;
+			}
+		}
+		jobStart[nJobs] = n;
+		return new JobShopInstance(filename, nJobs, nMachines, jobStart, Arrays.copyOf(machine, n),
+				Arrays.copyOf(duration, n));
+	}
+
+	/* binary instance written by KnownOptimaGenerator.writeBinary */
+	static JobShopInstance readBinary(String folder, String filename) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(folder + filename), 1 << 16))) {
+			if (in.readInt() != KnownOptimaGenerator.BINARY_MAGIC)
+				throw new IOException("Not a binary instance: " + folder + filename);
+			int nJobs = in.readInt();
+			int nMachines = in.readInt();
+			int nOps = in.readInt();
+			int[] jobStart = new int[nJobs + 1];
+			int[] machine = new int[nOps];
+			int[] duration = new int[nOps];
+			int n = 0;
+			for (int i = 0; i < nJobs; i++) {
+				jobStart[i] = n;
+				for (int k = in.readInt(); k > 0; k--) {
+					machine[n] = in.readInt();
+					duration[n] = in.readInt();
+					n++;
+				}
+			}
+			jobStart[nJobs] = n;
+			return new JobShopInstance(filename, nJobs, nMachines, jobStart, machine, duration);
+		}
+	}
+
+	public int job(int op) {
+		int i = Arrays.binarySearch(jobStart, op);
+		if (i < 0)
+			return -i - 2;
+		// skip empty jobs sharing the same offset
+		while (i < nJobs && jobStart[i + 1] == op)
+			i++;
+		return i;
+	}
+
+	/* Sum of all durations, the trivial horizon used by every encoding. */
+	public long horizon() {
+		long h = 0;
+		for (int o = 0; o < nOps; o++)
+			h += duration[o];
+		return h;
+	}
+
+	public long[] machineLoads() {
+		long[] load = new long[nMachines];
+		for (int o = 0; o < nOps; o++)
+			load[machine[o]] += duration[o];
+		return load;
+	}
+
+	/* operation indices of every machine in increasing order, counting sort by machine */
+	public int[][] operationsByMachine() {
+		int[] count = new int[nMachines];
+		for (int o = 0; o < nOps; o++)
+			count[machine[o]]++;
+		int[][] byMachine = new int[nMachines][];
+		for (int m = 0; m < nMachines; m++)
+			byMachine[m] = new int[count[m]];
+		Arrays.fill(count, 0);
+		for (int o = 0; o < nOps; o++) {
+			int m = machine[o];
+			byMachine[m][count[m]++] = o;
+		}
+		return byMachine;
+	}
+
+	/* max(longest job, most loaded machine) */
+	public long lowerBound() {
+		long lb = 0;
+		for (int i = 0; i < nJobs; i++) {
+			long len = 0;
+			for (int o = jobStart[i]; o < jobStart[i + 1]; o++)
+				len += duration[o];
+			lb = Math.max(lb, len);
+		}
+		for (long load : machineLoads())
+			lb = Math.max(lb, load);
+		return lb;
+	}
+
+	/*
+	 * Greedy list scheduling: repeatedly appends the next operation of the job
+	 * that can start earliest. Runs in O(n log nJobs) and gives a feasible
+	 * semi-active schedule, written to starts when it is not null.
+	 */
+	public long greedySchedule(long[] starts) {
+		long[] jobReady = new long[nJobs];
+		long[] machineReady = new long[nMachines];
+		int[] next = new int[nJobs];
+		PriorityQueue<long[]> queue = new PriorityQueue<>(Math.max(1, nJobs), (a, b) -> Long.compare(a[0], b[0]));
+		for (int i = 0; i < nJobs; i++) {
+			next[i] = jobStart[i];
+			if (next[i] < jobStart[i + 1])
+				queue.add(new long[] { machineReady[machine[next[i]]], i });
+		}
+		long makespan = 0;
+		while (!queue.isEmpty()) {
+			long[] top = queue.poll();
+			int i = (int) top[1];
+			int o = next[i];
+			long est = Math.max(jobReady[i], machineReady[machine[o]]);
+			if (est > top[0]) {
+				// machine got busier since this job was queued
+				top[0] = est;
+				queue.add(top);
+				continue;
+			}
+			if (starts != null)
+				starts[o] = est;
+			long end = est + duration[o];
+			jobReady[i] = end;
+			machineReady[machine[o]] = end;
+			makespan = Math.max(makespan, end);
+			next[i]++;
+			if (next[i] < jobStart[i + 1]) {
+				top[0] = Math.max(end, machineReady[machine[next[i]]]);
+				queue.add(top);
+			}
+		}
+		return makespan;
+	}
+}
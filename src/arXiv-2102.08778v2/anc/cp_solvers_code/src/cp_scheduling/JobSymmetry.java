@@ -0,0 +1,187 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.google.ortools.sat.ConstraintProto;
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpModelProto;
+import com.google.ortools.sat.IntegerVariableProto;
+
+import ilog.concert.IloException;
+import ilog.concert.IloIntervalVar;
+import ilog.cp.IloCP;
+
+/*
+ * Identical jobs: same route of machines and same durations. Any schedule
+ * stays feasible, with the same makespan, when two identical jobs exchange
+ * their operations from some position on, so the identical jobs of a class
+ * can be ordered position by position: for consecutive jobs k and k + 1 of a
+ * class, the operation at position p of k starts no later than the one of
+ * k + 1, for every p (the first time the order is reversed at position p, the
+ * exchange of the remaining operations restores it). With the symmetry
+ * option on, the Advanced encodings add these constraints.
+ *
+ * Jobs are hashed on their route, so classes are found in time linear in the
+ * number of operations, hash collisions being checked operation by operation.
+ */
+public class JobSymmetry {
+
+	final JobShopInstance instance;
+	/* class representative of every job, the job itself when it is alone */
+	final int[] classOf;
+	int nClasses;
+	int identicalJobs;
+	int nPairs;
+
+	JobSymmetry(JobShopInstance instance) {
+		this.instance = instance;
+		this.classOf = new int[instance.nJobs];
+		Map<Long, List<Integer>> representatives = new HashMap<Long, List<Integer>>();
+		int[] size = new int[instance.nJobs];
+		for (int i = 0; i < instance.nJobs; i++) {
+			List<Integer> candidates = representatives.computeIfAbsent(hash(i), h -> new ArrayList<Integer>());
+			classOf[i] = i;
+			for (int r : candidates)
+				if (sameRoute(r, i)) {
+					classOf[i] = r;
+					break;
+				}
+			if (classOf[i] == i)
+				candidates.add(i);
+			size[classOf[i]]++;
+		}
+		for (int i = 0; i < instance.nJobs; i++)
+			if (size[i] > 1) {
+				nClasses++;
+				identicalJobs += size[i];
+				nPairs += (size[i] - 1) * (instance.jobStart[i + 1] - instance.jobStart[i]);
+			}
+	}
+
+	public static boolean enabled() {
+		return Main.option("symmetry", "off").equals("on");
+	}
+
+	public static JobSymmetry detect(JobShopInstance instance) {
+		return new JobSymmetry(instance);
+	}
+
+	private long hash(int i) {
+		long h = instance.jobStart[i + 1] - instance.jobStart[i];
+		for (int o = instance.jobStart[i]; o < instance.jobStart[i + 1]; o++)
+			h = KnownOptimaGenerator.mix(h, ((long) instance.machine[o] << 32) | instance.duration[o]);
+		return h;
+	}
+
+	private boolean sameRoute(int a, int b) {
+		int length = instance.jobStart[a + 1] - instance.jobStart[a];
+		if (instance.jobStart[b + 1] - instance.jobStart[b] != length)
+			return false;
+		for (int k = 0; k < length; k++) {
+			int oa = instance.jobStart[a] + k;
+			int ob = instance.jobStart[b] + k;
+			if (instance.machine[oa] != instance.machine[ob] || instance.duration[oa] != instance.duration[ob])
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Operation pairs (first, second) of the ordering constraints, flattened:
+	 * start of pairs[2k] <= start of pairs[2k + 1].
+	 */
+	public int[] orderedPairs() {
+		int[] pairs = new int[2 * nPairs];
+		// last job seen of every class
+		int[] last = new int[instance.nJobs];
+		for (int i = 0; i < instance.nJobs; i++)
+			last[i] = -1;
+		int n = 0;
+		for (int i = 0; i < instance.nJobs; i++) {
+			int c = classOf[i];
+			int k = last[c];
+			last[c] = i;
+			if (k < 0)
+				continue;
+			for (int p = 0; p < instance.jobStart[i + 1] - instance.jobStart[i]; p++) {
+				pairs[n++] = instance.jobStart[k] + p;
+				pairs[n++] = instance.jobStart[i] + p;
+			}
+		}
+		return pairs;
+	}
+
+	/* Adds the ordering constraints to the CP-SAT model and returns the summary. */
+	public String apply(CpModel model, int[] startVars) {
+		CpModelProto.Builder proto = model.getBuilder();
+		IntegerVariableProto mkVar = proto.getVariables(proto.getObjective().getVars(0));
+		long horizon = mkVar.getDomain(mkVar.getDomainCount() - 1);
+		int[] pairs = orderedPairs();
+		for (int k = 0; k < pairs.length; k += 2)
+			proto.addConstraints(ConstraintProto.newBuilder().setLinear(LeanModelBuilder.difference(startVars[pairs[k]], startVars[pairs[k + 1]], -horizon, 0)));
+		return summary();
+	}
+
+	/* Same constraints on the CP Optimizer intervals, operations in job-major order. */
+	public String apply(IloCP cp, List<IloIntervalVar> operations) throws IloException {
+		int[] pairs = orderedPairs();
+		for (int k = 0; k < pairs.length; k += 2)
+			cp.add(cp.startBeforeStart(operations.get(pairs[k]), operations.get(pairs[k + 1])));
+		return summary();
+	}
+
+	public String summary() {
+		return nClasses + " classes of identical jobs with " + identicalJobs + " jobs, " + nPairs + " ordering constraints";
+	}
+
+	/*
+	 * Classes of identical jobs of every instance of the folder, and solve time
+	 * of the Advanced encodings of symmetry_encoders (ORT_Adv,CPO_Adv) without
+	 * and with the ordering constraints. The store and symmetry options of the
+	 * runs only apply to this thread, the options of the user are kept.
+	 */
+	public static void compareFromDirectory(int dataset_id, String foldername, int timeout, int n_workers) throws Exception {
+		String[] encoders = Main.option("symmetry_encoders", "ORT_Adv,CPO_Adv").split(",");
+		String outFile = "Symmetry_" + INFO.dataset_folder[dataset_id].substring(15, 20) + "_" + foldername + "_" + timeout + "_" + n_workers + ".csv";
+		String inFile = INFO.dataset_folder[dataset_id] + foldername + "/";
+		System.out.println("Identical job symmetry breaking with " + String.join(",", encoders) + ":\ninput= " + inFile + "\noutput= " + outFile
+				+ "\ntimeout= " + timeout + "\nworkers= " + n_workers);
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		writer.println("instance;jobs;classes;identical_jobs;constraints;encoder;objective_off;time_off;objective_on;time_on;speedup");
+		for (File file : new File(inFile).listFiles())
+			if (file.isFile()) {
+				JobShopInstance instance = JobShopInstance.read(dataset_id, inFile, file.getName());
+				JobSymmetry symmetry = detect(instance);
+				System.out.println(file.getName() + ": " + symmetry.summary());
+				for (String encoder : encoders) {
+					String[] off = solve(encoder, "off", dataset_id, inFile, file.getName(), instance, timeout, n_workers);
+					String[] on = solve(encoder, "on", dataset_id, inFile, file.getName(), instance, timeout, n_workers);
+					double timeOff = ScalingBenchmark.number(off[2]);
+					double timeOn = ScalingBenchmark.number(on[2]);
+					writer.println(file.getName() + ";" + instance.nJobs + ";" + symmetry.nClasses + ";" + symmetry.identicalJobs + ";" + symmetry.nPairs + ";"
+							+ encoder + ";" + off[1] + ";" + timeOff + ";" + on[1] + ";" + timeOn + ";" + timeOff / timeOn);
+					writer.flush();
+				}
+			}
+		writer.close();
+	}
+
+	private static String[] solve(String encoder, String symmetry, int dataset_id, String folder, String filename, JobShopInstance instance, int timeout,
+			int n_workers) throws Exception {
+		// both runs are measured
+		Properties runOptions = new Properties();
+		runOptions.setProperty("store", "off");
+		runOptions.setProperty("symmetry", symmetry);
+		String row = Main.withOptions(runOptions, () -> encoder.equals("CPO_Adv")
+				? SchedJobShop.scheduleFromFile(dataset_id, folder, filename, timeout, IloCP.ParameterValues.Restart, 100, 1.15, n_workers)
+				: SchedJobShopORTools.scheduleFromFile(dataset_id, folder, filename, timeout, false, n_workers, null, null, instance));
+		String[] cols = row.split(";", -1);
+		return cols.length < 3 ? new String[] { filename, "ERROR", "NaN" } : cols;
+	}
+}
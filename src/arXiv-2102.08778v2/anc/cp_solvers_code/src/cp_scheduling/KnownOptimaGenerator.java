@@ -0,0 +1,362 @@
+package cp_scheduling;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/*
+ * Generator of job shop instances with a known optimal makespan, following the
+ * partition and link procedure of the Known-Optima benchmark. The timeline
+ * [0, optimum) of every machine is cut at random points into consecutive
+ * operations, so machines never idle. Operations are then swept by start time
+ * and linked into jobs: an operation extends a random job whose last operation
+ * has already ended, or starts a new job. The "long" family always extends a
+ * job when it can, the "short" family closes a job after 2 + Poisson(mean)
+ * operations. The linked schedule is feasible and ends at the optimum on every
+ * machine, so the optimum equals the machine load lower bound.
+ *
+ * Everything derives from the seed: machine m is partitioned with its own
+ * random stream, in parallel, and the sweep uses another one. The instance is
+ * held in a few ints per operation and streamed to a text file in the format of
+ * the benchmark (jobs terminated by -1 -1) or to a binary file, see writeBinary.
+ * JobShopInstance.read reads both.
+ */
+public class KnownOptimaGenerator {
+
+	static final int BINARY_MAGIC = 0x4a534249;
+
+	final String family;
+	final int nMachines;
+	final int nOps;
+	final int optimum;
+	final long seed;
+	final double shortMean;
+
+	/* operations of machine m are machineStart[m] .. machineStart[m + 1] - 1, in time order */
+	int[] machineStart;
+	int[] duration;
+	/* next operation of the same job, -1 for the last one */
+	int[] next;
+	/* first operation of every job */
+	int[] heads;
+	int nJobs;
+
+	public KnownOptimaGenerator(String family, int nMachines, int nOps, int optimum, long seed, double shortMean) {
+		if (!family.equals("long") && !family.equals("short"))
+			throw new IllegalArgumentException("Unknown family " + family + ", expected long or short");
+		if (nOps < nMachines || (long) nOps > (long) nMachines * optimum)
+			throw new IllegalArgumentException(nOps + " operations cannot partition " + nMachines + " machines of length " + optimum);
+		this.family = family;
+		this.nMachines = nMachines;
+		this.nOps = nOps;
+		this.optimum = optimum;
+		this.seed = seed;
+		this.shortMean = shortMean;
+	}
+
+	/* benchmark file name, for instance long-js-600000-100-10000-1.data */
+	public String name(int instance) {
+		return family + "-js-" + optimum + "-" + nMachines + "-" + nOps + "-" + instance;
+	}
+
+	public KnownOptimaGenerator generate() {
+		machineStart = new int[nMachines + 1];
+		for (int m = 0; m < nMachines; m++)
+			machineStart[m + 1] = machineStart[m] + nOps / nMachines + (m < nOps % nMachines ? 1 : 0);
+		duration = new int[nOps];
+		IntStream.range(0, nMachines).parallel().forEach(this::partition);
+		link();
+		return this;
+	}
+
+	/* SplitMix64 finaliser, independent streams for (seed, stream) */
+	static long mix(long seed, long stream) {
+		long z = seed * 0x9E3779B97F4A7C15L + stream;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private void partition(int m) {
+		SplittableRandom random = new SplittableRandom(mix(seed, m));
+		int first = machineStart[m];
+		int k = machineStart[m + 1] - first;
+		int[] cuts = distinctSorted(random, k - 1, optimum - 1);
+		int previous = 0;
+		for (int i = 0; i < k - 1; i++) {
+			duration[first + i] = cuts[i] - previous;
+			previous = cuts[i];
+		}
+		duration[first + k - 1] = optimum - previous;
+	}
+
+	/* k distinct values of 1..n in increasing order */
+	static int[] distinctSorted(SplittableRandom random, int k, int n) {
+		if (k > n / 2) {
+			// draw the values left out instead
+			int[] out = distinctSorted(random, n - k, n);
+			int[] values = new int[k];
+			int i = 0, j = 0;
+			for (int v = 1; v <= n; v++)
+				if (j < out.length && out[j] == v)
+					j++;
+				else
+					values[i++] = v;
+			return values;
+		}
+		int[] values = new int[k];
+		int distinct = 0;
+		while (distinct < k) {
+			for (int i = distinct; i < k; i++)
+				values[i] = 1 + random.nextInt(n);
+			Arrays.sort(values);
+			distinct = 0;
+			for (int i = 0; i < k; i++)
+				if (i == 0 || values[i] != values[i - 1])
+					values[distinct++] = values[i];
+		}
+		return values;
+	}
+
+	/* Sweeps the operations by start time and links them into jobs. */
+	private void link() {
+		SplittableRandom random = new SplittableRandom(mix(seed, -1));
+		boolean shortJobs = family.equals("short");
+		next = new int[nOps];
+		Arrays.fill(next, -1);
+		int[] left = shortJobs ? new int[nOps] : null;
+		heads = new int[Math.max(16, nMachines)];
+		nJobs = 0;
+
+		// next operation of every machine, keyed by (start, machine)
+		LongHeap machines = new LongHeap(nMachines);
+		int[] cursor = new int[nMachines];
+		for (int m = 0; m < nMachines; m++) {
+			cursor[m] = machineStart[m];
+			machines.push((long) m);
+		}
+		// last operations of open jobs that have not ended yet, keyed by (end, op)
+		LongHeap running = new LongHeap(nMachines);
+		int[] ended = new int[Math.max(16, nMachines)];
+		int nEnded = 0;
+
+		while (machines.size() > 0) {
+			long key = machines.pop();
+			long start = key / nMachines;
+			int m = (int) (key % nMachines);
+			int op = cursor[m]++;
+			long end = start + duration[op];
+			if (cursor[m] < machineStart[m + 1])
+				machines.push(end * nMachines + m);
+
+			while (running.size() > 0 && running.peek() / nOps <= start) {
+				if (nEnded == ended.length)
+					ended = Arrays.copyOf(ended, 2 * nEnded);
+				ended[nEnded++] = (int) (running.pop() % nOps);
+			}
+			int remaining;
+			if (nEnded > 0) {
+				int r = random.nextInt(nEnded);
+				int tail = ended[r];
+				ended[r] = ended[--nEnded];
+				next[tail] = op;
+				remaining = shortJobs ? left[tail] - 1 : 1;
+			} else {
+				if (nJobs == heads.length)
+					heads = Arrays.copyOf(heads, 2 * nJobs);
+				heads[nJobs++] = op;
+				remaining = shortJobs ? 1 + poisson(random, shortMean) : 1;
+			}
+			if (shortJobs)
+				left[op] = remaining;
+			if (remaining > 0)
+				running.push(end * nOps + op);
+		}
+		heads = Arrays.copyOf(heads, nJobs);
+		// job order unrelated to start times
+		for (int i = nJobs - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int h = heads[i];
+			heads[i] = heads[j];
+			heads[j] = h;
+		}
+	}
+
+	static int poisson(SplittableRandom random, double mean) {
+		double limit = Math.exp(-mean);
+		double p = random.nextDouble();
+		int k = 0;
+		while (p > limit) {
+			p *= random.nextDouble();
+			k++;
+		}
+		return k;
+	}
+
+	int machine(int op) {
+		int m = Arrays.binarySearch(machineStart, op);
+		return m >= 0 ? m : -m - 2;
+	}
+
+	/* Same layout as the benchmark files: "nJobs nMachines", then one job per line ending with -1 -1. */
+	public void writeText(String path) throws IOException {
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), "US-ASCII"), 1 << 16)) {
+			out.write(nJobs + " " + nMachines + "\n");
+			for (int i = 0; i < nJobs; i++) {
+				for (int o = heads[i]; o >= 0; o = next[o]) {
+					out.write(Integer.toString(machine(o)));
+					out.write(' ');
+					out.write(Integer.toString(duration[o]));
+					out.write(' ');
+				}
+				out.write("-1 -1\n");
+			}
+		}
+	}
+
+	/* magic, nJobs, nMachines, nOps, then for every job its length and its (machine, duration) pairs */
+	public void writeBinary(String path) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+			out.writeInt(BINARY_MAGIC);
+			out.writeInt(nJobs);
+			out.writeInt(nMachines);
+			out.writeInt(nOps);
+			for (int i = 0; i < nJobs; i++) {
+				int length = 0;
+				for (int o = heads[i]; o >= 0; o = next[o])
+					length++;
+				out.writeInt(length);
+				for (int o = heads[i]; o >= 0; o = next[o]) {
+					out.writeInt(machine(o));
+					out.writeInt(duration[o]);
+				}
+			}
+		}
+	}
+
+	/*
+	 * The instance in JobShopInstance order, and in starts the schedule it was
+	 * built from, whose makespan is the optimum.
+	 */
+	public JobShopInstance toInstance(String name, long[] starts) {
+		long[] machineTime = new long[nOps];
+		for (int m = 0; m < nMachines; m++) {
+			long t = 0;
+			for (int o = machineStart[m]; o < machineStart[m + 1]; o++) {
+				machineTime[o] = t;
+				t += duration[o];
+			}
+		}
+		int[] jobStart = new int[nJobs + 1];
+		int[] machine = new int[nOps];
+		int[] d = new int[nOps];
+		int n = 0;
+		for (int i = 0; i < nJobs; i++) {
+			jobStart[i] = n;
+			for (int o = heads[i]; o >= 0; o = next[o]) {
+				machine[n] = machine(o);
+				d[n] = duration[o];
+				if (starts != null)
+					starts[n] = machineTime[o];
+				n++;
+			}
+		}
+		jobStart[nJobs] = n;
+		return new JobShopInstance(name, nJobs, nMachines, jobStart, machine, d);
+	}
+
+	/* binary min-heap of longs */
+	static final class LongHeap {
+		private long[] heap;
+		private int size;
+
+		LongHeap(int capacity) {
+			heap = new long[Math.max(16, capacity)];
+		}
+
+		int size() {
+			return size;
+		}
+
+		long peek() {
+			return heap[0];
+		}
+
+		void push(long key) {
+			if (size == heap.length)
+				heap = Arrays.copyOf(heap, 2 * size);
+			int i = size++;
+			while (i > 0 && heap[(i - 1) >> 1] > key) {
+				heap[i] = heap[(i - 1) >> 1];
+				i = (i - 1) >> 1;
+			}
+			heap[i] = key;
+		}
+
+		long pop() {
+			long top = heap[0];
+			long last = heap[--size];
+			int i = 0;
+			while (true) {
+				int c = 2 * i + 1;
+				if (c >= size)
+					break;
+				if (c + 1 < size && heap[c + 1] < heap[c])
+					c++;
+				if (heap[c] >= last)
+					break;
+				heap[i] = heap[c];
+				i = c;
+			}
+			heap[i] = last;
+			return top;
+		}
+	}
+
+	/*
+	 * Generates the grid of the gen_* options into dataset folder / foldername:
+	 * every family of gen_family (long,short), number of machines of
+	 * gen_machines (100,1000) and number of operations of gen_ops (10000,100000),
+	 * gen_instances (3) instances each, in gen_format text or binary.
+	 */
+	public static void generateToDirectory(int dataset_id, String foldername) throws Exception {
+		String outDir = INFO.dataset_folder[dataset_id] + foldername + "/";
+		new File(outDir).mkdirs();
+		long baseSeed = Long.parseLong(Main.option("gen_seed", "1"));
+		int optimum = Integer.parseInt(Main.option("gen_optimum", Integer.toString(INFO.KNOWN_OPTIMUM)));
+		int instances = Integer.parseInt(Main.option("gen_instances", "3"));
+		double shortMean = Double.parseDouble(Main.option("gen_short_mean", "2.5"));
+		boolean binary = Main.option("gen_format", "text").equals("binary");
+		for (String family : Main.option("gen_family", "long,short").split(","))
+			for (String machines : Main.option("gen_machines", "100,1000").split(","))
+				for (String ops : Main.option("gen_ops", "10000,100000").split(","))
+					for (int k = 1; k <= instances; k++) {
+						int nMachines = Integer.parseInt(machines.trim());
+						int nOps = Integer.parseInt(ops.trim());
+						long seed = mix(baseSeed, ((long) (family.equals("long") ? 1 : 2) << 56) ^ ((long) nMachines << 32) ^ ((long) nOps << 8) ^ k);
+						long startTime = System.currentTimeMillis();
+						KnownOptimaGenerator generator = new KnownOptimaGenerator(family.trim(), nMachines, nOps, optimum, seed, shortMean).generate();
+						String file = outDir + generator.name(k) + (binary ? ".jsb" : ".data");
+						if (binary)
+							generator.writeBinary(file);
+						else
+							generator.writeText(file);
+						System.out.println(file + ": " + generator.nJobs + " jobs, " + nOps + " operations in " + (System.currentTimeMillis() - startTime) / 1000.0 + "s");
+						if (ScheduleVerifier.enabled()) {
+							long[] starts = new long[nOps];
+							JobShopInstance instance = generator.toInstance(generator.name(k), starts);
+							ScheduleVerifier.Result r = new ScheduleVerifier(instance).check("generator", starts, null, optimum);
+							if (!r.status().equals("OK") || instance.lowerBound() != optimum)
+								throw new IllegalStateException("Generated instance " + file + " is wrong: " + r.row());
+						}
+					}
+	}
+}
@@ -0,0 +1,239 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import com.google.ortools.sat.ConstraintProto;
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpModelProto;
+import com.google.ortools.sat.CpObjectiveProto;
+import com.google.ortools.sat.IntegerArgumentProto;
+import com.google.ortools.sat.IntegerVariableProto;
+import com.google.ortools.sat.IntervalConstraintProto;
+import com.google.ortools.sat.LinearConstraintProto;
+import com.google.ortools.sat.NoOverlapConstraintProto;
+
+/*
+ * Builds the OR-Tools encodings straight into the CpModelProto of a CpModel
+ * from the primitive arrays of a JobShopInstance, without the IntVar and
+ * IntervalVar wrappers and without a String name per variable. Variables are
+ * laid out by operation index o (JobShopInstance order):
+ *
+ *   o           start of o
+ *   nOps + o    end of o
+ *   2 * nOps    makespan
+ *   then one fixed variable per distinct duration, used as interval sizes
+ *
+ * and the interval of o, when the encoding has intervals, is constraint o.
+ * With debug names every variable gets a short unique name (s12, e12, mk...).
+ */
+public class LeanModelBuilder {
+
+	private final CpModelProto.Builder proto;
+	private final JobShopInstance instance;
+	private final boolean names;
+	private final long horizon;
+	private int[] sizeVar;
+
+	public LeanModelBuilder(CpModel model, JobShopInstance instance, boolean names) {
+		this.proto = model.getBuilder();
+		this.instance = instance;
+		this.names = names;
+		this.horizon = instance.horizon();
+	}
+
+	public static boolean enabled() {
+		return Main.option("builder", "default").equals("lean");
+	}
+
+	public static boolean debugNames() {
+		return Main.option("names", "false").equals("true");
+	}
+
+	public static int start(JobShopInstance instance, int o) {
+		return o;
+	}
+
+	public static int end(JobShopInstance instance, int o) {
+		return instance.nOps + o;
+	}
+
+	public static int makespan(JobShopInstance instance) {
+		return 2 * instance.nOps;
+	}
+
+	/* Advanced encoding: intervals, precedences, one no-overlap per machine. Returns the start variable indices. */
+	public int[] advanced(Profiler profiler) {
+		profiler.phase("variables");
+		startEndVariables();
+		intervals();
+		precedences();
+		profiler.phase("noOverlap");
+		int[][] byMachine = instance.operationsByMachine();
+		for (int m = 0; m < instance.nMachines; m++) {
+			NoOverlapConstraintProto.Builder noOverlap = NoOverlapConstraintProto.newBuilder();
+			for (int o : byMachine[m])
+				noOverlap.addIntervals(o);
+			proto.addConstraints(ConstraintProto.newBuilder().setNoOverlap(noOverlap));
+		}
+		profiler.phase("objective");
+		objective(proto, instance);
+		return startIndices();
+	}
+
+	/*
+	 * Pairwise disjunctions with one Boolean per pair of operations of a machine.
+	 * With intervals this is the SemiNaive encoding, without it the Naive one
+	 * where durations are linear equalities end - start = d.
+	 */
+	public int[] disjunctive(boolean withIntervals, Profiler profiler) {
+		profiler.phase("variables");
+		startEndVariables();
+		if (withIntervals)
+			intervals();
+		else
+			for (int o = 0; o < instance.nOps; o++)
+				proto.addConstraints(ConstraintProto.newBuilder().setLinear(difference(end(instance, o), start(instance, o), instance.duration[o], instance.duration[o])));
+		precedences();
+		profiler.phase("disjunctions");
+		int[][] byMachine = instance.operationsByMachine();
+		for (int m = 0; m < instance.nMachines; m++) {
+			int[] ops = byMachine[m];
+			for (int x = 0; x < ops.length - 1; x++)
+				for (int y = x + 1; y < ops.length; y++) {
+					int b = variable(0, 1, "b", proto.getVariablesCount());
+					// b: x before y, not(b): y before x
+					proto.addConstraints(ConstraintProto.newBuilder().addEnforcementLiteral(b)
+							.setLinear(difference(end(instance, ops[x]), start(instance, ops[y]), -horizon, 0)));
+					proto.addConstraints(ConstraintProto.newBuilder().addEnforcementLiteral(-b - 1)
+							.setLinear(difference(end(instance, ops[y]), start(instance, ops[x]), -horizon, 0)));
+				}
+		}
+		profiler.phase("objective");
+		objective(proto, instance);
+		return startIndices();
+	}
+
+	private void startEndVariables() {
+		int n = instance.nOps;
+		for (int o = 0; o < n; o++)
+			variable(0, horizon, "s", o);
+		for (int o = 0; o < n; o++)
+			variable(0, horizon, "e", o);
+		variable(0, horizon, "mk", -1);
+	}
+
+	private int variable(long lb, long ub, String prefix, int id) {
+		IntegerVariableProto.Builder var = IntegerVariableProto.newBuilder().addDomain(lb).addDomain(ub);
+		if (names)
+			var.setName(id < 0 ? prefix : prefix + id);
+		proto.addVariables(var);
+		return proto.getVariablesCount() - 1;
+	}
+
+	/* interval constraints must come first so that the interval of o is constraint o */
+	private void intervals() {
+		int maxDuration = 0;
+		for (int d : instance.duration)
+			maxDuration = Math.max(maxDuration, d);
+		sizeVar = new int[maxDuration + 1];
+		Arrays.fill(sizeVar, -1);
+		for (int o = 0; o < instance.nOps; o++) {
+			int d = instance.duration[o];
+			if (sizeVar[d] < 0)
+				sizeVar[d] = variable(d, d, "d", d);
+			proto.addConstraints(ConstraintProto.newBuilder().setInterval(IntervalConstraintProto.newBuilder()
+					.setStart(start(instance, o)).setEnd(end(instance, o)).setSize(sizeVar[d])));
+		}
+	}
+
+	private void precedences() {
+		for (int i = 0; i < instance.nJobs; i++)
+			for (int o = instance.jobStart[i] + 1; o < instance.jobStart[i + 1]; o++)
+				proto.addConstraints(ConstraintProto.newBuilder().setLinear(difference(end(instance, o - 1), start(instance, o), -horizon, 0)));
+	}
+
+	/* a - b in [lb, ub] */
+	static LinearConstraintProto.Builder difference(int a, int b, long lb, long ub) {
+		return LinearConstraintProto.newBuilder().addVars(a).addCoeffs(1).addVars(b).addCoeffs(-1).addDomain(lb).addDomain(ub);
+	}
+
+	static void objective(CpModelProto.Builder proto, JobShopInstance instance) {
+		int mk = makespan(instance);
+		IntegerArgumentProto.Builder max = IntegerArgumentProto.newBuilder().setTarget(mk);
+		for (int i = 0; i < instance.nJobs; i++)
+			if (instance.jobStart[i + 1] > instance.jobStart[i])
+				max.addVars(end(instance, instance.jobStart[i + 1] - 1));
+		proto.addConstraints(ConstraintProto.newBuilder().setIntMax(max));
+		proto.setObjective(CpObjectiveProto.newBuilder().addVars(mk).addCoeffs(1));
+	}
+
+	private int[] startIndices() {
+		int[] index = new int[instance.nOps];
+		for (int o = 0; o < index.length; o++)
+			index[o] = start(instance, o);
+		return index;
+	}
+
+	/*
+	 * Instantiation time and retained heap of the Advanced encoding built by
+	 * SchedJobShopORTools.buildModel and by the lean builder, and instantiation
+	 * time of the sharded builder, for every instance of a folder. The times
+	 * include the parsing of the instance file. The retained heap of a model is
+	 * the used heap while it is reachable minus the used heap once it has been
+	 * dropped, so parsing garbage and the instance arrays are not counted.
+	 */
+	public static void compareFromDirectory(int dataset_id, String foldername) throws Exception {
+		String outFile = "ORT_Lean_" + INFO.dataset_folder[dataset_id].substring(15, 20) + "_" + foldername + ".csv";
+		String inFile = INFO.dataset_folder[dataset_id] + foldername + "/";
+		System.out.println("Comparing the default and the lean OR-Tools model builders:\ninput= " + inFile + "\noutput= " + outFile);
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		writer.println("instance;operations;default_s;default_mb;lean_s;lean_mb;time_ratio;heap_ratio;sharded_s;threads;sharded_speedup");
+		for (File file : new File(inFile).listFiles())
+			if (file.isFile()) {
+				long start = System.nanoTime();
+				CpModel model = new CpModel();
+				SchedJobShopORTools.buildModel(model, dataset_id, inFile, file.getName(), new Profiler("ORT_Adv", file.getName()));
+				double defaultTime = (System.nanoTime() - start) / 1e9;
+				long withModel = usedHeap();
+				Reference.reachabilityFence(model);
+				model = null;
+				long defaultHeap = withModel - usedHeap();
+
+				start = System.nanoTime();
+				CpModel lean = new CpModel();
+				JobShopInstance instance = JobShopInstance.read(dataset_id, inFile, file.getName());
+				new LeanModelBuilder(lean, instance, false).advanced(new Profiler("ORT_Lean", file.getName()));
+				double leanTime = (System.nanoTime() - start) / 1e9;
+				withModel = usedHeap();
+				Reference.reachabilityFence(lean);
+				lean = null;
+				long leanHeap = withModel - usedHeap();
+
+				ForkJoinPool pool = ShardedModelBuilder.pool();
+				start = System.nanoTime();
+				CpModel sharded = new CpModel();
+				new ShardedModelBuilder(sharded, JobShopInstance.read(dataset_id, inFile, file.getName()), pool)
+						.advanced(new Profiler("ORT_Sharded", file.getName()));
+				double shardedTime = (System.nanoTime() - start) / 1e9;
+				sharded = null;
+
+				writer.println(file.getName() + ";" + instance.nOps + ";" + defaultTime + ";" + defaultHeap / 1e6 + ";" + leanTime + ";"
+						+ leanHeap / 1e6 + ";" + defaultTime / leanTime + ";" + (double) defaultHeap / leanHeap + ";" + shardedTime + ";"
+						+ pool.getParallelism() + ";" + leanTime / shardedTime);
+				writer.flush();
+			}
+		writer.close();
+	}
+
+	/* heap still reachable after a full collection */
+	static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int k = 0; k < 3; k++)
+			System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
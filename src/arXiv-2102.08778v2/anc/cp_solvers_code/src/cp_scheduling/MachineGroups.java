@@ -0,0 +1,177 @@
+package cp_scheduling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cp_scheduling.KnownOptimaGenerator.LongHeap;
+
+/*
+ * Groups of identical machines: the machines of a group can run the same
+ * operations for the same durations, so an operation only has to choose a
+ * group and a group is a cumulative resource with one unit per machine.
+ * Groups come from the machine_groups option:
+ *
+ *   auto           machines with exactly the same alternatives and durations
+ *                  in a flexible instance (every machine alone in a job shop)
+ *   size:<k>       machines k*g .. k*g+k-1 form group g
+ *   <g0>,<g1>,...  the group of every machine
+ */
+public class MachineGroups {
+
+	final int nGroups;
+	final int[] groupOf;
+	final int[][] members;
+
+	/* group ids are renumbered by first appearance */
+	MachineGroups(int[] groupOf) {
+		Map<Integer, Integer> ids = new HashMap<Integer, Integer>();
+		this.groupOf = new int[groupOf.length];
+		for (int m = 0; m < groupOf.length; m++) {
+			Integer id = ids.get(groupOf[m]);
+			if (id == null)
+				ids.put(groupOf[m], id = ids.size());
+			this.groupOf[m] = id;
+		}
+		nGroups = ids.size();
+		int[] count = new int[nGroups];
+		for (int g : this.groupOf)
+			count[g]++;
+		members = new int[nGroups][];
+		for (int g = 0; g < nGroups; g++)
+			members[g] = new int[count[g]];
+		Arrays.fill(count, 0);
+		for (int m = 0; m < groupOf.length; m++)
+			members[this.groupOf[m]][count[this.groupOf[m]]++] = m;
+	}
+
+	public static MachineGroups fromOptions(FlexibleJobShopInstance instance, String defaultSpec) {
+		String spec = Main.option("machine_groups", defaultSpec);
+		if (spec.equals("auto"))
+			return detect(instance);
+		return parse(spec, instance.nMachines);
+	}
+
+	static MachineGroups parse(String spec, int nMachines) {
+		int[] groupOf = new int[nMachines];
+		if (spec.startsWith("size:")) {
+			int k = Integer.parseInt(spec.substring(5));
+			for (int m = 0; m < nMachines; m++)
+				groupOf[m] = m / k;
+			return new MachineGroups(groupOf);
+		}
+		String[] ids = spec.split(",");
+		if (ids.length != nMachines)
+			throw new IllegalArgumentException("machine_groups gives " + ids.length + " groups for " + nMachines + " machines");
+		for (int m = 0; m < nMachines; m++)
+			groupOf[m] = Integer.parseInt(ids[m].trim());
+		return new MachineGroups(groupOf);
+	}
+
+	/* machines are identical when they have the same (operation, duration) alternatives */
+	static MachineGroups detect(FlexibleJobShopInstance instance) {
+		int[] count = new int[instance.nMachines];
+		for (int a = 0; a < instance.nAlternatives(); a++)
+			count[instance.altMachine[a]]++;
+		int[][] signature = new int[instance.nMachines][];
+		for (int m = 0; m < instance.nMachines; m++)
+			signature[m] = new int[2 * count[m]];
+		Arrays.fill(count, 0);
+		for (int o = 0; o < instance.nOps; o++)
+			for (int a = instance.altStart[o]; a < instance.altStart[o + 1]; a++) {
+				int m = instance.altMachine[a];
+				signature[m][count[m]++] = o;
+				signature[m][count[m]++] = instance.altDuration[a];
+			}
+		int[] groupOf = new int[instance.nMachines];
+		Map<Integer, List<Integer>> representatives = new HashMap<Integer, List<Integer>>();
+		for (int m = 0; m < instance.nMachines; m++) {
+			List<Integer> same = representatives.computeIfAbsent(Arrays.hashCode(signature[m]), h -> new ArrayList<Integer>());
+			groupOf[m] = m;
+			for (int r : same)
+				if (Arrays.equals(signature[r], signature[m])) {
+					groupOf[m] = r;
+					break;
+				}
+			if (groupOf[m] == m)
+				same.add(m);
+		}
+		return new MachineGroups(groupOf);
+	}
+
+	/* The job shop where every operation can run on any machine of the group of its machine. */
+	static FlexibleJobShopInstance widen(JobShopInstance js, MachineGroups groups) {
+		int[] altStart = new int[js.nOps + 1];
+		int n = 0;
+		for (int o = 0; o < js.nOps; o++) {
+			altStart[o] = n;
+			n += groups.members[groups.groupOf[js.machine[o]]].length;
+		}
+		altStart[js.nOps] = n;
+		int[] machine = new int[n];
+		int[] duration = new int[n];
+		for (int o = 0; o < js.nOps; o++) {
+			int[] group = groups.members[groups.groupOf[js.machine[o]]];
+			for (int k = 0; k < group.length; k++) {
+				machine[altStart[o] + k] = group[k];
+				duration[altStart[o] + k] = js.duration[o];
+			}
+		}
+		return new FlexibleJobShopInstance(js.name, js.nJobs, js.nMachines, js.jobStart, altStart, machine, duration);
+	}
+
+	/*
+	 * Machines of the operations of a schedule that respects the group
+	 * capacities, by interval graph colouring: the operations of a group are
+	 * taken by start time and each gets a machine freed by the operations that
+	 * ended before it starts. O(n log n). Zero-duration operations, which the
+	 * cumulative constraint ignores, take any machine of their group without
+	 * holding it.
+	 */
+	int[] assign(int[] opGroup, long[] starts, long[] ends) {
+		int n = opGroup.length;
+		int[] count = new int[nGroups + 1];
+		for (int o = 0; o < n; o++)
+			count[opGroup[o] + 1]++;
+		for (int g = 0; g < nGroups; g++)
+			count[g + 1] += count[g];
+		int[] ops = new int[n];
+		int[] fill = Arrays.copyOf(count, nGroups);
+		for (int o = 0; o < n; o++)
+			ops[fill[opGroup[o]]++] = o;
+
+		int[] machine = new int[n];
+		for (int g = 0; g < nGroups; g++) {
+			int from = count[g];
+			int len = count[g + 1] - from;
+			int capacity = members[g].length;
+			// operations of g by start time, packed with their rank
+			long[] keys = new long[len];
+			for (int k = 0; k < len; k++)
+				keys[k] = starts[ops[from + k]] * len + k;
+			Arrays.sort(keys);
+			int[] free = new int[capacity];
+			int nFree = capacity;
+			for (int s = 0; s < capacity; s++)
+				free[s] = capacity - 1 - s;
+			LongHeap busy = new LongHeap(capacity);
+			for (long key : keys) {
+				int o = ops[from + (int) (key % len)];
+				while (busy.size() > 0 && busy.peek() / capacity <= starts[o])
+					free[nFree++] = (int) (busy.pop() % capacity);
+				if (ends[o] == starts[o]) {
+					machine[o] = members[g][nFree > 0 ? free[nFree - 1] : (int) (busy.peek() % capacity)];
+					continue;
+				}
+				if (nFree == 0)
+					throw new IllegalStateException("More than " + capacity + " operations at time " + starts[o] + " in machine group " + g);
+				int slot = free[--nFree];
+				machine[o] = members[g][slot];
+				busy.push(ends[o] * capacity + slot);
+			}
+		}
+		return machine;
+	}
+}
@@ -3,6 +3,9 @@ package cp_scheduling;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+
 import ilog.cp.IloCP;
 
 public class Main {
@@ -10,6 +13,49 @@ public class Main {
 	public static final String RESULTS_PATH = "./results/";
 	public static final String DATA_PATH = "./data/jobshop/";
 	
+	/* optional key=value arguments given after the mandatory ones */
+	static final Properties options = new Properties();
+	/* options of the daemon request run by the current thread, they override the ones above, see SolveDaemon */
+	static final ThreadLocal<Properties> requestOptions = new ThreadLocal<Properties>();
+	
+	public static String option(String key, String defaultValue) {
+		Properties request = requestOptions.get();
+		if (request != null && request.containsKey(key))
+			return request.getProperty(key);
+		return options.getProperty(key, defaultValue);
+	}
+
+	/*
+	 * Runs call with overrides over the options in effect, on the current thread
+	 * only, and restores them afterwards. The global options are left untouched.
+	 */
+	static <T> T withOptions(Properties overrides, Callable<T> call) throws Exception {
+		Properties previous = requestOptions.get();
+		Properties merged = new Properties();
+		if (previous != null)
+			merged.putAll(previous);
+		merged.putAll(overrides);
+		requestOptions.set(merged);
+		try {
+			return call.call();
+		} finally {
+			if (previous == null)
+				requestOptions.remove();
+			else
+				requestOptions.set(previous);
+		}
+	}
+
+	/* relative optimality gap at which the solvers stop, 0 (prove optimality) by default */
+	public static double gap() {
+		return Double.parseDouble(option("gap", "0"));
+	}
+
+	/* random seed given to the solvers, -1 (their default seed) when the option is absent */
+	public static int seed() {
+		return Integer.parseInt(option("random_seed", "-1"));
+	}
+	
 	public static void main(String args[]) throws Exception{
 		//SchedJobShop.launcher(args);
 		/*
@@ -33,13 +79,18 @@ public class Main {
 		String folder="";
 		int dataset=-1;
 		//argument parsing
-		switch (args.length) {
+		switch (Math.min(args.length, 5)) {
 		
 		case 5:
 			dataset = Integer.parseInt(args[1]);
 			folder = args[2];
 			timeout = Integer.parseInt(args[3]);
 			n_workers = Integer.parseInt(args[4]);
+			for (int a = 5; a < args.length; a++) {
+				int eq = args[a].indexOf('=');
+				if (eq > 0)
+					options.setProperty(args[a].substring(0, eq), args[a].substring(eq + 1));
+			}
 			System.out.println("Solver with "+n_workers+" workers launching on dataset "+INFO.dataset_folder[dataset]+", folder "+folder+ " with default timeout of "+timeout+" seconds,startfail of "+startlimit +" and factor of"+factor);
 			
 			break;
@@ -50,10 +101,81 @@ public class Main {
 					+ "\t1 - CPOptimizer Advanced encoding\n"
 					+ "\t2 - ORTools Naive encoding\n"
 					+ "\t3 - CPOptimizer Naive encoding\n"
+					+ "\t12 - ORTools Advanced encoding, the timeout is a total budget shared by the whole folder\n"
+					+ "\t13 - ORTools Advanced encoding, instantiation time and heap of the default, lean and sharded model builders\n"
+					+ "\t14 - Generate known-optimum instances into the input folder of the dataset (gen_* options)\n"
+					+ "\t15 - Scaling benchmark of the encoders, the input folder names the report (bench_* options)\n"
+					+ "\t16 - Every instance with several random seeds, medians, confidence intervals and performance profiles (seed* options)\n"
+					+ "\t17 - ORTools open shop, the input folder is in " + INFO.OPENSHOP_PATH + " and the dataset id is ignored\n"
+					+ "\t18 - CPOptimizer open shop, same input folders\n"
+					+ "\t19 - Open shop lower bounds and dense schedules only, same input folders\n"
+					+ "\t20 - ORTools flexible job shop, the input folder is in " + INFO.FLEXIBLE_PATH + " and the dataset id is ignored\n"
+					+ "\t21 - ORTools flexible job shop built from the dataset folder with flex_alternatives alternatives per operation\n"
+					+ "\t22 - ORTools flexible job shop with a cumulative per group of identical machines, input folder in " + INFO.FLEXIBLE_PATH + "\n"
+					+ "\t23 - ORTools job shop of the dataset folder where operations can use any machine of their group (machine_groups)\n"
+					+ "\t24 - ORTools Advanced encoding once per set of redundant constraints of strengthen_sets\n"
+					+ "\t25 - Classes of identical jobs and Advanced encodings without and with symmetry breaking (symmetry_encoders)\n"
+					+ "\t26 - Resident solver daemon on the loopback port given as input folder (0 picks one), the timeout and workers\n"
+					+ "\t     are the defaults of the requests and the dataset id is ignored (daemon_* options, see SolveDaemon)\n"
+					+ "\t27 - Online dispatching of the jobs of every instance as a stream of arrivals lasting the timeout, with\n"
+					+ "\t     background ORTools re-optimisation, compared to an offline solve (online_* options)\n"
+					+ "\t28 - Repair of the greedy schedule of every instance after disruptions, windowed and full ORTools re-optimisation\n"
+					+ "\t29 - Island model genetic algorithm and simulated annealing, one island per worker, ORTools Advanced result columns\n"
+					+ "\t30 - Pure Java branch and bound with Theta-tree propagation, single threaded, ORTools Advanced result columns\n"
+					+ "\t31 - Pure Java branch and bound and ORTools Advanced on every instance, solve times side by side\n"
+					+ "\t32 - Batch makespan evaluation benchmark, schedules per second of the scalar and vector kernels (batch_* options)\n"
+					+ "\t33 - Pure Java branch and bound against exhaustive search on bnb_check=300 random instances (bnb_check_seed=1),\n"
+					+ "\t     up to 4 jobs and 3 machines, the timeout applies to each instance and the input folder is ignored\n"
 					+ "Second argument (Mandatory): dataset id (0=taillard, 1=optimum, 2=small)\n"
 					+ "Third argument (Mandatory): Input folder name \n"
 					+ "Forth argument (Mandatory): Timeout of the solver, default 1200 seconds\n"
-					+ "Fifth argument (Mandatory): n of workers (threads) available to the solver");
+					+ "Fifth argument (Mandatory): n of workers (threads) available to the solver\n"
+					+ "Further arguments (Optional): key=value options\n"
+					+ "\tresume=true - modes 0 and 11: keep the rows of an interrupted run and skip their instances, checkpoint the\n"
+					+ "\t               improving solutions of mode 0 every 30s and resume an interrupted instance from its checkpoint\n"
+					+ "\tstore=<file>|on - ORTools Advanced runs (modes 0 and 12) are answered from and added to a results store,\n"
+					+ "\t               on for ./results/results_store.log (default off)\n"
+					+ "\twarmstart=true - hint the solver with the best stored run of the same instance with a smaller timeout\n"
+					+ "\ttelemetry=true - record every improving solution and convergence metrics, target=<value> sets the reference\n"
+					+ "\tstats=true - append model statistics, memory and phase times to the result rows\n"
+					+ "\tbuilder=lean - build the ORTools models directly as protos, without variable names (names=true adds short ones)\n"
+					+ "\tbuilder=sharded - same model as builder=lean built in parallel, builder_threads=<n> threads (default all cores)\n"
+					+ "\textract=true - extract the start times of the incumbents, at most every extract_ms=<ms> (1000)\n"
+					+ "\t               unless they improve by extract_improvement=<ratio> (0.01), always on with checkpoints\n"
+					+ "\tgen_family=long,short gen_machines=100,1000 gen_ops=10000,100000 gen_instances=3 gen_seed=1\n"
+					+ "\t               gen_optimum=600000 gen_short_mean=2.5 gen_format=text|binary - instances of mode 14\n"
+					+ "\tbench_family=taillard,long,short bench_jobs=10,30,100,300,1000 bench_machines=10,100 bench_seed=1\n"
+					+ "\t               bench_encoders=" + ScalingBenchmark.ENCODERS + " - sizes and encoders of mode 15\n"
+					+ "\t               bench_time_s=<timeout> bench_heap_mb=<80% of -Xmx> bench_rss_mb=<none> - breakpoint ceilings,\n"
+					+ "\t               the time one bounds instantiation and solve together and is the time limit of the solver\n"
+					+ "\tgap=<ratio> - stop the solvers at this relative optimality gap (default 0)\n"
+					+ "\tseeds=5 seed_base=1 seed_encoders=ORT_Adv,CPO_Adv seed_target_gap=0.01 seed_bootstrap=2000 - runs of mode 16\n"
+					+ "\tflex_alternatives=1,2,3,5 flex_spread=0.5 flex_seed=1 - flexible instances of mode 21\n"
+					+ "\tprune_ratio=<r> - flexible job shop: drop alternatives more than r times slower than the fastest one\n"
+					+ "\tmachine_groups=auto|size:<k>|<group of each machine, comma separated> - groups of modes 22 (auto) and 23 (size:5)\n"
+					+ "\tgroup_compare=true - mode 23 also solves the instances with one optional interval per machine\n"
+					+ "\tstrengthen=" + Strengthening.ALL + "|all - redundant constraints added to the ORTools Advanced encoding\n"
+					+ "\tstrengthen_sets=off,tails,heads,loads,cumulative,all - sets compared by mode 24, + joins the constraints of a set\n"
+					+ "\tstrategy=0|1|2 - search of the Advanced encodings: 0 solver default, 1 bottleneck machines first by earliest start,\n"
+					+ "\t               2 bottleneck machines first by least slack (see SearchStrategy)\n"
+					+ "\tsymmetry=on - order the identical jobs (same route and durations) in the Advanced encodings, see JobSymmetry\n"
+					+ "\tsymmetry_encoders=ORT_Adv,CPO_Adv - encoders compared by mode 25\n"
+					+ "\tdaemon_threads=1 daemon_queue=64 daemon_cache=./results/daemon/ - concurrent and waiting requests of mode 26\n"
+					+ "\tdaemon_instances=64 - instances of mode 26 kept in memory, the least recently used are dropped\n"
+					+ "\tonline_rule=insert|append online_utilisation=0.9 online_seed=1 online_speed=<time units per second, 0 no wait>\n"
+					+ "\t               online_reopt_ms=1000 online_reopt_s=<half the period> online_offline_s=<timeout> - mode 27\n"
+					+ "\tonline_stream=<file> online_follow=true - mode 27 reads the arrivals from a file, tailed while written\n"
+					+ "\trepair_events=down:<m>:<from>:<to>/late:<op>:<duration>/rush:<release>:<m>,<d>,... repair_now=0.25 repair_seed=1\n"
+					+ "\t               repair_window=<time units after now> repair_s=1 - disruptions and re-optimisation of mode 28\n"
+					+ "\tisland_population=50 island_migration=500 island_mutation=0.3 island_temperature=0.01 island_cooling=0.9995 - mode 29\n"
+					+ "\tisland_decoder=semiactive - semi-active instead of active schedules, genetic algorithm offspring\n"
+					+ "\t               evaluated batch_lanes at a time by BatchEvaluator (mode 29)\n"
+					+ "\tbatch_sizes=100x100,1000x100 batch_lanes=16 batch_count=1024 batch_time_s=<timeout> - mode 32\n"
+					+ "\tbatch_vector=off - scalar kernel only (the vector one is built from src-vector and needs --add-modules jdk.incubator.vector)\n"
+					+ "\trandom_seed=<n> - random seed of CP-SAT and CP Optimizer (default: the solver's own)\n"
+					+ "\tverify=off - do not check the returned schedules (by default they are audited into ./results/audit.csv)\n"
+					+ "\tverify=incumbents - also check every incumbent of ORTools Advanced, failures go to the audit\n"
+					+ "\tmodel_cache=<dir>|on - load built ORTools models from a cache, or build and add them (modes 9, 10, 11 only build)\n");
 			System.exit(0);
 		}
 		int arg = Integer.parseInt(args[0]);
@@ -68,7 +190,7 @@ public class Main {
 				SchedJobShop.scheduleFromDirectory(dataset,folder, timeout,n_workers);
 				break;
 			case 2:
-				ORToolsNaive.scheduleFromDirectory(folder, large, timeout);
+				ORToolsNaive.scheduleFromDirectory(dataset, folder, large, timeout, false);
 				break;
 			case 3:
 				NaiveJobShop.scheduleFromDirectory(folder, large, timeout);
@@ -80,21 +202,86 @@ public class Main {
 				SchedJobShop.scheduleFromDirectory(dataset,folder,timeout,n_workers,startlimit,factor);
 				break;
 			case 8:
-				ORToolsSemiNaive.scheduleFromDirectory(folder, large, timeout);
+				ORToolsSemiNaive.scheduleFromDirectory(dataset, folder, large, timeout, false);
 				break;
 			case 9:
-				ORToolsNaive.scheduleFromDirectory(folder, large, timeout,true);
+				ORToolsNaive.scheduleFromDirectory(dataset, folder, large, timeout, true);
 				break;
 			case 10:
-				ORToolsSemiNaive.scheduleFromDirectory(folder, large, timeout,true);
+				ORToolsSemiNaive.scheduleFromDirectory(dataset, folder, large, timeout, true);
 				break;
 			case 11:
 				SchedJobShopORTools.scheduleFromDirectory(dataset,folder, timeout,n_workers, true);
 				break;
-			/*case 12:
-				SchedORToolsCPOld.scheduleFromDirectory(folder, large, timeout);
-				break;*/
+			case 12:
+				BudgetAllocator.scheduleFromDirectory(dataset,folder, timeout,n_workers);
+				break;
+			case 13:
+				LeanModelBuilder.compareFromDirectory(dataset,folder);
+				break;
+			case 14:
+				KnownOptimaGenerator.generateToDirectory(dataset,folder);
+				break;
+			case 15:
+				ScalingBenchmark.run(folder, timeout, n_workers);
+				break;
+			case 16:
+				SeedHarness.scheduleFromDirectory(dataset,folder, timeout,n_workers);
+				break;
+			case 17:
+				OpenShopORTools.scheduleFromDirectory(folder, timeout, n_workers);
+				break;
+			case 18:
+				SchedOpenShop.scheduleFromDirectory(folder, timeout, n_workers);
+				break;
+			case 19:
+				OpenShopInstance.boundsFromDirectory(folder);
+				break;
+			case 20:
+				FlexibleJobShopORTools.scheduleFromDirectory(folder, timeout, n_workers);
+				break;
+			case 21:
+				FlexibleJobShopORTools.alternativesFromDirectory(dataset,folder, timeout,n_workers);
+				break;
+			case 22:
+				GroupedJobShopORTools.scheduleFromDirectory(folder, timeout, n_workers);
+				break;
+			case 23:
+				GroupedJobShopORTools.groupsFromDirectory(dataset,folder, timeout,n_workers);
+				break;
+			case 24:
+				Strengthening.compareFromDirectory(dataset,folder, timeout,n_workers);
+				break;
+			case 25:
+				JobSymmetry.compareFromDirectory(dataset,folder, timeout,n_workers);
+				break;
+			case 26:
+				SolveDaemon.run(folder, timeout, n_workers);
+				break;
+			case 27:
+				OnlineDispatcher.runFromDirectory(dataset,folder, timeout,n_workers);
+				break;
+			case 28:
+				ScheduleRepair.repairFromDirectory(dataset,folder, timeout,n_workers);
+				break;
+			case 29:
+				IslandSearch.scheduleFromDirectory(dataset,folder, timeout,n_workers);
+				break;
+			case 30:
+				BranchAndBound.scheduleFromDirectory(dataset,folder, timeout,n_workers);
+				break;
+			case 31:
+				BranchAndBound.compareFromDirectory(dataset,folder, timeout,n_workers);
+				break;
+			case 32:
+				BatchEvaluator.benchmark(folder, timeout);
+				break;
+			case 33:
+				BranchAndBound.check(Integer.parseInt(option("bnb_check", "300")), Long.parseLong(option("bnb_check_seed", "1")), timeout);
+				break;
 				
 	}
+		// feasibility of every schedule returned during this run
+		ScheduleVerifier.report();
 }
 }
@@ -0,0 +1,195 @@
+package cp_scheduling;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import com.google.ortools.sat.CpModel;
+
+/*
+ * Cache of built CP-SAT models. A model is stored as its serialized
+ * CpModelProto, deflated, with the indices of its operation start variables.
+ * The file name is made of the SHA-256 of the instance file, the encoding, the
+ * model builder (with or without debug names) and the dataset format. Later
+ * runs on the same instance map the file and inflate the proto straight into
+ * the model builder instead of building the model, so running the
+ * instantiation-only modes with the cache on pre-builds the models of a folder.
+ *
+ * File layout: magic, number of starts, proto size, then deflated starts and proto.
+ */
+public class ModelCache {
+
+	static final int MAGIC = 0x4a534d43;
+
+	interface Builder {
+		int[] build() throws Exception;
+	}
+
+	private static final Map<String, ModelCache> shared = new HashMap<String, ModelCache>();
+
+	private final File dir;
+
+	public ModelCache(String dir) {
+		this.dir = new File(dir);
+	}
+
+	/*
+	 * Cache of the model_cache option: a directory, on for ./results/model_cache/, off by default.
+	 * There is one cache per directory, the requests of the daemon may name different ones.
+	 */
+	public static synchronized ModelCache shared() throws IOException {
+		String dir = Main.option("model_cache", "off");
+		if (dir.equals("off"))
+			return null;
+		if (dir.equals("on"))
+			dir = Main.RESULTS_PATH + "model_cache/";
+		dir = new File(dir).getCanonicalPath();
+		ModelCache cache = shared.get(dir);
+		if (cache == null)
+			shared.put(dir, cache = new ModelCache(dir));
+		return cache;
+	}
+
+	/* sharded models are the same as lean ones, they never have names; default models always have them */
+	static String builder() {
+		if (LeanModelBuilder.enabled())
+			return LeanModelBuilder.debugNames() ? "lean_names" : "lean";
+		return ShardedModelBuilder.enabled() ? "lean" : "default";
+	}
+
+	File file(String instanceHash, String encoding, int dataset_id) {
+		return new File(dir, instanceHash + "_" + encoding + "_" + builder() + "_" + dataset_id + ".cpm");
+	}
+
+	/*
+	 * Loads the model of the instance at path into the empty model when the
+	 * cache has it, otherwise builds it and stores it. Returns the start
+	 * variable indices.
+	 */
+	public static int[] buildOrLoad(CpModel model, int dataset_id, String path, String encoding, Profiler profiler, Builder builder) throws Exception {
+		ModelCache cache = shared();
+		if (cache == null)
+			return builder.build();
+		File f = cache.file(ResultsStore.hash(path), encoding, dataset_id);
+		if (f.isFile()) {
+			profiler.phase("load");
+			try {
+				int[] starts = cache.load(f, model);
+				System.out.println("Model loaded from " + f);
+				return starts;
+			} catch (IOException e) {
+				System.err.println("Error: " + e + ", rebuilding the model");
+				model.getBuilder().clear();
+			}
+		}
+		int[] starts = builder.build();
+		profiler.phase("store");
+		cache.save(f, model, starts);
+		return starts;
+	}
+
+	int[] load(File f, CpModel model) throws IOException {
+		try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (mapped.remaining() < 12 || mapped.getInt() != MAGIC)
+				throw new IOException("Not a model cache file: " + f);
+			int nStarts = mapped.getInt();
+			int protoBytes = mapped.getInt();
+			Inflater inflater = new Inflater();
+			try {
+				// inflated as it is parsed, straight into the model builder
+				Inflated in = new Inflated(inflater, mapped, f);
+				byte[] starts = new byte[4 * nStarts];
+				in.limit = starts.length;
+				new DataInputStream(in).readFully(starts);
+				int[] startVars = new int[nStarts];
+				ByteBuffer.wrap(starts).asIntBuffer().get(startVars);
+				in.limit = protoBytes;
+				model.getBuilder().mergeFrom(in);
+				if (in.limit > 0)
+					throw new EOFException("Truncated model cache file: " + f);
+				return startVars;
+			} finally {
+				inflater.end();
+			}
+		}
+	}
+
+	/* Inflates a mapped buffer on demand, the stream ends after limit more bytes. */
+	static final class Inflated extends InputStream {
+		private final Inflater inflater;
+		private final File f;
+		private final byte[] one = new byte[1];
+		long limit = Long.MAX_VALUE;
+
+		Inflated(Inflater inflater, ByteBuffer input, File f) {
+			this.inflater = inflater;
+			this.f = f;
+			inflater.setInput(input);
+		}
+
+		@Override
+		public int read() throws IOException {
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (limit == 0)
+				return -1;
+			len = (int) Math.min(len, limit);
+			try {
+				int n;
+				while ((n = inflater.inflate(b, off, len)) == 0)
+					if (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())
+						throw new EOFException("Truncated model cache file: " + f);
+				limit -= n;
+				return n;
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupted model cache file: " + f, e);
+			}
+		}
+	}
+
+	/* Writes to a temporary file first so concurrent runs never read a partial model. */
+	void save(File f, CpModel model, int[] starts) throws IOException {
+		byte[] proto = model.getBuilder().build().toByteArray();
+		dir.mkdirs();
+		File tmp = new File(f.getPath() + "." + ProcessHandle.current().pid() + ".tmp");
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(starts.length);
+			out.writeInt(proto.length);
+			DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 1 << 16);
+			DataOutputStream body = new DataOutputStream(deflated);
+			for (int s : starts)
+				body.writeInt(s);
+			body.write(proto);
+			body.flush();
+			deflated.finish();
+		} finally {
+			deflater.end();
+		}
+		Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
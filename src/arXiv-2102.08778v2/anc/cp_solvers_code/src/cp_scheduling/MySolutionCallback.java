@@ -1,16 +1,60 @@
 package cp_scheduling;
 
+import com.google.ortools.sat.CpSolverResponse;
 import com.google.ortools.sat.CpSolverSolutionCallback;
 
 class MySolutionCallback extends CpSolverSolutionCallback {
+    private IncumbentExtractor incumbents;
+    private Checkpoint checkpoint;
+    private double timeOffset;
+    private Telemetry.Run telemetry;
+    private ScheduleVerifier verifier;
+    private String solver;
+
     public MySolutionCallback() {
       
     }
 
+    /*
+     * Extracts the incumbents with incumbents when it is not null and persists them to
+     * checkpoint when it is not null, timeOffset being the time spent by earlier runs
+     * (the checkpoint keeps its own clock, started by Checkpoint.begin).
+     */
+    public MySolutionCallback(IncumbentExtractor incumbents, Checkpoint checkpoint, double timeOffset) {
+      this.incumbents = incumbents;
+      this.checkpoint = checkpoint;
+      this.timeOffset = timeOffset;
+    }
+
+    public void setTelemetry(Telemetry.Run telemetry) {
+      this.telemetry = telemetry;
+    }
+
+    /* verifier, when not null, checks every extracted incumbent of the solver */
+    public void setVerifier(ScheduleVerifier verifier, String solver) {
+      this.verifier = verifier;
+      this.solver = solver;
+    }
+
     @Override
     public void onSolutionCallback() {
       System.out.println("* " +objectiveValue() +" "+ wallTime()+" "+numConflicts());
-      
+      double time = timeOffset + wallTime();
+      // the response holds every variable value, only the telemetry copies it
+      if (telemetry != null) {
+        CpSolverResponse response = response();
+        telemetry.solution(objectiveValue(), bestObjectiveBound(), time, response.getDeterministicTime(),
+            numConflicts(), numBranches(), response.getSolutionInfo());
+      }
+      if (incumbents != null && incumbents.due(objectiveValue())) {
+        IncumbentExtractor.Snapshot incumbent = incumbents.extract(this, objectiveValue(), time);
+        long[] starts = checkpoint != null || verifier != null ? incumbent.starts() : null;
+        // written now or by the checkpoint timer, see Checkpoint.begin
+        if (checkpoint != null)
+          checkpoint.offer(incumbent.objective, starts);
+        if (verifier != null)
+          verifier.checkIncumbent(solver, starts, objectiveValue());
+      }
     }
 
   }
\ No newline at end of file
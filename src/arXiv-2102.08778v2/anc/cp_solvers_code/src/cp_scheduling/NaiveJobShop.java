@@ -123,6 +123,8 @@ public static String scheduleFromFile(String folder, String filename, int timeou
         long startTime = System.currentTimeMillis();
         
         IloCP cp = new IloCP();
+        Profiler profiler = new Profiler("CPO_Naive", filename);
+        profiler.phase("parse");
         DataReader data = new DataReader(folder +filename);
         try {
             nbJobs = data.next();
@@ -152,6 +154,7 @@ public static String scheduleFromFile(String folder, String filename, int timeou
                 }
             }
             
+            profiler.phase("variables");
             for (int j = 0; j < nbJobs; j++) {
                 for (int k = 0; k < nbMachines; k++) {
                     start[j][k] = cp.intVar(0, sum);
@@ -164,6 +167,7 @@ public static String scheduleFromFile(String folder, String filename, int timeou
                 }
             }
 
+            profiler.phase("disjunctions");
             for(int m = 0; m < nbMachines; m++){
                 for (int x = 0; x < nbJobs-1; x++) {
                     for(int y = x+1; y < nbJobs; y++){
@@ -175,19 +179,36 @@ public static String scheduleFromFile(String folder, String filename, int timeou
             cp.setParameter(IloCP.IntParam.Workers, 1);
             cp.setParameter(IloCP.DoubleParam.TimeLimit, (double)timeout);
             cp.setParameter(IloCP.IntParam.LogVerbosity, IloCP.ParameterValues.Terse);
-            cp.setParameter(IloCP.DoubleParam.RelativeOptimalityTolerance, 0);
+            cp.setParameter(IloCP.DoubleParam.RelativeOptimalityTolerance, Main.gap());
+            if (Main.seed() >= 0)
+                cp.setParameter(IloCP.IntParam.RandomSeed, Main.seed());
             
             IloObjective objective = cp.minimize(cp.max(list));
             cp.add(objective);
             
             long stopTime = System.currentTimeMillis();
             long instantiation_time = (stopTime - startTime)/1000;
-            if (cp.solve()) {
+            profiler.phase("solve");
+            boolean solved = cp.solve();
+            profiler.end();
+            profiler.stats(cp);
+            String stats = profiler.columns((stopTime - startTime) / 1000.0, nbJobs * nbMachines);
+            if (solved && ScheduleVerifier.enabled()) {
+                long[] schedule = new long[nbJobs * nbMachines];
+                long[] ends = new long[nbJobs * nbMachines];
+                for (int j = 0; j < nbJobs; j++)
+                    for (int k = 0; k < nbMachines; k++) {
+                        schedule[j * nbMachines + k] = Math.round(cp.getValue(start[j][k]));
+                        ends[j * nbMachines + k] = Math.round(cp.getValue(finished[j][k]));
+                    }
+                ScheduleVerifier.audit(0, folder, filename, "CPO_Naive", schedule, ends, cp.getObjValue());
+            }
+            if (solved) {
                 System.out.println(filename+";"+cp.getObjValue()+";"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getObjBound()+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches)+";"+instantiation_time);
-                return(filename+";"+cp.getObjValue()+";"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getObjBound()+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches)+";"+instantiation_time);
+                return(filename+";"+cp.getObjValue()+";"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getObjBound()+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches)+";"+instantiation_time+stats);
             } else {
                 System.out.println("No solution found.");
-                return(filename+";NoSolution;"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches)+";"+instantiation_time);
+                return(filename+";NoSolution;"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches)+";"+instantiation_time+stats);
             }
          } catch (IloException e) {
             System.err.println("Error: " + e);
@@ -30,6 +30,11 @@ public class ORToolsSemiNaive {
 	}
 	
 	public static void scheduleFromDirectory(String foldername, boolean large, int timeout,boolean justInstantiation) throws Exception {
+		scheduleFromDirectory(0, foldername, large, timeout, justInstantiation);
+	}
+
+	/* dataset_id is the format of the files, given to the lean builder, the model cache and the verifier */
+	public static void scheduleFromDirectory(int dataset_id, String foldername, boolean large, int timeout,boolean justInstantiation) throws Exception {
 		String outFile = "ORT_SemiNaive_small_" + foldername + "_"+timeout+"_conf.csv";
 		String inFile = Main.DATA_PATH + foldername + "/";
 		if (large) {
@@ -65,24 +70,18 @@ public class ORToolsSemiNaive {
 			if (file.isFile()) {
 				i++;
 				System.out.println("Solving instance" + file.getName() + " " + i + "/" + files.length);
-				writer.println(scheduleFromFile(inFile, file.getName(), timeout,justInstantiation));
+				writer.println(scheduleFromFile(dataset_id, inFile, file.getName(), timeout,justInstantiation));
 			}
 		// writer.println(filename+";"+solver.objectiveValue()+";"+solver.wallTime()+";"+optimal);
 		writer.close();
 	}
 
-	public static String scheduleFromFile(String folder, String filename, int timeout,boolean justInstantiation) throws Exception {
-
-		long startTime = System.currentTimeMillis();
-		CpModel model = new CpModel();
+	/* Builds the SemiNaive encoding into model and returns the start variable indices, in job-major order. */
+	static int[] buildModel(CpModel model, String folder, String filename, Profiler profiler) throws Exception {
 		// Three weeks.
 		int horizon = 0;
-		if (filename == null)
-			filename = Main.DATA_PATH + "jobshop_abz7.data";
-
 		int nJobs, nMachines;
-		System.out.println("Solving instance: " + filename);
-
+		profiler.phase("horizon");
 		DataReader data = new DataReader(folder + filename);
 
 		// calculating horizon
@@ -97,9 +96,11 @@ public class ORToolsSemiNaive {
 				horizon += d;
 			}
 		}
+		profiler.phase("variables");
 		data = new DataReader(folder + filename);
 		nJobs = data.next();
 		nMachines = data.next();
+		int[] starts = new int[nJobs * nMachines];
 		IntVar[] lastOpsEnds = new IntVar[nJobs];
 		ArrayList<IntVar>[] machineStarts = (ArrayList<IntVar>[]) new ArrayList[nMachines];
 		ArrayList<IntVar>[] machineEnds = (ArrayList<IntVar>[]) new ArrayList[nMachines];
@@ -112,6 +113,7 @@ public class ORToolsSemiNaive {
 				m = data.next();
 				d = data.next();
 				start = model.newIntVar(0, horizon, "start" + (i * nJobs + j));
+				starts[i * nMachines + j] = start.getIndex();
 
 				end = model.newIntVar(0, horizon, "end" + (i * nJobs + j));
 
@@ -131,6 +133,7 @@ public class ORToolsSemiNaive {
 			}
 			lastOpsEnds[i] = endPrec;
 		}
+		profiler.phase("disjunctions");
 		IntVar dummy;
 		int dummy_i = 0;
 		for (int m = 0; m < nMachines; m++)
@@ -144,20 +147,56 @@ public class ORToolsSemiNaive {
 				}
 
 		// Makespan objective.
+		profiler.phase("objective");
 		IntVar obj = model.newIntVar(0, horizon, "makespan");
 		model.addMaxEquality(obj, lastOpsEnds);
 		model.minimize(obj);
+		return starts;
+	}
+
+	/* Model of the selected builder, or of the model cache when it has this instance. */
+	static int[] instantiate(CpModel model, int dataset_id, String folder, String filename, Profiler profiler) throws Exception {
+		return ModelCache.buildOrLoad(model, dataset_id, folder + filename, "ORT_SemiNaive", profiler, () -> {
+			if (LeanModelBuilder.enabled())
+				return new LeanModelBuilder(model, JobShopInstance.read(dataset_id, folder, filename), LeanModelBuilder.debugNames()).disjunctive(true, profiler);
+			return buildModel(model, folder, filename, profiler);
+		});
+	}
+
+	public static String scheduleFromFile(String folder, String filename, int timeout,boolean justInstantiation) throws Exception {
+		return scheduleFromFile(0, folder, filename, timeout, justInstantiation);
+	}
+
+	public static String scheduleFromFile(int dataset_id, String folder, String filename, int timeout,boolean justInstantiation) throws Exception {
+
+		long startTime = System.currentTimeMillis();
+		CpModel model = new CpModel();
+		if (filename == null)
+			filename = Main.DATA_PATH + "jobshop_abz7.data";
+
+		System.out.println("Solving instance: " + filename);
+
+		Profiler profiler = new Profiler("ORT_SemiNaive", filename);
+		int[] startVars = instantiate(model, dataset_id, folder, filename, profiler);
+		int nOps = startVars.length;
 
 		System.out.println("Instantiation finished, starting solving...");
 		// Creates a solver and solves the model.
 		CpSolver solver = new CpSolver();
 		solver.getParameters().setMaxTimeInSeconds(timeout);
+		solver.getParameters().setRelativeGapLimit(Main.gap());
+		if (Main.seed() >= 0)
+			solver.getParameters().setRandomSeed(Main.seed());
 		MySolutionCallback mSC = new MySolutionCallback();
 		long stopTime = System.currentTimeMillis();
         double instantiation_time = (stopTime - startTime)/1000;
+        profiler.end();
+        profiler.stats(model);
         if (justInstantiation)
-        	return (filename + ";" +instantiation_time);
+        	return (filename + ";" +instantiation_time + profiler.columns((stopTime - startTime) / 1000.0, nOps));
+		profiler.phase("solve");
 		CpSolverStatus status = solver.solveWithSolutionCallback(model, mSC);
+		profiler.end();
 		
 		String optimal = "No";
 
@@ -166,9 +205,15 @@ public class ORToolsSemiNaive {
 			optimal = "Yes";
 		} else
 			System.out.println("Non Optimal Schedule Length: " + solver.objectiveValue());
+		if (ScheduleVerifier.enabled() && (status == CpSolverStatus.OPTIMAL || status == CpSolverStatus.FEASIBLE)) {
+			int[] endVars = SchedJobShopORTools.endVars(model, startVars);
+			ScheduleVerifier.audit(dataset_id, folder, filename, "ORT_SemiNaive", SchedJobShopORTools.schedule(solver, startVars),
+					endVars == null ? null : SchedJobShopORTools.schedule(solver, endVars), solver.objectiveValue());
+		}
 		System.out.println(filename + ";" + solver.objectiveValue() + ";" + solver.wallTime() + ";" + optimal+";"+solver.numBranches()+";"+solver.numConflicts());
 
-		return (filename + ";" + solver.objectiveValue() + ";" + solver.wallTime() + ";" + optimal+";"+solver.numBranches()+";"+solver.numConflicts());
+		return (filename + ";" + solver.objectiveValue() + ";" + solver.wallTime() + ";" + optimal+";"+solver.numBranches()+";"+solver.numConflicts()
+				+ profiler.columns((stopTime - startTime) / 1000.0, nOps));
 	}
 }
 
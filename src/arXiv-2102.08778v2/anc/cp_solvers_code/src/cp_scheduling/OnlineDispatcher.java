@@ -0,0 +1,533 @@
+package cp_scheduling;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.ortools.sat.ConstraintProto;
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpModelProto;
+import com.google.ortools.sat.CpObjectiveProto;
+import com.google.ortools.sat.CpSolver;
+import com.google.ortools.sat.CpSolverStatus;
+import com.google.ortools.sat.IntegerArgumentProto;
+import com.google.ortools.sat.IntegerVariableProto;
+import com.google.ortools.sat.IntervalConstraintProto;
+import com.google.ortools.sat.NoOverlapConstraintProto;
+
+/*
+ * Online job shop: jobs arrive over time and the operations of each arrival
+ * are dispatched at once, in route order, each at the earliest time its
+ * machine is free after its release and its predecessor. With the insert rule
+ * (default) an operation goes into the first idle gap of its machine that is
+ * long enough, with the append rule after the last operation of the machine.
+ * Machine timelines are arrays of operations sorted by start time, so the
+ * gap is found by a binary search and a short scan.
+ *
+ * The clock is the release of the last arrival: operations starting before it
+ * have started and are never moved. Every online_reopt_ms a background
+ * CP-SAT model of the operations not finished yet re-optimises the unstarted
+ * ones, the started ones being fixed, and the improved plan is swapped in
+ * under the dispatcher lock if nothing it moves has started meanwhile; jobs
+ * that arrived during the solve are dispatched again on top of it.
+ */
+public class OnlineDispatcher {
+
+	final boolean insertion;
+	int nJobs;
+	int nOps;
+	int[] jobStart = new int[1025];
+	long[] release = new long[1024];
+	int[] machine = new int[1024];
+	int[] duration = new int[1024];
+	long[] start = new long[1024];
+	int[][] timeline = new int[0][];
+	int[] timelineSize = new int[0];
+	long makespan;
+	/* release of the last arrival */
+	long now;
+	int swaps, stale, reoptimisations;
+
+	OnlineDispatcher(boolean insertion) {
+		this.insertion = insertion;
+	}
+
+	/* operations not finished at the clock, copied under the lock for a re-optimisation */
+	static class Snapshot {
+		long now;
+		int nJobs, nOps;
+		int[] jobStart, machine, duration;
+		long[] release, start;
+		long makespan;
+	}
+
+	/* Dispatches a job released at time r with its route, returns its completion time. */
+	public synchronized long arrive(long r, int[] machines, int[] durations) {
+		int n = machines.length;
+		ensureCapacity(nOps + n);
+		now = Math.max(now, r);
+		release[nJobs] = r;
+		jobStart[nJobs] = nOps;
+		// max(r, now) as in apply, a release out of order in the stream does not start in the past
+		long ready = now;
+		for (int k = 0; k < n; k++) {
+			int o = nOps + k;
+			machine[o] = machines[k];
+			duration[o] = durations[k];
+			ready = place(o, ready) + durations[k];
+		}
+		nOps += n;
+		jobStart[++nJobs] = nOps;
+		makespan = Math.max(makespan, ready);
+		return ready;
+	}
+
+	/* puts o on its machine at the earliest time from earliest, returns its start */
+	private long place(int o, long earliest) {
+		int m = machine[o];
+		if (m >= timeline.length) {
+			int machines = Math.max(m + 1, 2 * timeline.length);
+			int old = timeline.length;
+			timeline = Arrays.copyOf(timeline, machines);
+			timelineSize = Arrays.copyOf(timelineSize, machines);
+			for (int j = old; j < machines; j++)
+				timeline[j] = new int[16];
+		}
+		int[] ops = timeline[m];
+		int n = timelineSize[m];
+		long t = earliest;
+		int k;
+		if (insertion) {
+			// ends are sorted like starts, first operation ending after earliest
+			int lo = 0, hi = n;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (start[ops[mid]] + duration[ops[mid]] <= earliest)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			k = lo;
+			while (k < n && start[ops[k]] < t + duration[o]) {
+				t = Math.max(t, start[ops[k]] + duration[ops[k]]);
+				k++;
+			}
+		} else {
+			k = n;
+			if (n > 0)
+				t = Math.max(t, start[ops[n - 1]] + duration[ops[n - 1]]);
+		}
+		if (n == ops.length)
+			timeline[m] = ops = Arrays.copyOf(ops, 2 * n);
+		System.arraycopy(ops, k, ops, k + 1, n - k);
+		ops[k] = o;
+		timelineSize[m] = n + 1;
+		start[o] = t;
+		return t;
+	}
+
+	private void ensureCapacity(int ops) {
+		if (nJobs + 2 > jobStart.length) {
+			jobStart = Arrays.copyOf(jobStart, 2 * jobStart.length);
+			release = Arrays.copyOf(release, 2 * release.length);
+		}
+		if (ops > machine.length) {
+			int capacity = Math.max(ops, 2 * machine.length);
+			machine = Arrays.copyOf(machine, capacity);
+			duration = Arrays.copyOf(duration, capacity);
+			start = Arrays.copyOf(start, capacity);
+		}
+	}
+
+	synchronized Snapshot snapshot() {
+		Snapshot s = new Snapshot();
+		s.now = now;
+		s.nJobs = nJobs;
+		s.nOps = nOps;
+		s.jobStart = Arrays.copyOf(jobStart, nJobs + 1);
+		s.release = Arrays.copyOf(release, nJobs);
+		s.machine = Arrays.copyOf(machine, nOps);
+		s.duration = Arrays.copyOf(duration, nOps);
+		s.start = Arrays.copyOf(start, nOps);
+		s.makespan = makespan;
+		return s;
+	}
+
+	/*
+	 * Swaps in the start times planned from snapshot s unless an operation they
+	 * move, or one of a later arrival, has started since. Returns whether the
+	 * plan was applied.
+	 */
+	synchronized boolean apply(Snapshot s, long[] planned) {
+		for (int o = 0; o < nOps; o++)
+			if (o < s.nOps ? s.start[o] >= s.now && (start[o] < now || planned[o] < now) : start[o] < now) {
+				stale++;
+				return false;
+			}
+		System.arraycopy(planned, 0, start, 0, s.nOps);
+		Arrays.fill(timelineSize, 0);
+		Integer[] order = new Integer[s.nOps];
+		for (int o = 0; o < s.nOps; o++)
+			order[o] = o;
+		Arrays.sort(order, (a, b) -> Long.compare(start[a], start[b]));
+		makespan = 0;
+		for (int o : order) {
+			int m = machine[o];
+			if (timelineSize[m] == timeline[m].length)
+				timeline[m] = Arrays.copyOf(timeline[m], 2 * timelineSize[m]);
+			timeline[m][timelineSize[m]++] = o;
+			makespan = Math.max(makespan, start[o] + duration[o]);
+		}
+		// later arrivals, none of them has started
+		for (int i = s.nJobs; i < nJobs; i++) {
+			long ready = Math.max(release[i], now);
+			for (int o = jobStart[i]; o < jobStart[i + 1]; o++)
+				ready = place(o, ready) + duration[o];
+			makespan = Math.max(makespan, ready);
+		}
+		swaps++;
+		return true;
+	}
+
+	/* the schedule so far as an instance and start times, for the verifier */
+	synchronized JobShopInstance instance(String name, long[] starts) {
+		System.arraycopy(start, 0, starts, 0, nOps);
+		return new JobShopInstance(name, nJobs, timeline.length, Arrays.copyOf(jobStart, nJobs + 1), Arrays.copyOf(machine, nOps),
+				Arrays.copyOf(duration, nOps));
+	}
+
+	/* CP-SAT model of a snapshot, in a nested class so that the dispatcher alone does not load jniortools */
+	static class Reoptimizer {
+
+		static {
+			System.loadLibrary("jniortools");
+		}
+
+		long objective = -1;
+		boolean optimal;
+
+		/*
+		 * Operations ending after s.now, those started before it fixed. Start
+		 * domains are cut to the makespan of the current plan, given as a hint.
+		 * Returns the new start times of all operations, null without an
+		 * improvement.
+		 */
+		long[] solve(Snapshot s, double seconds, int n_workers) {
+			int[] active = new int[s.nOps];
+			int[] var = new int[s.nOps];
+			int a = 0;
+			long finished = 0;
+			for (int o = 0; o < s.nOps; o++) {
+				long end = s.start[o] + s.duration[o];
+				if (end > s.now || s.start[o] >= s.now) {
+					var[o] = a;
+					active[a++] = o;
+				} else {
+					var[o] = -1;
+					finished = Math.max(finished, end);
+				}
+			}
+			if (a == 0)
+				return null;
+			long ub = s.makespan;
+			CpModel model = new CpModel();
+			CpModelProto.Builder proto = model.getBuilder();
+			long[] lb = new long[a];
+			for (int i = 0; i < s.nJobs; i++) {
+				long ready = s.release[i];
+				for (int o = s.jobStart[i]; o < s.jobStart[i + 1]; o++)
+					if (var[o] < 0)
+						ready = Math.max(ready, s.start[o] + s.duration[o]);
+					else
+						lb[var[o]] = Math.max(ready, s.now);
+			}
+			for (int k = 0; k < a; k++) {
+				int o = active[k];
+				if (s.start[o] < s.now)
+					proto.addVariables(IntegerVariableProto.newBuilder().addDomain(s.start[o]).addDomain(s.start[o]));
+				else
+					proto.addVariables(IntegerVariableProto.newBuilder().addDomain(lb[k]).addDomain(ub - s.duration[o]));
+			}
+			for (int k = 0; k < a; k++)
+				proto.addVariables(IntegerVariableProto.newBuilder().addDomain(0).addDomain(ub));
+			int mk = 2 * a;
+			proto.addVariables(IntegerVariableProto.newBuilder().addDomain(finished).addDomain(ub));
+			int[] sizeVar = new int[0];
+			for (int k = 0; k < a; k++) {
+				int d = s.duration[active[k]];
+				if (d >= sizeVar.length) {
+					int old = sizeVar.length;
+					sizeVar = Arrays.copyOf(sizeVar, Math.max(d + 1, 2 * old));
+					Arrays.fill(sizeVar, old, sizeVar.length, -1);
+				}
+				if (sizeVar[d] < 0) {
+					sizeVar[d] = proto.getVariablesCount();
+					proto.addVariables(IntegerVariableProto.newBuilder().addDomain(d).addDomain(d));
+				}
+			}
+			// interval of active operation k is constraint k
+			for (int k = 0; k < a; k++)
+				proto.addConstraints(ConstraintProto.newBuilder()
+						.setInterval(IntervalConstraintProto.newBuilder().setStart(k).setEnd(a + k).setSize(sizeVar[s.duration[active[k]]])));
+			IntegerArgumentProto.Builder max = IntegerArgumentProto.newBuilder().setTarget(mk);
+			for (int i = 0; i < s.nJobs; i++)
+				for (int o = s.jobStart[i] + 1; o < s.jobStart[i + 1]; o++)
+					if (var[o - 1] >= 0)
+						proto.addConstraints(ConstraintProto.newBuilder().setLinear(LeanModelBuilder.difference(var[o], a + var[o - 1], 0, ub)));
+			int machines = 0;
+			for (int k = 0; k < a; k++)
+				machines = Math.max(machines, s.machine[active[k]] + 1);
+			NoOverlapConstraintProto.Builder[] noOverlap = new NoOverlapConstraintProto.Builder[machines];
+			for (int k = 0; k < a; k++) {
+				int m = s.machine[active[k]];
+				if (noOverlap[m] == null)
+					noOverlap[m] = NoOverlapConstraintProto.newBuilder();
+				noOverlap[m].addIntervals(k);
+				max.addVars(a + k);
+			}
+			for (NoOverlapConstraintProto.Builder machine : noOverlap)
+				if (machine != null)
+					proto.addConstraints(ConstraintProto.newBuilder().setNoOverlap(machine));
+			proto.addConstraints(ConstraintProto.newBuilder().setIntMax(max));
+			proto.setObjective(CpObjectiveProto.newBuilder().addVars(mk).addCoeffs(1));
+			int[] startVars = new int[a];
+			long[] hint = new long[a];
+			for (int k = 0; k < a; k++) {
+				startVars[k] = k;
+				hint[k] = s.start[active[k]];
+			}
+			SchedJobShopORTools.addHints(model, startVars, hint);
+
+			CpSolver solver = new CpSolver();
+			solver.getParameters().setMaxTimeInSeconds(seconds);
+			if (Main.seed() >= 0)
+				solver.getParameters().setRandomSeed(Main.seed());
+			solver.getParameters().setNumSearchWorkers(n_workers);
+			CpSolverStatus status = solver.solve(model);
+			if (status != CpSolverStatus.OPTIMAL && status != CpSolverStatus.FEASIBLE)
+				return null;
+			objective = Math.round(solver.objectiveValue());
+			optimal = status == CpSolverStatus.OPTIMAL;
+			if (objective >= s.makespan)
+				return null;
+			long[] planned = Arrays.copyOf(s.start, s.nOps);
+			long[] solved = SchedJobShopORTools.schedule(solver, startVars);
+			for (int k = 0; k < a; k++)
+				planned[active[k]] = solved[k];
+			return planned;
+		}
+	}
+
+	/* one job of a stream */
+	static class Arrival {
+		final long release;
+		final int[] machines, durations;
+
+		Arrival(long release, int[] machines, int[] durations) {
+			this.release = release;
+			this.durations = durations;
+			this.machines = machines;
+		}
+	}
+
+	/*
+	 * Local stand-in for the shop floor: the jobs of the instance arrive in
+	 * order, with exponential inter-arrival times such that the most loaded
+	 * machine is busy online_utilisation (0.9) of the time.
+	 */
+	static List<Arrival> arrivals(JobShopInstance instance, long seed) {
+		long[] loads = instance.machineLoads();
+		long bottleneck = 0;
+		for (long l : loads)
+			bottleneck = Math.max(bottleneck, l);
+		double mean = (double) bottleneck / Math.max(1, instance.nJobs) / Double.parseDouble(Main.option("online_utilisation", "0.9"));
+		SplittableRandom random = new SplittableRandom(KnownOptimaGenerator.mix(seed, instance.nOps));
+		List<Arrival> arrivals = new ArrayList<Arrival>();
+		double t = 0;
+		for (int i = 0; i < instance.nJobs; i++) {
+			int from = instance.jobStart[i], to = instance.jobStart[i + 1];
+			arrivals.add(new Arrival(Math.round(t), Arrays.copyOfRange(instance.machine, from, to), Arrays.copyOfRange(instance.duration, from, to)));
+			t += -mean * Math.log(1 - random.nextDouble());
+		}
+		return arrivals;
+	}
+
+	/*
+	 * Arrivals written one per line as "release machine duration machine
+	 * duration ...", up to a line "end". With online_follow=true the file is
+	 * tailed while it is being written.
+	 */
+	static List<Arrival> arrivals(String path) throws Exception {
+		boolean follow = Main.option("online_follow", "false").equals("true");
+		List<Arrival> arrivals = new ArrayList<Arrival>();
+		try (BufferedReader in = new BufferedReader(new FileReader(path))) {
+			while (true) {
+				String line = in.readLine();
+				if (line == null) {
+					if (!follow)
+						break;
+					Thread.sleep(50);
+					continue;
+				}
+				line = line.trim();
+				if (line.equals("end"))
+					break;
+				if (line.isEmpty())
+					continue;
+				String[] words = line.split("\\s+");
+				int n = (words.length - 1) / 2;
+				int[] machines = new int[n], durations = new int[n];
+				for (int k = 0; k < n; k++) {
+					machines[k] = Integer.parseInt(words[1 + 2 * k]);
+					durations[k] = Integer.parseInt(words[2 + 2 * k]);
+				}
+				arrivals.add(new Arrival(Long.parseLong(words[0]), machines, durations));
+			}
+		}
+		return arrivals;
+	}
+
+	static final String COLUMNS = "instance;jobs;operations;rule;p50_us;p99_us;max_us;dispatch_makespan;online_makespan;reoptimisations;swaps;stale;"
+			+ "offline_makespan;offline_optimal;lower_bound;online_ratio;dispatch_ratio";
+
+	/*
+	 * Streams the jobs of every instance of the folder (or the arrivals of the
+	 * online_stream file) into a dispatcher with background re-optimisation and
+	 * into one without, paced so that the stream lasts timeout seconds, then
+	 * solves the whole instance offline with its release dates for
+	 * online_offline_s (timeout) seconds.
+	 */
+	public static void runFromDirectory(int dataset_id, String foldername, int timeout, int n_workers) throws Exception {
+		String outFile = "Online_" + INFO.dataset_folder[dataset_id].substring(15, 20) + "_" + foldername + "_" + timeout + "_" + n_workers + ".csv";
+		String inFile = INFO.dataset_folder[dataset_id] + foldername + "/";
+		String stream = Main.option("online_stream", "");
+		System.out.println("Online dispatching with re-optimisation:\ninput= " + (stream.isEmpty() ? inFile : stream) + "\noutput= " + outFile
+				+ "\ntimeout= " + timeout + "\nworkers= " + n_workers);
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		writer.println(COLUMNS);
+		if (!stream.isEmpty())
+			writer.println(run(new File(stream).getName(), arrivals(stream), timeout, n_workers));
+		else
+			for (File file : new File(inFile).listFiles())
+				if (file.isFile()) {
+					JobShopInstance instance = JobShopInstance.read(dataset_id, inFile, file.getName());
+					writer.println(run(file.getName(), arrivals(instance, Long.parseLong(Main.option("online_seed", "1"))), timeout, n_workers));
+					writer.flush();
+				}
+		writer.close();
+	}
+
+	static String run(String name, List<Arrival> arrivals, int timeout, int n_workers) throws Exception {
+		String rule = Main.option("online_rule", "insert");
+		OnlineDispatcher online = new OnlineDispatcher(!rule.equals("append"));
+		OnlineDispatcher dispatchOnly = new OnlineDispatcher(!rule.equals("append"));
+		long lastRelease = arrivals.isEmpty() ? 0 : arrivals.get(arrivals.size() - 1).release;
+		// time units per second, 0 replays the stream without waiting
+		double speed = Double.parseDouble(Main.option("online_speed", String.valueOf((double) Math.max(1, lastRelease) / Math.max(1, timeout))));
+		long period = Long.parseLong(Main.option("online_reopt_ms", "1000"));
+		double reoptSeconds = Double.parseDouble(Main.option("online_reopt_s", String.valueOf(period / 2000.0)));
+
+		AtomicBoolean busy = new AtomicBoolean();
+		ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor();
+		background.scheduleWithFixedDelay(() -> {
+			if (busy.compareAndSet(false, true))
+				try {
+					reoptimise(online, reoptSeconds, n_workers);
+				} finally {
+					busy.set(false);
+				}
+		}, period, period, TimeUnit.MILLISECONDS);
+
+		System.out.println("Streaming " + arrivals.size() + " jobs of " + name + " at " + speed + " time units per second");
+		long[] latencies = new long[arrivals.size()];
+		long begin = System.nanoTime();
+		for (int j = 0; j < arrivals.size(); j++) {
+			Arrival arrival = arrivals.get(j);
+			if (speed > 0) {
+				long wait = begin + (long) (arrival.release / speed * 1e9) - System.nanoTime();
+				if (wait > 0)
+					TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			long t = System.nanoTime();
+			online.arrive(arrival.release, arrival.machines, arrival.durations);
+			latencies[j] = System.nanoTime() - t;
+			dispatchOnly.arrive(arrival.release, arrival.machines, arrival.durations);
+		}
+		background.shutdown();
+		background.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		// last one once every job is known
+		reoptimise(online, reoptSeconds, n_workers);
+
+		Snapshot all = online.snapshot();
+		all.now = 0;
+		Reoptimizer offline = new Reoptimizer();
+		offline.solve(all, Double.parseDouble(Main.option("online_offline_s", String.valueOf(timeout))), n_workers);
+		long offlineMakespan = offline.objective < 0 ? online.makespan : Math.min(offline.objective, online.makespan);
+		long lb = lowerBound(all);
+
+		if (ScheduleVerifier.enabled()) {
+			long[] starts = new long[online.nOps];
+			JobShopInstance instance = online.instance(name, starts);
+			ScheduleVerifier.record(new ScheduleVerifier(instance).check("Online_" + rule, starts, null, online.makespan));
+			for (int i = 0; i < instance.nJobs; i++)
+				if (instance.jobStart[i + 1] > instance.jobStart[i] && starts[instance.jobStart[i]] < all.release[i])
+					System.out.println("Job " + i + " of " + name + " starts before its release " + all.release[i]);
+		}
+		Arrays.sort(latencies);
+		double[] us = new double[latencies.length];
+		for (int j = 0; j < us.length; j++)
+			us[j] = latencies[j] / 1000.0;
+		String row = name + ";" + online.nJobs + ";" + online.nOps + ";" + rule + ";" + SeedHarness.quantile(us, 0.5) + ";" + SeedHarness.quantile(us, 0.99) + ";"
+				+ (us.length == 0 ? 0 : us[us.length - 1]) + ";" + dispatchOnly.makespan + ";" + online.makespan + ";" + online.reoptimisations + ";"
+				+ online.swaps + ";" + online.stale + ";" + offlineMakespan + ";" + (offline.optimal ? "Yes" : "No") + ";" + lb + ";"
+				+ (double) online.makespan / offlineMakespan + ";" + (double) dispatchOnly.makespan / offlineMakespan;
+		System.out.println(row);
+		return row;
+	}
+
+	static void reoptimise(OnlineDispatcher online, double seconds, int n_workers) {
+		Snapshot s = online.snapshot();
+		synchronized (online) {
+			online.reoptimisations++;
+		}
+		long[] planned = new Reoptimizer().solve(s, seconds, n_workers);
+		if (planned != null && online.apply(s, planned))
+			System.out.println("Re-optimised at " + s.now + ": makespan " + s.makespan + " -> " + online.makespan);
+	}
+
+	/* largest of the release plus length of a job and of the earliest release on a machine plus its load */
+	static long lowerBound(Snapshot s) {
+		long lb = 0;
+		long[] load = new long[0];
+		long[] first = new long[0];
+		for (int i = 0; i < s.nJobs; i++) {
+			long length = 0;
+			for (int o = s.jobStart[i]; o < s.jobStart[i + 1]; o++) {
+				int m = s.machine[o];
+				if (m >= load.length) {
+					int old = load.length;
+					load = Arrays.copyOf(load, Math.max(m + 1, 2 * old));
+					first = Arrays.copyOf(first, load.length);
+					Arrays.fill(first, old, first.length, Long.MAX_VALUE);
+				}
+				load[m] += s.duration[o];
+				first[m] = Math.min(first[m], s.release[i]);
+				length += s.duration[o];
+			}
+			lb = Math.max(lb, s.release[i] + length);
+		}
+		for (int m = 0; m < load.length; m++)
+			if (load[m] > 0)
+				lb = Math.max(lb, first[m] + load[m]);
+		return lb;
+	}
+}
@@ -0,0 +1,181 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import cp_scheduling.SchedJobShop.DataReader;
+
+/*
+ * Open shop instance in the layout read by SchedOpenShop: "nJobs nMachines"
+ * then one row per job with the processing time on every machine. Operation
+ * o = i * nMachines + j is the one of job i on machine j. Operations of a job
+ * can run in any order but never at the same time, like the ones of a machine.
+ */
+public class OpenShopInstance {
+
+	final String name;
+	final int nJobs;
+	final int nMachines;
+	final int nOps;
+	final int[] duration;
+
+	OpenShopInstance(String name, int nJobs, int nMachines, int[] duration) {
+		this.name = name;
+		this.nJobs = nJobs;
+		this.nMachines = nMachines;
+		this.nOps = nJobs * nMachines;
+		this.duration = duration;
+	}
+
+	public static OpenShopInstance read(String folder, String filename) throws IOException {
+		DataReader data = new DataReader(folder + filename);
+		int nJobs = data.next();
+		int nMachines = data.next();
+		int[] duration = new int[nJobs * nMachines];
+		for (int o = 0; o < duration.length; o++)
+			duration[o] = data.next();
+		return new OpenShopInstance(filename, nJobs, nMachines, duration);
+	}
+
+	public long[] jobLoads() {
+		long[] load = new long[nJobs];
+		for (int o = 0; o < nOps; o++)
+			load[o / nMachines] += duration[o];
+		return load;
+	}
+
+	public long[] machineLoads() {
+		long[] load = new long[nMachines];
+		for (int o = 0; o < nOps; o++)
+			load[o % nMachines] += duration[o];
+		return load;
+	}
+
+	/* max(most loaded job, most loaded machine) */
+	public long lowerBound() {
+		long lb = 0;
+		for (long load : jobLoads())
+			lb = Math.max(lb, load);
+		for (long load : machineLoads())
+			lb = Math.max(lb, load);
+		return lb;
+	}
+
+	/*
+	 * Dense schedule: a machine never idles while one of its remaining
+	 * operations has a free job. Whenever a machine gets free it takes, among
+	 * the free jobs that still need it, the one with the most remaining work.
+	 * Every dense schedule is within twice the optimum. O(nOps * nJobs) in the
+	 * worst case, start times are written to starts when it is not null.
+	 */
+	public long denseSchedule(long[] starts) {
+		long[] jobReady = new long[nJobs];
+		long[] jobWork = jobLoads();
+		// jobs that still have an operation on each machine, unordered
+		int[][] pending = new int[nMachines][nJobs];
+		int[] nPending = new int[nMachines];
+		PriorityQueue<long[]> queue = new PriorityQueue<>(Math.max(1, nMachines), (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+		for (int j = 0; j < nMachines; j++) {
+			for (int i = 0; i < nJobs; i++)
+				pending[j][i] = i;
+			nPending[j] = nJobs;
+			if (nJobs > 0)
+				queue.add(new long[] { 0, j });
+		}
+		long makespan = 0;
+		while (!queue.isEmpty()) {
+			long[] top = queue.poll();
+			long t = top[0];
+			int j = (int) top[1];
+			int[] jobs = pending[j];
+			int best = -1;
+			long nextReady = Long.MAX_VALUE;
+			for (int k = 0; k < nPending[j]; k++) {
+				int i = jobs[k];
+				if (jobReady[i] > t)
+					nextReady = Math.min(nextReady, jobReady[i]);
+				else if (best < 0 || jobWork[i] > jobWork[jobs[best]] || (jobWork[i] == jobWork[jobs[best]] && i < jobs[best]))
+					best = k;
+			}
+			if (best < 0) {
+				// every remaining job is busy elsewhere, wait for the first one
+				top[0] = nextReady;
+				queue.add(top);
+				continue;
+			}
+			int i = jobs[best];
+			jobs[best] = jobs[--nPending[j]];
+			int o = i * nMachines + j;
+			if (starts != null)
+				starts[o] = t;
+			long end = t + duration[o];
+			jobReady[i] = end;
+			jobWork[i] -= duration[o];
+			makespan = Math.max(makespan, end);
+			if (nPending[j] > 0) {
+				top[0] = end;
+				queue.add(top);
+			}
+		}
+		return makespan;
+	}
+
+	/*
+	 * The same operations as a job shop of one-operation jobs, each operation
+	 * twice: once on its machine and once on a machine standing for its job
+	 * (nMachines + i). A schedule of this instance is checked by
+	 * ScheduleVerifier with starts given twice, see verify.
+	 */
+	JobShopInstance resources() {
+		int[] jobStart = new int[2 * nOps + 1];
+		int[] machine = new int[2 * nOps];
+		int[] durations = new int[2 * nOps];
+		for (int o = 0; o < nOps; o++) {
+			machine[o] = o % nMachines;
+			machine[nOps + o] = nMachines + o / nMachines;
+			durations[o] = durations[nOps + o] = duration[o];
+		}
+		for (int k = 0; k <= 2 * nOps; k++)
+			jobStart[k] = k;
+		return new JobShopInstance(name, 2 * nOps, nMachines + nJobs, jobStart, machine, durations);
+	}
+
+	/* Verifies an open shop schedule and records it for the audit report. */
+	public ScheduleVerifier.Result verify(String solver, long[] starts, double reported) {
+		long[] twice = Arrays.copyOf(starts, 2 * nOps);
+		System.arraycopy(starts, 0, twice, nOps, nOps);
+		ScheduleVerifier.Result r = new ScheduleVerifier(resources()).check(solver, twice, null, reported);
+		r.nOps = nOps;
+		return ScheduleVerifier.record(r);
+	}
+
+	/*
+	 * Instant bounds for every open shop instance of a folder: the load lower
+	 * bound and the makespan of the dense schedule, without any solver.
+	 */
+	public static void boundsFromDirectory(String foldername) throws Exception {
+		String outFile = "OS_Bounds_" + foldername + ".csv";
+		String inFile = INFO.OPENSHOP_PATH + foldername + "/";
+		System.out.println("Dense schedules and lower bounds of open shop instances:\ninput= " + inFile + "\noutput= " + outFile);
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		writer.println("instance;jobs;machines;lower_bound;dense_makespan;ratio;time_s");
+		for (File file : new File(inFile).listFiles())
+			if (file.isFile()) {
+				long start = System.nanoTime();
+				OpenShopInstance instance = read(inFile, file.getName());
+				long lb = instance.lowerBound();
+				long[] starts = new long[instance.nOps];
+				long ub = instance.denseSchedule(starts);
+				double time = (System.nanoTime() - start) / 1e9;
+				if (ScheduleVerifier.enabled())
+					instance.verify("OS_Dense", starts, ub);
+				writer.println(file.getName() + ";" + instance.nJobs + ";" + instance.nMachines + ";" + lb + ";" + ub + ";" + (double) ub / Math.max(1, lb)
+						+ ";" + time);
+				writer.flush();
+			}
+		writer.close();
+	}
+}
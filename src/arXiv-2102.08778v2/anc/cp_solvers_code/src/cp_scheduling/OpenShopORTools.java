@@ -0,0 +1,143 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import com.google.ortools.sat.ConstraintProto;
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpModelProto;
+import com.google.ortools.sat.CpObjectiveProto;
+import com.google.ortools.sat.CpSolver;
+import com.google.ortools.sat.CpSolverStatus;
+import com.google.ortools.sat.IntegerArgumentProto;
+import com.google.ortools.sat.IntegerVariableProto;
+import com.google.ortools.sat.IntervalConstraintProto;
+import com.google.ortools.sat.NoOverlapConstraintProto;
+
+/*
+ * Open shop with CP-SAT: one interval per operation, shared by the no-overlap
+ * of its job and the one of its machine. The model is built as a proto with
+ * the layout of LeanModelBuilder (start o, end nOps + o, makespan 2 * nOps,
+ * interval of o is constraint o). Domains are cut to the makespan of the
+ * dense schedule of OpenShopInstance, the makespan starts at the load lower
+ * bound, and the dense schedule is given as a hint.
+ */
+public class OpenShopORTools {
+
+	static {
+		System.loadLibrary("jniortools");
+	}
+
+	public static void scheduleFromDirectory(String foldername, int timeout, int n_workers) throws Exception {
+		String outFile = "ORT_OpenShop_" + foldername + "_" + timeout + "_" + n_workers + ".csv";
+		String inFile = INFO.OPENSHOP_PATH + foldername + "/";
+		System.out.println("Using ORTools to solve open shop instances:\ninput= " + inFile + "\noutput= " + outFile + "\ntimeout= " + timeout
+				+ "\nworkers= " + n_workers);
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		File[] files = new File(inFile).listFiles();
+		int i = 0;
+		for (File file : files)
+			if (file.isFile()) {
+				i++;
+				System.out.println("Solving instance" + file.getName() + " " + i + "/" + files.length);
+				writer.println(scheduleFromFile(inFile, file.getName(), timeout, n_workers));
+				writer.flush();
+			}
+		writer.close();
+	}
+
+	/* filename;objective;time;optimal;branches;conflicts;bound;lower_bound;dense_makespan, then the statistics columns */
+	public static String scheduleFromFile(String folder, String filename, int timeout, int n_workers) throws Exception {
+		long startTime = System.currentTimeMillis();
+		Profiler profiler = new Profiler("ORT_OpenShop", filename);
+		profiler.phase("variables");
+		OpenShopInstance instance = OpenShopInstance.read(folder, filename);
+		long lb = instance.lowerBound();
+		long[] dense = new long[instance.nOps];
+		long ub = instance.denseSchedule(dense);
+		CpModel model = new CpModel();
+		int[] startVars = buildModel(model, instance, lb, ub, profiler);
+		SchedJobShopORTools.addHints(model, startVars, dense);
+		profiler.end();
+		profiler.stats(model);
+		double instantiation_time = (double) (System.currentTimeMillis() - startTime) / 1000;
+
+		CpSolver solver = new CpSolver();
+		solver.getParameters().setMaxTimeInSeconds(timeout);
+		solver.getParameters().setRelativeGapLimit(Main.gap());
+		if (Main.seed() >= 0)
+			solver.getParameters().setRandomSeed(Main.seed());
+		solver.getParameters().setNumSearchWorkers(n_workers);
+		profiler.phase("solve");
+		CpSolverStatus status = solver.solve(model);
+		profiler.end();
+		String optimal = status == CpSolverStatus.OPTIMAL ? "Yes" : "No";
+		double objective = solver.objectiveValue();
+		if (status == CpSolverStatus.OPTIMAL || status == CpSolverStatus.FEASIBLE) {
+			if (ScheduleVerifier.enabled())
+				instance.verify("ORT_OpenShop", SchedJobShopORTools.schedule(solver, startVars), objective);
+		} else
+			// the dense schedule is still a solution
+			objective = ub;
+		System.out.println(filename + ";" + objective + ";" + solver.wallTime() + ";" + optimal + ";" + lb + ";" + ub);
+		return filename + ";" + objective + ";" + solver.wallTime() + ";" + optimal + ";" + solver.numBranches() + ";" + solver.numConflicts() + ";"
+				+ Math.max(lb, solver.bestObjectiveBound()) + ";" + lb + ";" + ub + profiler.columns(instantiation_time, instance.nOps);
+	}
+
+	/* Returns the start variable indices. */
+	static int[] buildModel(CpModel model, OpenShopInstance instance, long lb, long ub, Profiler profiler) {
+		CpModelProto.Builder proto = model.getBuilder();
+		int n = instance.nOps;
+		for (int o = 0; o < n; o++)
+			proto.addVariables(IntegerVariableProto.newBuilder().addDomain(0).addDomain(ub - instance.duration[o]));
+		for (int o = 0; o < n; o++)
+			proto.addVariables(IntegerVariableProto.newBuilder().addDomain(instance.duration[o]).addDomain(ub));
+		int mk = 2 * n;
+		proto.addVariables(IntegerVariableProto.newBuilder().addDomain(lb).addDomain(ub));
+
+		profiler.phase("intervals");
+		int maxDuration = 0;
+		for (int d : instance.duration)
+			maxDuration = Math.max(maxDuration, d);
+		int[] sizeVar = new int[maxDuration + 1];
+		Arrays.fill(sizeVar, -1);
+		for (int o = 0; o < n; o++) {
+			int d = instance.duration[o];
+			if (sizeVar[d] < 0) {
+				sizeVar[d] = proto.getVariablesCount();
+				proto.addVariables(IntegerVariableProto.newBuilder().addDomain(d).addDomain(d));
+			}
+		}
+		for (int o = 0; o < n; o++)
+			proto.addConstraints(ConstraintProto.newBuilder()
+					.setInterval(IntervalConstraintProto.newBuilder().setStart(o).setEnd(n + o).setSize(sizeVar[instance.duration[o]])));
+
+		profiler.phase("noOverlap");
+		for (int i = 0; i < instance.nJobs; i++) {
+			NoOverlapConstraintProto.Builder job = NoOverlapConstraintProto.newBuilder();
+			for (int j = 0; j < instance.nMachines; j++)
+				job.addIntervals(i * instance.nMachines + j);
+			proto.addConstraints(ConstraintProto.newBuilder().setNoOverlap(job));
+		}
+		for (int j = 0; j < instance.nMachines; j++) {
+			NoOverlapConstraintProto.Builder machine = NoOverlapConstraintProto.newBuilder();
+			for (int i = 0; i < instance.nJobs; i++)
+				machine.addIntervals(i * instance.nMachines + j);
+			proto.addConstraints(ConstraintProto.newBuilder().setNoOverlap(machine));
+		}
+
+		profiler.phase("objective");
+		// any operation can be the last one of its job
+		IntegerArgumentProto.Builder max = IntegerArgumentProto.newBuilder().setTarget(mk);
+		for (int o = 0; o < n; o++)
+			max.addVars(n + o);
+		proto.addConstraints(ConstraintProto.newBuilder().setIntMax(max));
+		proto.setObjective(CpObjectiveProto.newBuilder().addVars(mk).addCoeffs(1));
+
+		int[] startVars = new int[n];
+		for (int o = 0; o < n; o++)
+			startVars[o] = o;
+		return startVars;
+	}
+}
@@ -0,0 +1,191 @@
+package cp_scheduling;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.ortools.sat.ConstraintProto;
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpModelProto;
+import com.google.ortools.sat.IntegerVariableProto;
+
+import ilog.concert.IloException;
+import ilog.cp.IloCP;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * Phase-level instrumentation of a scheduleFromFile call. Every phase (horizon
+ * pass, variable creation, no-overlap posting, solve...) is a JDK Flight
+ * Recorder event, recorded when the JVM runs with -XX:StartFlightRecording.
+ * With the stats option the phase times, the model statistics, the peak heap
+ * and the native resident set size are also appended as extra columns to the
+ * result row, see COLUMNS. The peaks belong to the whole JVM: when runs are
+ * concurrent they are neither reset nor reported (-1).
+ */
+public class Profiler {
+
+	public static final String COLUMNS = "variables;intervals;booleans;constraints;proto_bytes;heap_peak_mb;rss_mb;rss_peak_mb;instantiation_per_op_us;phases";
+
+	@Name("cp_scheduling.Phase")
+	@Label("Solver Phase")
+	@Category("cp_scheduling")
+	static class PhaseEvent extends Event {
+		@Label("Encoder")
+		String encoder;
+		@Label("Instance")
+		String instance;
+		@Label("Phase")
+		String phase;
+	}
+
+	/* set when runs may overlap, as in the daemon with several threads */
+	static volatile boolean concurrent;
+
+	private final String encoder;
+	private final String instance;
+	private final Map<String, Double> phases = new LinkedHashMap<String, Double>();
+	private PhaseEvent current;
+	private long currentStart;
+	private long variables = -1, intervals = -1, booleans = -1, constraints = -1, protoBytes = -1;
+
+	public Profiler(String encoder, String instance) {
+		this.encoder = encoder;
+		this.instance = instance;
+		// the heap peak is global to the JVM, it is only reset for the runs that report it
+		if (enabled() && !concurrent)
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+				if (pool.getType() == MemoryType.HEAP)
+					pool.resetPeakUsage();
+	}
+
+	public static boolean enabled() {
+		return Main.option("stats", "false").equals("true");
+	}
+
+	/* Ends the running phase, if any, and starts the named one. */
+	public void phase(String name) {
+		end();
+		currentStart = System.nanoTime();
+		current = new PhaseEvent();
+		current.encoder = encoder;
+		current.instance = instance;
+		current.phase = name;
+		current.begin();
+	}
+
+	public void end() {
+		if (current == null)
+			return;
+		current.commit();
+		Double previous = phases.get(current.phase);
+		phases.put(current.phase, (previous == null ? 0 : previous) + (System.nanoTime() - currentStart) / 1e9);
+		current = null;
+	}
+
+	public double seconds(String phase) {
+		Double s = phases.get(phase);
+		return s == null ? 0 : s;
+	}
+
+	/*
+	 * Model statistics of an OR-Tools model, read from the builder without
+	 * building the proto. proto_bytes is the serialized size of the variables,
+	 * constraints and objective, the bulk of the proto.
+	 */
+	public void stats(CpModel model) {
+		if (!enabled())
+			return;
+		CpModelProto.Builder builder = model.getBuilder();
+		long bytes = 0;
+		variables = builder.getVariablesCount();
+		booleans = 0;
+		for (int v = 0; v < variables; v++) {
+			IntegerVariableProto var = builder.getVariables(v);
+			if (var.getDomainCount() == 2 && var.getDomain(0) >= 0 && var.getDomain(1) <= 1)
+				booleans++;
+			bytes += fieldBytes(var.getSerializedSize());
+		}
+		constraints = builder.getConstraintsCount();
+		intervals = 0;
+		for (int c = 0; c < constraints; c++) {
+			ConstraintProto constraint = builder.getConstraints(c);
+			if (constraint.getConstraintCase() == ConstraintProto.ConstraintCase.INTERVAL)
+				intervals++;
+			bytes += fieldBytes(constraint.getSerializedSize());
+		}
+		if (builder.hasObjective())
+			bytes += fieldBytes(builder.getObjective().getSerializedSize());
+		protoBytes = bytes;
+	}
+
+	/* serialized size of an embedded message field of the given size: one byte tag, varint length, message */
+	static long fieldBytes(int size) {
+		int lengthBytes = 1;
+		for (int v = size >>> 7; v != 0; v >>>= 7)
+			lengthBytes++;
+		return 1 + lengthBytes + size;
+	}
+
+	/* Model statistics of a CP Optimizer model, available once it has been extracted by solve(). */
+	public void stats(IloCP cp) throws IloException {
+		if (!enabled())
+			return;
+		intervals = cp.getInfo(IloCP.IntInfo.NumberOfIntervalVariables);
+		variables = cp.getInfo(IloCP.IntInfo.NumberOfVariables);
+		constraints = cp.getInfo(IloCP.IntInfo.NumberOfConstraints);
+	}
+
+	static long heapPeak() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		return peak;
+	}
+
+	/* Value in kB of a /proc/self/status field (VmRSS, VmHWM), -1 where procfs is not available. */
+	static long procStatus(String field) {
+		try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+			String line;
+			while ((line = reader.readLine()) != null)
+				if (line.startsWith(field + ":"))
+					return Long.parseLong(line.substring(field.length() + 1).trim().split("\\s+")[0]);
+		} catch (IOException | NumberFormatException e) {
+			// not on Linux
+		}
+		return -1;
+	}
+
+	/* Resets VmHWM to the current RSS (Linux 4.0 and later), so that the next peak belongs to the next run. */
+	static void resetRssPeak() {
+		try (FileWriter clear = new FileWriter("/proc/self/clear_refs")) {
+			clear.write("5");
+		} catch (IOException e) {
+			// not on Linux, rss_peak_mb is the peak of the process
+		}
+	}
+
+	/* Extra columns for the result row, empty unless the stats option is on. */
+	public String columns(double instantiationTime, long nOps) {
+		end();
+		if (!enabled())
+			return "";
+		StringBuilder times = new StringBuilder();
+		for (Map.Entry<String, Double> p : phases.entrySet())
+			times.append(times.length() == 0 ? "" : ",").append(p.getKey()).append('=').append(p.getValue());
+		long rss = procStatus("VmRSS");
+		long rssPeak = concurrent ? -1 : procStatus("VmHWM");
+		return ";" + variables + ";" + intervals + ";" + booleans + ";" + constraints + ";" + protoBytes + ";"
+				+ (concurrent ? -1 : heapPeak() / (1 << 20)) + ";" + (rss < 0 ? -1 : rss / 1024) + ";" + (rssPeak < 0 ? -1 : rssPeak / 1024) + ";"
+				+ (nOps > 0 ? instantiationTime * 1e6 / nOps : 0) + ";" + times;
+	}
+}
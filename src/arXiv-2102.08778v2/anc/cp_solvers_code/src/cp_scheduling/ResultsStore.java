@@ -0,0 +1,232 @@
+package cp_scheduling;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Append-only log of solver results with an in-memory index. A record is keyed
+ * by the SHA-256 of the instance file and a canonical solver configuration
+ * ("encoder=...;dataset=...;timeout=...;workers=..."), and holds the result row
+ * values and the best schedule found. Only the record headers are kept in
+ * memory, the schedules are read back from the log on demand.
+ *
+ * The store is off unless the store option is given, and only the ORTools
+ * Advanced encoding (SchedJobShopORTools.scheduleFromFile, so modes 0 and 12
+ * and the runs built on it) reads and fills it; the other encoders always solve.
+ */
+public class ResultsStore {
+
+	static final int MAGIC = 0x4a535253;
+
+	static class Entry {
+		String instanceHash;
+		String config;
+		int timeout;
+		long objective;
+		double bound;
+		double wallTime;
+		boolean optimal;
+		long branches;
+		long conflicts;
+		long[] starts;
+		/* position of the schedule in the log */
+		long offset;
+		int nStarts;
+
+		String row(String filename) {
+			return filename + ";" + (double) objective + ";" + wallTime + ";" + (optimal ? "Yes" : "No") + ";" + branches + ";" + conflicts + ";" + bound;
+		}
+	}
+
+	private static final Map<String, ResultsStore> shared = new HashMap<String, ResultsStore>();
+
+	private final File file;
+	private final Map<String, Entry> index = new HashMap<String, Entry>();
+	private final Map<String, List<Entry>> byInstance = new HashMap<String, List<Entry>>();
+
+	/*
+	 * Store named by the "store" option of Main (on for ./results/results_store.log), null when it is off, the default.
+	 * There is one store per file, shared by the threads of the daemon whose requests name it.
+	 */
+	public static synchronized ResultsStore shared() throws IOException {
+		String path = Main.option("store", "off");
+		if (path.equals("off"))
+			return null;
+		if (path.equals("on"))
+			path = Main.RESULTS_PATH + "results_store.log";
+		path = new File(path).getCanonicalPath();
+		ResultsStore store = shared.get(path);
+		if (store == null)
+			shared.put(path, store = new ResultsStore(path));
+		return store;
+	}
+
+	public ResultsStore(String path) throws IOException {
+		file = new File(path);
+		if (file.isFile())
+			load();
+	}
+
+	/*
+	 * The dataset id is part of the key as it changes how the file is read. Runs
+	 * with an explicit random seed, gap, strengthening, strategy or symmetry
+	 * breaking are only equal to runs with the same ones.
+	 */
+	public static String config(String encoder, int dataset_id, int timeout, int n_workers) {
+		String strengthen = Main.option("strengthen", "off");
+		return "encoder=" + encoder + ";dataset=" + dataset_id + ";timeout=" + timeout + ";workers=" + n_workers
+				+ (Main.seed() >= 0 ? ";seed=" + Main.seed() : "") + (Main.gap() > 0 ? ";gap=" + Main.gap() : "")
+				+ (strengthen.equals("off") ? "" : ";strengthen=" + strengthen) + (SearchStrategy.id() == 0 ? "" : ";strategy=" + SearchStrategy.id())
+				+ (JobSymmetry.enabled() ? ";symmetry=on" : "");
+	}
+
+	public static String hash(String path) throws Exception {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		byte[] buffer = new byte[1 << 16];
+		try (InputStream in = new FileInputStream(path)) {
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				digest.update(buffer, 0, n);
+		}
+		return hex(digest.digest());
+	}
+
+	/* same hash of content held in memory */
+	public static String hash(byte[] content) throws Exception {
+		return hex(MessageDigest.getInstance("SHA-256").digest(content));
+	}
+
+	private static String hex(byte[] digest) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest)
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+	public synchronized Entry get(String instanceHash, String config) {
+		return index.get(instanceHash + "|" + config);
+	}
+
+	/*
+	 * Best stored run of the instance with the same encoder and workers but a
+	 * smaller timeout, to warm start a run with a larger budget.
+	 */
+	public synchronized Entry warmStart(String instanceHash, String encoder, int dataset_id, int n_workers, int timeout) {
+		Entry best = null;
+		List<Entry> entries = byInstance.get(instanceHash);
+		if (entries == null)
+			return null;
+		for (Entry e : entries)
+			if (e.timeout < timeout && e.nStarts > 0 && e.config.equals(config(encoder, dataset_id, e.timeout, n_workers))
+					&& (best == null || e.objective < best.objective))
+				best = e;
+		return best;
+	}
+
+	public synchronized long[] schedule(Entry e) throws IOException {
+		if (e.starts == null && e.nStarts > 0) {
+			long[] starts = new long[e.nStarts];
+			try (FileInputStream fin = new FileInputStream(file)) {
+				fin.getChannel().position(e.offset);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(fin));
+				for (int o = 0; o < starts.length; o++)
+					starts[o] = in.readInt();
+			}
+			return starts;
+		}
+		return e.starts;
+	}
+
+	public synchronized void put(Entry e) throws IOException {
+		long offset = file.length();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+			out.writeInt(MAGIC);
+			out.writeUTF(e.instanceHash);
+			out.writeUTF(e.config);
+			out.writeInt(e.timeout);
+			out.writeLong(e.objective);
+			out.writeDouble(e.bound);
+			out.writeDouble(e.wallTime);
+			out.writeBoolean(e.optimal);
+			out.writeLong(e.branches);
+			out.writeLong(e.conflicts);
+			e.nStarts = e.starts == null ? 0 : e.starts.length;
+			out.writeInt(e.nStarts);
+			e.offset = offset + out.size();
+			for (int o = 0; o < e.nStarts; o++)
+				out.writeInt((int) e.starts[o]);
+		}
+		// the index keeps the header only, schedule(e) reads the starts back
+		e.starts = null;
+		add(e);
+	}
+
+	private void add(Entry e) {
+		index.put(e.instanceHash + "|" + e.config, e);
+		List<Entry> entries = byInstance.get(e.instanceHash);
+		if (entries == null)
+			byInstance.put(e.instanceHash, entries = new ArrayList<Entry>());
+		entries.add(e);
+	}
+
+	private void load() throws IOException {
+		long position = 0;
+		byte[] buffer = new byte[1 << 16];
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			while (true) {
+				Entry e = new Entry();
+				try {
+					if (in.readInt() != MAGIC)
+						throw new IOException("Corrupted results store: " + file);
+					e.instanceHash = in.readUTF();
+					e.config = in.readUTF();
+					e.timeout = in.readInt();
+					e.objective = in.readLong();
+					e.bound = in.readDouble();
+					e.wallTime = in.readDouble();
+					e.optimal = in.readBoolean();
+					e.branches = in.readLong();
+					e.conflicts = in.readLong();
+					e.nStarts = in.readInt();
+					// read rather than skip so that a truncated schedule raises EOFException
+					for (long left = 4L * e.nStarts; left > 0; left -= buffer.length)
+						in.readFully(buffer, 0, (int) Math.min(left, buffer.length));
+				} catch (EOFException end) {
+					break;
+				}
+				// fixed part plus the two modified UTF-8 strings with their length prefix
+				e.offset = position + 4 + 2 + utfLength(e.instanceHash) + 2 + utfLength(e.config) + 4 + 8 + 8 + 8 + 1 + 8 + 8 + 4;
+				position = e.offset + 4L * e.nStarts;
+				add(e);
+			}
+		}
+		// drop a record truncated by a crash while appending, so new records stay readable
+		if (file.length() > position)
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(position);
+			}
+	}
+
+	private static int utfLength(String s) {
+		int n = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			n += (c >= 1 && c <= 0x7f) ? 1 : (c <= 0x7ff ? 2 : 3);
+		}
+		return n;
+	}
+}
@@ -0,0 +1,346 @@
+package cp_scheduling;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.function.ToDoubleFunction;
+
+import ilog.cp.IloCP;
+
+/*
+ * Scaling curves of the encoders. Instances of growing size are generated for
+ * every family of bench_family over the grid bench_jobs x bench_machines:
+ * "taillard" instances where every job visits every machine once in random
+ * order with durations in 1..99, and the "long" and "short" known-optimum
+ * families of KnownOptimaGenerator with as many operations. Each encoder of
+ * bench_encoders solves them with the gap option and the time ceiling as time
+ * limit (the timeout when it is lower), and a run records instantiation time,
+ * time to the gap, wall time of the whole run, peak heap, peak resident set
+ * and model size. Runs are made without the results store and with model
+ * statistics, options set for the benchmark thread only. An encoder stops
+ * being run on a family at its breakpoint, the first size where instantiation
+ * and solve together exceed the time ceiling, the memory ceiling is exceeded
+ * or no solution is found. Log-log least squares fits then give the growth
+ * exponent of the instantiation time and of the heap, and the size at which
+ * the fits of the run time and of the heap cross their ceilings.
+ *
+ * Output: Scaling_<folder>.csv with one row per run, and Scaling_<folder>.txt,
+ * a short report with rounded values meant to be diffed between versions.
+ */
+public class ScalingBenchmark {
+
+	static final String ENCODERS = "ORT_Adv,ORT_SemiNaive,ORT_Naive,CPO_Adv,CPO_SemiNaive,CPO_Naive";
+	static final String COLUMNS = "family;encoder;jobs;machines;operations;instantiation_s;solve_s;run_s;gap;heap_peak_mb;rss_peak_mb;model_size;status";
+
+	static class Point {
+		String family;
+		String encoder;
+		int jobs;
+		int machines;
+		int nOps;
+		double instantiation = Double.NaN;
+		double solve = Double.NaN;
+		/* wall time of instantiation and solve */
+		double run = Double.NaN;
+		double gap = Double.NaN;
+		double heapMb = Double.NaN;
+		double rssMb = Double.NaN;
+		double modelSize = Double.NaN;
+		/* ok, gap (not reached), time, memory, oom, nosolution or error */
+		String status;
+
+		boolean measured() {
+			return status.equals("ok") || status.equals("gap");
+		}
+
+		String row() {
+			return family + ";" + encoder + ";" + jobs + ";" + machines + ";" + nOps + ";" + instantiation + ";" + solve + ";" + run + ";" + gap + ";"
+					+ heapMb + ";" + rssMb + ";" + modelSize + ";" + status;
+		}
+	}
+
+	private final double timeCeiling;
+	private final double heapCeiling;
+	private final double rssCeiling;
+	private final double gapTarget;
+
+	ScalingBenchmark(double timeCeiling, double heapCeiling, double rssCeiling, double gapTarget) {
+		this.timeCeiling = timeCeiling;
+		this.heapCeiling = heapCeiling;
+		this.rssCeiling = rssCeiling;
+		this.gapTarget = gapTarget;
+	}
+
+	public static void run(String foldername, int timeout, int n_workers) throws Exception {
+		// every run is measured: no stored results, model statistics on
+		Properties measured = new Properties();
+		measured.setProperty("store", "off");
+		measured.setProperty("stats", "true");
+		Main.withOptions(measured, () -> {
+			measure(foldername, timeout, n_workers);
+			return null;
+		});
+	}
+
+	private static void measure(String foldername, int timeout, int n_workers) throws Exception {
+		ScalingBenchmark bench = new ScalingBenchmark(Double.parseDouble(Main.option("bench_time_s", Integer.toString(timeout))),
+				Double.parseDouble(Main.option("bench_heap_mb", Long.toString((Runtime.getRuntime().maxMemory() / 10 * 8) >> 20))),
+				Double.parseDouble(Main.option("bench_rss_mb", "0")), Main.gap());
+		int[] jobs = ints(Main.option("bench_jobs", "10,30,100,300,1000"));
+		int[] machines = ints(Main.option("bench_machines", "10,100"));
+		String[] families = Main.option("bench_family", "taillard,long,short").split(",");
+		String[] encoders = Main.option("bench_encoders", ENCODERS).split(",");
+		long seed = Long.parseLong(Main.option("bench_seed", "1"));
+
+		// sizes in increasing number of operations
+		List<int[]> sizes = new ArrayList<int[]>();
+		for (int j : jobs)
+			for (int m : machines)
+				sizes.add(new int[] { j, m });
+		sizes.sort((a, b) -> a[0] * a[1] != b[0] * b[1] ? Long.compare((long) a[0] * a[1], (long) b[0] * b[1]) : Integer.compare(a[1], b[1]));
+
+		String instanceDir = Main.RESULTS_PATH + "scaling/instances/";
+		new File(instanceDir).mkdirs();
+		String outFile = "Scaling_" + foldername;
+		System.out.println("Scaling benchmark of " + String.join(",", encoders) + " on " + String.join(",", families) + "\noutput= " + outFile
+				+ ".csv/.txt\ntimeout= " + timeout + "\nworkers= " + n_workers);
+		PrintWriter csv = new PrintWriter(Main.RESULTS_PATH + outFile + ".csv", "UTF-8");
+		csv.println(COLUMNS);
+		List<Point> points = new ArrayList<Point>();
+		for (String family : families)
+			for (String encoder : encoders) {
+				// the naive encoders only read the Taillard layout
+				if (!family.equals("taillard") && !encoder.endsWith("_Adv"))
+					continue;
+				for (int[] size : sizes) {
+					int dataset_id = family.equals("taillard") ? 0 : 1;
+					String filename = instance(instanceDir, family, size[0], size[1], seed);
+					Point p = bench.measure(family, encoder, dataset_id, instanceDir, filename, size[0], size[1], timeout, n_workers);
+					points.add(p);
+					csv.println(p.row());
+					csv.flush();
+					if (!p.measured()) {
+						System.out.println("Breakpoint of " + encoder + " on " + family + " at " + p.nOps + " operations: " + p.status);
+						break;
+					}
+				}
+			}
+		csv.close();
+		bench.report(points, Main.RESULTS_PATH + outFile + ".txt", timeout, n_workers);
+	}
+
+	static int[] ints(String list) {
+		String[] values = list.split(",");
+		int[] ints = new int[values.length];
+		for (int k = 0; k < values.length; k++)
+			ints[k] = Integer.parseInt(values[k].trim());
+		return ints;
+	}
+
+	/* Generates the instance once and returns its file name. */
+	static String instance(String dir, String family, int nJobs, int nMachines, long seed) throws Exception {
+		if (family.equals("taillard")) {
+			String name = "tai_j" + nJobs + "_m" + nMachines + "_s" + seed + ".data";
+			if (!new File(dir + name).isFile())
+				writeTaillard(dir + name, nJobs, nMachines, seed);
+			return name;
+		}
+		KnownOptimaGenerator generator = new KnownOptimaGenerator(family, nMachines, nJobs * nMachines, INFO.KNOWN_OPTIMUM,
+				KnownOptimaGenerator.mix(seed, ((long) nJobs << 32) ^ nMachines), Double.parseDouble(Main.option("gen_short_mean", "2.5")));
+		String name = generator.name((int) seed) + ".data";
+		if (!new File(dir + name).isFile())
+			generator.generate().writeText(dir + name);
+		return name;
+	}
+
+	/* every job visits every machine once in random order, durations uniform in 1..99 */
+	static void writeTaillard(String path, int nJobs, int nMachines, long seed) throws Exception {
+		SplittableRandom random = new SplittableRandom(KnownOptimaGenerator.mix(seed, ((long) nJobs << 32) ^ nMachines));
+		int[] route = new int[nMachines];
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), "US-ASCII"), 1 << 16)) {
+			out.write(nJobs + " " + nMachines + "\n");
+			for (int i = 0; i < nJobs; i++) {
+				for (int m = 0; m < nMachines; m++)
+					route[m] = m;
+				for (int m = nMachines - 1; m > 0; m--) {
+					int k = random.nextInt(m + 1);
+					int r = route[m];
+					route[m] = route[k];
+					route[k] = r;
+				}
+				for (int m = 0; m < nMachines; m++)
+					out.write(route[m] + " " + (1 + random.nextInt(99)) + " ");
+				out.write("\n");
+			}
+		}
+	}
+
+	static String solve(String encoder, int dataset_id, String folder, String filename, int timeout, int n_workers) throws Exception {
+		switch (encoder) {
+		case "ORT_Adv":
+			return SchedJobShopORTools.scheduleFromFile(dataset_id, folder, filename, timeout, false, n_workers);
+		case "ORT_SemiNaive":
+			return ORToolsSemiNaive.scheduleFromFile(dataset_id, folder, filename, timeout, false);
+		case "ORT_Naive":
+			return ORToolsNaive.scheduleFromFile(dataset_id, folder, filename, timeout, false);
+		case "CPO_Adv":
+			return SchedJobShop.scheduleFromFile(dataset_id, folder, filename, timeout, IloCP.ParameterValues.Restart, 100, 1.15, n_workers);
+		case "CPO_SemiNaive":
+			return SemiNaive.scheduleFromFile(folder, filename, timeout);
+		case "CPO_Naive":
+			return NaiveJobShop.scheduleFromFile(folder, filename, timeout);
+		default:
+			throw new IllegalArgumentException("Unknown encoder " + encoder + ", expected one of " + ENCODERS);
+		}
+	}
+
+	/* column of the objective bound in the result row of an encoder, -1 if it has none */
+	static int boundColumn(String encoder) {
+		if (encoder.equals("ORT_Adv"))
+			return 6;
+		return encoder.startsWith("CPO_") ? 3 : -1;
+	}
+
+	Point measure(String family, String encoder, int dataset_id, String folder, String filename, int nJobs, int nMachines, int timeout, int n_workers) throws Exception {
+		Point p = new Point();
+		p.family = family;
+		p.encoder = encoder;
+		p.jobs = nJobs;
+		p.machines = nMachines;
+		JobShopInstance instance = JobShopInstance.read(dataset_id, folder, filename);
+		p.nOps = instance.nOps;
+		long reference = family.equals("taillard") ? instance.lowerBound() : INFO.KNOWN_OPTIMUM;
+		instance = null;
+
+		System.gc();
+		Profiler.resetRssPeak();
+		// the ceiling bounds the whole run, the solver gets no more than it
+		int limit = (int) Math.max(1, Math.min(timeout, Math.floor(timeCeiling)));
+		long start = System.nanoTime();
+		String row;
+		try {
+			row = solve(encoder, dataset_id, folder, filename, limit, n_workers);
+		} catch (OutOfMemoryError e) {
+			p.status = "oom";
+			return p;
+		}
+		p.run = (System.nanoTime() - start) / 1e9;
+		// the last columns are the ones of Profiler.COLUMNS
+		String[] cols = row.split(";", -1);
+		int nStats = Profiler.COLUMNS.split(";").length;
+		if (cols.length < 3 + nStats) {
+			p.status = "error";
+			return p;
+		}
+		int s = cols.length - nStats;
+		p.modelSize = encoder.startsWith("ORT_") ? number(cols[s + 4]) : number(cols[s + 3]);
+		p.heapMb = number(cols[s + 5]);
+		p.rssMb = number(cols[s + 7]);
+		p.instantiation = number(cols[s + 8]) * p.nOps / 1e6;
+		p.solve = number(cols[2]);
+		double objective = number(cols[1]);
+		int b = boundColumn(encoder);
+		if (b > 0 && b < s && family.equals("taillard"))
+			reference = Math.max(reference, (long) Math.ceil(number(cols[b])));
+		if (objective > 0)
+			p.gap = (objective - reference) / objective;
+
+		if (p.run > timeCeiling)
+			p.status = "time";
+		else if (p.heapMb > heapCeiling || (rssCeiling > 0 && p.rssMb > rssCeiling))
+			p.status = "memory";
+		else if (Double.isNaN(p.gap))
+			p.status = "nosolution";
+		else
+			p.status = p.gap > gapTarget + 1e-9 ? "gap" : "ok";
+		return p;
+	}
+
+	static double number(String s) {
+		try {
+			return Double.parseDouble(s);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/* least squares fit of ln y = ln a + b ln n, {a, b, r2}, null with less than two sizes */
+	static double[] powerFit(List<Point> points, ToDoubleFunction<Point> measure) {
+		double sx = 0, sy = 0, sxx = 0, sxy = 0, syy = 0;
+		int n = 0;
+		for (Point p : points) {
+			double y = measure.applyAsDouble(p);
+			if (!p.measured() || !(y > 0))
+				continue;
+			double x = Math.log(p.nOps);
+			double ly = Math.log(y);
+			sx += x;
+			sy += ly;
+			sxx += x * x;
+			sxy += x * ly;
+			syy += ly * ly;
+			n++;
+		}
+		double varX = n * sxx - sx * sx;
+		if (n < 2 || varX <= 1e-12)
+			return null;
+		double b = (n * sxy - sx * sy) / varX;
+		double lnA = (sy - b * sx) / n;
+		double varY = n * syy - sy * sy;
+		double r2 = varY <= 1e-12 ? 1 : (n * sxy - sx * sy) * (n * sxy - sx * sy) / (varX * varY);
+		return new double[] { Math.exp(lnA), b, r2 };
+	}
+
+	/* operations at which a * n^b reaches the ceiling */
+	static double crossing(double[] fit, double ceiling) {
+		if (fit == null || fit[1] <= 0)
+			return Double.NaN;
+		return Math.pow(ceiling / fit[0], 1 / fit[1]);
+	}
+
+	static String g(double v) {
+		return Double.isNaN(v) ? "-" : String.format(Locale.ROOT, "%.3g", v);
+	}
+
+	void report(List<Point> points, String path, int timeout, int n_workers) throws Exception {
+		try (PrintWriter out = new PrintWriter(path, "UTF-8")) {
+			out.println("# scaling report: timeout " + timeout + "s, " + n_workers + " workers, gap " + gapTarget + ", ceilings run time " + g(timeCeiling)
+					+ "s heap " + g(heapCeiling) + "MB rss " + (rssCeiling > 0 ? g(rssCeiling) + "MB" : "-"));
+			out.println("# family encoder operations instantiation_s solve_s run_s gap heap_mb rss_mb model_size status");
+			for (Point p : points)
+				out.println(p.family + " " + p.encoder + " " + p.nOps + " " + g(p.instantiation) + " " + g(p.solve) + " " + g(p.run) + " " + g(p.gap) + " "
+						+ g(p.heapMb) + " " + g(p.rssMb) + " " + g(p.modelSize) + " " + p.status);
+			out.println("# family encoder instantiation_exponent r2 heap_exponent r2 breakpoint predicted_time_break predicted_heap_break");
+			List<String> done = new ArrayList<String>();
+			for (Point first : points) {
+				String key = first.family + " " + first.encoder;
+				if (done.contains(key))
+					continue;
+				done.add(key);
+				List<Point> curve = new ArrayList<Point>();
+				String breakpoint = "-";
+				for (Point p : points)
+					if (p.family.equals(first.family) && p.encoder.equals(first.encoder)) {
+						curve.add(p);
+						if (!p.measured())
+							breakpoint = p.nOps + ":" + p.status;
+					}
+				double[] time = powerFit(curve, p -> p.instantiation);
+				double[] run = powerFit(curve, p -> p.run);
+				double[] heap = powerFit(curve, p -> p.heapMb);
+				out.println(key + " " + g(time == null ? Double.NaN : time[1]) + " " + g(time == null ? Double.NaN : time[2]) + " "
+						+ g(heap == null ? Double.NaN : heap[1]) + " " + g(heap == null ? Double.NaN : heap[2]) + " " + breakpoint + " "
+						+ g(crossing(run, timeCeiling)) + " " + g(crossing(heap, heapCeiling)));
+			}
+		}
+		System.out.println("Scaling report written to " + path);
+	}
+}
@@ -35,23 +35,67 @@ import ilog.cp.IloCP.ParameterValues;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 public class SchedJobShop {
 
  static class DataReader {
 
+     /* numbers of the files read, by JobShopInstance.cacheKey, once JobShopInstance.enableCache is called */
+     private static volatile Map<String, int[]> cache;
+
      private StreamTokenizer st;
+     private int[] numbers;
+     private int next;
+     private int last;
 
      public DataReader(String filename) throws IOException {
+         Map<String, int[]> cache = DataReader.cache;
+         if (cache != null) {
+             String key = JobShopInstance.cacheKey(filename);
+             numbers = cache.get(key);
+             if (numbers == null) {
+                 numbers = numbers(filename);
+                 cache.put(key, numbers);
+             }
+             return;
+         }
          FileInputStream fstream = new FileInputStream(filename);
          Reader r = new BufferedReader(new InputStreamReader(fstream));
          st = new StreamTokenizer(r);
      }
 
+     static void enableCache(int capacity) {
+         if (cache == null)
+             cache = JobShopInstance.lru(capacity);
+     }
+
+     /* every value next() returns until the end of the file */
+     private static int[] numbers(String filename) throws IOException {
+         try (Reader r = new BufferedReader(new InputStreamReader(new FileInputStream(filename)))) {
+             StreamTokenizer st = new StreamTokenizer(r);
+             int[] numbers = new int[1024];
+             int n = 0;
+             while (st.nextToken() != StreamTokenizer.TT_EOF) {
+                 if (n == numbers.length)
+                     numbers = Arrays.copyOf(numbers, 2 * n);
+                 numbers[n++] = (int) st.nval;
+             }
+             return Arrays.copyOf(numbers, n);
+         }
+     }
+
      public int next() throws IOException {
-         st.nextToken();
-         return (int) st.nval;
+         if (numbers == null) {
+             st.nextToken();
+             return (int) st.nval;
+         }
+         // past the end the tokenizer keeps returning the last number
+         if (next < numbers.length)
+             last = numbers[next++];
+         return last;
      }
  }
 
@@ -72,6 +116,10 @@ public class SchedJobShop {
 public static void scheduleFromDirectory(int dataset_id,String foldername, int timeout,int n_workers,int startlimit,double factor) throws Exception {
 		ParameterValues searchStrategy = IloCP.ParameterValues.Restart;
 		String outFile = "CPO_Adv_"+INFO.dataset_folder[dataset_id].substring(15, 20)+"_" + foldername + "_"+timeout+ "_"+startlimit+ "_"+factor+"_"+n_workers+"_v1210.csv";
+		if (SearchStrategy.id() != 0)
+			outFile = outFile.substring(0, outFile.length() - 4) + "_s" + SearchStrategy.id() + ".csv";
+		if (JobSymmetry.enabled())
+			outFile = outFile.substring(0, outFile.length() - 4) + "_sym.csv";
 		String inFile = INFO.dataset_folder[dataset_id]+ foldername + "/";
 		IloCP cp = new IloCP();
 		System.out.println("++Using Advanced CPOptimizer Solver "+cp.getVersion()+" to solve:\ninput= " + inFile + "\noutput= " + outFile
@@ -89,6 +137,7 @@ public static void scheduleFromDirectory(int dataset_id,String foldername, int t
 		
 		
 		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		Telemetry telemetry = Telemetry.open(outFile);
 		File[] files = new File(inFile).listFiles();
 		// If this pathname does not denote a directory, then listFiles() returns null.
 		int i = 0;
@@ -96,15 +145,22 @@ public static void scheduleFromDirectory(int dataset_id,String foldername, int t
 			if (file.isFile()) {
 				i++;
 				System.out.println("Solving instance"+file.getName()+" "+i+"/"+files.length);
-				writer.println(scheduleFromFile(dataset_id,inFile, file.getName(), timeout,searchStrategy, startlimit, factor,n_workers));
+				Telemetry.Run run = telemetry == null ? null : telemetry.begin(file.getName(), "CPO_Adv", Telemetry.target(dataset_id));
+				writer.println(scheduleFromFile(dataset_id,inFile, file.getName(), timeout,searchStrategy, startlimit, factor,n_workers,run));
 			}
 		// writer.println(filename+";"+solver.objectiveValue()+";"+solver.wallTime()+";"+optimal);
 		writer.close();
+		if (telemetry != null)
+			telemetry.close();
 	}
 
  
  
 public static String scheduleFromFile(int dataset_id,String folder, String filename, int timeout,ParameterValues searchStrategy,int startlimit,double factor,int n_workers) throws Exception {
+	return scheduleFromFile(dataset_id, folder, filename, timeout, searchStrategy, startlimit, factor, n_workers, null);
+}
+
+public static String scheduleFromFile(int dataset_id,String folder, String filename, int timeout,ParameterValues searchStrategy,int startlimit,double factor,int n_workers,Telemetry.Run run) throws Exception {
 	
      //String filename = "../../../examples/data/jobshop_default.data";
      int nbJobs, nbMachines;
@@ -112,11 +168,15 @@ public static String scheduleFromFile(int dataset_id,String folder, String filen
     
 
      IloCP cp = new IloCP();
+     Profiler profiler = new Profiler("CPO_Adv", filename);
+     profiler.phase("variables");
+     int nOps = 0;
      DataReader data = new DataReader(folder +filename);
      try {
          nbJobs = data.next();
          nbMachines = data.next();
          List<IloIntExpr> ends = new ArrayList<IloIntExpr>();
+         List<IloIntervalVar> operations = new ArrayList<IloIntervalVar>();
          IntervalVarList[] machines = new IntervalVarList[nbMachines];
          
          for (int j = 0; j < nbMachines; j++)
@@ -135,6 +195,8 @@ public static String scheduleFromFile(int dataset_id,String folder, String filen
                  if (m == -1)
  					break;
                  IloIntervalVar ti = cp.intervalVar(d);
+                 nOps++;
+                 operations.add(ti);
                  machines[m].add(ti);
                  if (j > 0) {
                      cp.add(cp.endBeforeStart(prec, ti));
@@ -144,14 +206,32 @@ public static String scheduleFromFile(int dataset_id,String folder, String filen
              ends.add(cp.endOf(prec));
          }
 
-         for (int j = 0; j < nbMachines; j++)
-             cp.add(cp.noOverlap(machines[j].toArray()));
+         profiler.phase("noOverlap");
+         int strategy = SearchStrategy.id();
+         if (strategy == 0)
+             for (int j = 0; j < nbMachines; j++)
+                 cp.add(cp.noOverlap(machines[j].toArray()));
+         else {
+             // the search phases of the strategy are on sequence variables, see SearchStrategy
+             IloIntervalSequenceVar[] sequences = new IloIntervalSequenceVar[nbMachines];
+             for (int j = 0; j < nbMachines; j++) {
+                 sequences[j] = cp.intervalSequenceVar(machines[j].toArray());
+                 cp.add(cp.noOverlap(sequences[j]));
+             }
+             cp.setSearchPhases(SearchStrategy.phases(strategy, cp, sequences, JobShopInstance.read(dataset_id, folder, filename)));
+         }
+         if (JobSymmetry.enabled())
+             System.out.println("Symmetry breaking: " + JobSymmetry.detect(JobShopInstance.read(dataset_id, folder, filename)).apply(cp, operations));
+         profiler.end();
+         double instantiation_time = profiler.seconds("variables") + profiler.seconds("noOverlap");
          	
        
          cp.setParameter(IloCP.IntParam.Workers, n_workers);
          cp.setParameter(IloCP.DoubleParam.TimeLimit, (double)timeout);
          cp.setParameter(IloCP.IntParam.LogVerbosity, IloCP.ParameterValues.Terse);
-         cp.setParameter(IloCP.DoubleParam.RelativeOptimalityTolerance, 0);
+         cp.setParameter(IloCP.DoubleParam.RelativeOptimalityTolerance, Main.gap());
+         if (Main.seed() >= 0)
+             cp.setParameter(IloCP.IntParam.RandomSeed, Main.seed());
          //cp.setParameter(IloCP.DoubleParam.RestartGrowthFactor, factor);
          //cp.setParameter(IloCP.IntParam.SearchType, searchStrategy);
          //cp.setParameter(IloCP.IntParam.RestartFailLimit, startlimit);
@@ -159,16 +239,59 @@ public static String scheduleFromFile(int dataset_id,String folder, String filen
          IloObjective objective = cp.minimize(cp.max(arrayFromList(ends)));
          cp.add(objective);
 
-         if (cp.solve()) {
+         profiler.phase("solve");
+         IloCP.Callback listener = run == null ? null : telemetry(run);
+         if (listener != null)
+             cp.addCallback(listener);
+         boolean solved = cp.solve();
+         if (listener != null) {
+             cp.removeCallback(listener);
+             run.end(solved ? cp.getObjValue() : Double.NaN, solved ? cp.getObjBound() : 0, cp.getInfo(IloCP.DoubleInfo.TotalTime));
+         }
+         profiler.end();
+         profiler.stats(cp);
+         String stats = profiler.columns(instantiation_time, nOps);
+         if (solved && ScheduleVerifier.enabled())
+             ScheduleVerifier.audit(dataset_id, folder, filename, "CPO_Adv", schedule(cp, operations, new long[nOps]), ends(cp, operations, new long[nOps]), cp.getObjValue());
+         if (solved) {
              System.out.println(filename+";"+cp.getObjValue()+";"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getObjBound()+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches));
-             return(filename+";"+cp.getObjValue()+";"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getObjBound()+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches));
+             return(filename+";"+cp.getObjValue()+";"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getObjBound()+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches)+stats);
          } else {
              System.out.println("No solution found.");
-             return(filename+";NoSolution;"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches));
+             return(filename+";NoSolution;"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches)+stats);
          }
      } catch (IloException e) {
          System.err.println("Error: " + e);
          return (filename+";ERROR;"+e);
      }
  }
+
+/*
+ * Listener pushing every solution cp.solve() finds to the telemetry, so the
+ * search is the same with and without telemetry. CP Optimizer has no
+ * deterministic time, fails are reported as conflicts.
+ */
+static IloCP.Callback telemetry(Telemetry.Run run) {
+     return new IloCP.Callback() {
+         public void invoke(IloCP cp, IloCP.Callback.Reason reason) throws IloException {
+             if (reason == IloCP.Callback.Reason.Solution)
+                 run.solution(cp.getObjValue(), cp.getObjBound(), cp.getInfo(IloCP.DoubleInfo.TotalTime), Double.NaN,
+                         cp.getInfo(IloCP.IntInfo.NumberOfFails), cp.getInfo(IloCP.IntInfo.NumberOfBranches), "cpo");
+         }
+     };
+}
+
+/* start times of operations in the current solution, written to schedule */
+static long[] schedule(IloCP cp, List<IloIntervalVar> operations, long[] schedule) throws IloException {
+     for (int o = 0; o < schedule.length; o++)
+         schedule[o] = cp.getStart(operations.get(o));
+     return schedule;
+}
+
+/* end times of the operations in the last solution, as the solver reports them */
+static long[] ends(IloCP cp, List<IloIntervalVar> operations, long[] ends) throws IloException {
+     for (int o = 0; o < ends.length; o++)
+         ends[o] = cp.getEnd(operations.get(o));
+     return ends;
+}
 }
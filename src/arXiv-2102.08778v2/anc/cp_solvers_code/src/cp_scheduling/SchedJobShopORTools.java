@@ -2,15 +2,26 @@ package cp_scheduling;
 
 import java.io.PrintWriter;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
+import com.google.ortools.sat.ConstraintProto;
 import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpModelProto;
 import com.google.ortools.sat.CpSolver;
+import com.google.ortools.sat.CpSolverResponse;
 import com.google.ortools.sat.CpSolverStatus;
 import com.google.ortools.sat.IntVar;
+import com.google.ortools.sat.IntervalConstraintProto;
 import com.google.ortools.sat.IntervalVar;
+import com.google.ortools.sat.LinearConstraintProto;
+import com.google.ortools.sat.PartialVariableAssignment;
 
 import cp_scheduling.SchedJobShop.DataReader;
 import cp_scheduling.SchedJobShop.IntervalVarList;
@@ -31,6 +42,10 @@ public class SchedJobShopORTools {
 	public static void scheduleFromDirectory(int dataset_id, String foldername, int timeout,int n_workers,boolean justInstantiation) throws Exception {
 		
 		String outFile = "ORT_Adv_"+INFO.dataset_folder[dataset_id].substring(15, 20)+"_" + foldername + "_"+timeout+"_"+n_workers+"_v777810.csv";
+		if (SearchStrategy.id() != 0)
+			outFile = outFile.substring(0, outFile.length() - 4) + "_s" + SearchStrategy.id() + ".csv";
+		if (JobSymmetry.enabled())
+			outFile = outFile.substring(0, outFile.length() - 4) + "_sym.csv";
 		String inFile = INFO.dataset_folder[dataset_id]+ foldername + "/";
 		
 		if (justInstantiation) {
@@ -46,40 +61,282 @@ public class SchedJobShopORTools {
 
         // Create a new file output stream.
         
-        PrintStream fileOut = new PrintStream(Main.RESULTS_PATH + outFile.substring(0,outFile.length()-3)+"txt");
+        PrintStream fileOut = new PrintStream(new FileOutputStream(Main.RESULTS_PATH + outFile.substring(0,outFile.length()-3)+"txt", Checkpoint.enabled()));
 
         // Redirect standard out to file.
         System.setOut(fileOut);
 		}
 		
-		
-		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		// with resume=true the rows written by an interrupted run of the same sweep are kept and their instances skipped
+		boolean resume = Checkpoint.enabled();
+		Set<String> completed = resume ? Checkpoint.completed(Main.RESULTS_PATH + outFile) : Collections.<String>emptySet();
+		String checkpoints = Checkpoint.directory(outFile);
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(Main.RESULTS_PATH + outFile, resume), "UTF-8"));
+		Telemetry telemetry = justInstantiation ? null : Telemetry.open(outFile);
 		File[] files = new File(inFile).listFiles();
 		// If this pathname does not denote a directory, then listFiles() returns null.
 		int i = 0;
 		for (File file : files)
 			if (file.isFile()){
 				i++;
+				if (completed.contains(file.getName())) {
+					System.out.println("Skipping instance"+file.getName()+" "+i+"/"+files.length+", already solved");
+					continue;
+				}
 				System.out.println("Solving instance"+file.getName()+" "+i+"/"+files.length);
-				writer.println(scheduleFromFile(dataset_id, inFile, file.getName(), timeout,justInstantiation,n_workers));
+				Checkpoint checkpoint = justInstantiation || !resume ? null : Checkpoint.open(checkpoints, file.getName());
+				Telemetry.Run run = telemetry == null ? null : telemetry.begin(file.getName(), "ORT_Adv", Telemetry.target(dataset_id));
+				writer.println(scheduleFromFile(dataset_id, inFile, file.getName(), timeout,justInstantiation,n_workers,checkpoint,run));
+				writer.flush();
+				if (checkpoint != null)
+					checkpoint.delete();
 			}
 		// writer.println(filename+";"+solver.objectiveValue()+";"+solver.wallTime()+";"+optimal);
 		writer.close();
+		if (telemetry != null)
+			telemetry.close();
 	}
 
 	public static String scheduleFromFile(int dataset_id, String folder, String filename, int timeout,boolean justInstantiation,int n_workers) throws Exception {
+		return scheduleFromFile(dataset_id, folder, filename, timeout, justInstantiation, n_workers, null);
+	}
+
+	/*
+	 * When checkpoint is not null improving solutions are persisted to it, and if
+	 * it holds the solution of an interrupted run that solution is used as a hint
+	 * and only the remaining part of the timeout is given to the solver.
+	 */
+	public static String scheduleFromFile(int dataset_id, String folder, String filename, int timeout,boolean justInstantiation,int n_workers,Checkpoint checkpoint) throws Exception {
+		return scheduleFromFile(dataset_id, folder, filename, timeout, justInstantiation, n_workers, checkpoint, null);
+	}
+
+	/* run, when not null, receives the anytime telemetry of the solve */
+	public static String scheduleFromFile(int dataset_id, String folder, String filename, int timeout,boolean justInstantiation,int n_workers,Checkpoint checkpoint,Telemetry.Run run) throws Exception {
+		return scheduleFromFile(dataset_id, folder, filename, timeout, justInstantiation, n_workers, checkpoint, run, null);
+	}
+
+	/* parsed, when not null, is the instance already read by the caller, the file is then not parsed again */
+	public static String scheduleFromFile(int dataset_id, String folder, String filename, int timeout,boolean justInstantiation,int n_workers,Checkpoint checkpoint,Telemetry.Run run,JobShopInstance parsed) throws Exception {
 		long startTime = System.currentTimeMillis();
 		CpModel model = new CpModel();
 		CpSolver solver = new CpSolver();
-		// Three weeks.
-		int horizon = 0;
 		if (filename == null)
 			filename = Main.DATA_PATH + "jobshop_abz7.data";
 
-		int nJobs, nMachines;
-		int boundary;
 		System.out.println("Solving instance: " + filename);
 
+		// identical runs are answered from the results store, smaller budgets of the same run can warm start this one
+		ResultsStore store = justInstantiation ? null : ResultsStore.shared();
+		String instanceHash = null;
+		String config = ResultsStore.config("ORT_Adv", dataset_id, timeout, n_workers);
+		ResultsStore.Entry warmStart = null;
+		if (store != null) {
+			instanceHash = ResultsStore.hash(folder + filename);
+			ResultsStore.Entry cached = store.get(instanceHash, config);
+			if (cached != null) {
+				System.out.println("Cached result for instance: " + filename);
+				return cached.row(filename);
+			}
+			if (Main.option("warmstart", "false").equals("true"))
+				warmStart = store.warmStart(instanceHash, "ORT_Adv", dataset_id, n_workers, timeout);
+		}
+
+		Profiler profiler = new Profiler("ORT_Adv", filename);
+		int[] startVars = instantiate(model, dataset_id, folder, filename, parsed, profiler);
+		Strengthening strengthening = Strengthening.fromOptions();
+		int strategy = SearchStrategy.id();
+		JobShopInstance instance = parsed;
+		if (instance == null && (strengthening != null || strategy != 0 || JobSymmetry.enabled()))
+			instance = JobShopInstance.read(dataset_id, folder, filename);
+		if (strengthening != null) {
+			profiler.phase("strengthening");
+			System.out.println("Strengthening: " + strengthening.apply(model, instance, startVars));
+		}
+		if (JobSymmetry.enabled()) {
+			profiler.phase("symmetry");
+			System.out.println("Symmetry breaking: " + JobSymmetry.detect(instance).apply(model, startVars));
+		}
+		System.out.println("Instantiation finished, starting solving...");
+		// Creates a solver and solves the model.
+		
+		double timeOffset = 0;
+		if (checkpoint != null && checkpoint.hasSolution() && checkpoint.starts.length == startVars.length) {
+			addHints(model, startVars, checkpoint.starts);
+			timeOffset = checkpoint.elapsed;
+			System.out.println("Resuming from checkpoint with objective " + checkpoint.objective + " after " + timeOffset + "s");
+		} else if (warmStart != null && warmStart.nStarts == startVars.length) {
+			addHints(model, startVars, store.schedule(warmStart));
+			System.out.println("Warm start from a stored " + warmStart.timeout + "s run with objective " + warmStart.objective);
+		}
+		solver.getParameters().setMaxTimeInSeconds(Math.max(1, timeout - timeOffset));
+		solver.getParameters().setRelativeGapLimit(Main.gap());
+		if (Main.seed() >= 0)
+			solver.getParameters().setRandomSeed(Main.seed());
+		solver.getParameters().setNumSearchWorkers(n_workers);
+		SearchStrategy.apply(strategy, model, solver, instance, startVars, n_workers);
+		ScheduleVerifier verifier = null;
+		if (ScheduleVerifier.incumbents()) {
+			if (instance == null)
+				instance = JobShopInstance.read(dataset_id, folder, filename);
+			verifier = new ScheduleVerifier(instance);
+		}
+		IncumbentExtractor incumbents = checkpoint != null || verifier != null || IncumbentExtractor.enabled() ? IncumbentExtractor.fromOptions(startVars) : null;
+		MySolutionCallback mSC = new MySolutionCallback(incumbents, checkpoint, timeOffset);
+		mSC.setTelemetry(run);
+		mSC.setVerifier(verifier, "ORT_Adv");
+		long stopTime = System.currentTimeMillis();
+        double instantiation_time = (double)(stopTime - startTime)/1000;
+        profiler.end();
+        profiler.stats(model);
+        if (justInstantiation)
+        	return (filename + ";" +instantiation_time + profiler.columns(instantiation_time, startVars.length));
+		profiler.phase("solve");
+		CpSolverStatus status;
+		long[] schedule = null;
+		if (checkpoint != null)
+			checkpoint.begin(timeOffset);
+		try {
+			status = solver.solveWithSolutionCallback(model, mSC);
+			if (status == CpSolverStatus.OPTIMAL || status == CpSolverStatus.FEASIBLE) {
+				schedule = schedule(solver, startVars);
+				// the last solution may not have been extracted by the callback
+				if (checkpoint != null)
+					checkpoint.offer((long) solver.objectiveValue(), schedule);
+			}
+		} finally {
+			if (checkpoint != null)
+				checkpoint.finish();
+		}
+		profiler.end();
+		String optimal = "No";
+		if (status == CpSolverStatus.OPTIMAL) {
+			System.out.println("Optimal Schedule Length: " + solver.objectiveValue());
+			optimal = "Yes";
+		} else
+			System.out.println("Non Optimal Schedule Length: " + solver.objectiveValue());
+		System.out.println("Solver Walltime: " + solver.wallTime());
+		if (incumbents != null)
+			System.out.println(incumbents.summary());
+		if (run != null)
+			run.end(solver.objectiveValue(), solver.bestObjectiveBound(), timeOffset + solver.wallTime());
+
+		if (verifier != null)
+			System.out.println(verifier.incumbentSummary());
+		if (schedule != null && ScheduleVerifier.enabled()) {
+			int[] endVars = endVars(model, startVars);
+			long[] ends = endVars == null ? null : schedule(solver, endVars);
+			if (instance != null)
+				ScheduleVerifier.audit(instance, dataset_id, "ORT_Adv", schedule, ends, solver.objectiveValue());
+			else
+				ScheduleVerifier.audit(dataset_id, folder, filename, "ORT_Adv", schedule, ends, solver.objectiveValue());
+		}
+
+		if (store != null && schedule != null) {
+			ResultsStore.Entry entry = new ResultsStore.Entry();
+			entry.instanceHash = instanceHash;
+			entry.config = config;
+			entry.timeout = timeout;
+			entry.objective = (long) solver.objectiveValue();
+			entry.bound = solver.bestObjectiveBound();
+			// a resumed run also spent the time of its earlier segments
+			entry.wallTime = timeOffset + solver.wallTime();
+			entry.optimal = status == CpSolverStatus.OPTIMAL;
+			entry.branches = solver.numBranches();
+			entry.conflicts = solver.numConflicts();
+			entry.starts = schedule;
+			store.put(entry);
+		}
+
+		return (filename + ";" + solver.objectiveValue() + ";" + solver.wallTime() + ";" + optimal+";"+solver.numBranches()+";"+solver.numConflicts()+";"+solver.bestObjectiveBound()
+				+ profiler.columns(instantiation_time, startVars.length));
+	}
+
+	/* Model of the selected builder, or of the model cache when it has this instance. */
+	static int[] instantiate(CpModel model, int dataset_id, String folder, String filename, Profiler profiler) throws Exception {
+		return instantiate(model, dataset_id, folder, filename, null, profiler);
+	}
+
+	/* same, built from parsed instead of the file when parsed is not null */
+	static int[] instantiate(CpModel model, int dataset_id, String folder, String filename, JobShopInstance parsed, Profiler profiler) throws Exception {
+		return ModelCache.buildOrLoad(model, dataset_id, folder + filename, "ORT_Adv", profiler, () -> {
+			if (LeanModelBuilder.enabled())
+				return new LeanModelBuilder(model, parsed != null ? parsed : JobShopInstance.read(dataset_id, folder, filename), LeanModelBuilder.debugNames()).advanced(profiler);
+			if (ShardedModelBuilder.enabled())
+				return new ShardedModelBuilder(model, parsed != null ? parsed : JobShopInstance.read(dataset_id, folder, filename), ShardedModelBuilder.pool()).advanced(profiler);
+			if (parsed != null)
+				return buildModel(model, parsed, profiler);
+			return buildModel(model, dataset_id, folder, filename, profiler);
+		});
+	}
+
+	/*
+	 * End variable of every operation, read from the model: the end of the
+	 * interval on its start variable, or else the other variable of an
+	 * unconditional equality end - start = d. null if an operation has neither.
+	 */
+	static int[] endVars(CpModel model, int[] startVars) {
+		CpModelProto.Builder proto = model.getBuilder();
+		int[] op = new int[proto.getVariablesCount()];
+		Arrays.fill(op, -1);
+		for (int o = 0; o < startVars.length; o++)
+			op[startVars[o]] = o;
+		int[] ends = new int[startVars.length];
+		Arrays.fill(ends, -1);
+		for (int c = 0; c < proto.getConstraintsCount(); c++) {
+			ConstraintProto constraint = proto.getConstraints(c);
+			if (constraint.getConstraintCase() == ConstraintProto.ConstraintCase.INTERVAL) {
+				IntervalConstraintProto interval = constraint.getInterval();
+				if (op[interval.getStart()] >= 0)
+					ends[op[interval.getStart()]] = interval.getEnd();
+			} else if (constraint.getConstraintCase() == ConstraintProto.ConstraintCase.LINEAR && constraint.getEnforcementLiteralCount() == 0) {
+				LinearConstraintProto linear = constraint.getLinear();
+				if (linear.getVarsCount() != 2 || linear.getDomainCount() != 2 || linear.getDomain(0) != linear.getDomain(1)
+						|| Math.abs(linear.getCoeffs(0)) != 1 || linear.getCoeffs(0) != -linear.getCoeffs(1))
+					continue;
+				int a = linear.getVars(0);
+				int b = linear.getVars(1);
+				if (a < 0 || b < 0)
+					continue;
+				if (op[a] >= 0 && op[b] < 0 && ends[op[a]] < 0)
+					ends[op[a]] = b;
+				else if (op[b] >= 0 && op[a] < 0 && ends[op[b]] < 0)
+					ends[op[b]] = a;
+			}
+		}
+		for (int e : ends)
+			if (e < 0)
+				return null;
+		return ends;
+	}
+
+	/* start times of the last solution, in the order of startVars */
+	static long[] schedule(CpSolver solver, int[] startVars) {
+		CpSolverResponse response = solver.response();
+		long[] schedule = new long[startVars.length];
+		for (int o = 0; o < startVars.length; o++)
+			schedule[o] = response.getSolution(startVars[o]);
+		return schedule;
+	}
+
+	/* hints by variable index, so they work with every model builder */
+	static void addHints(CpModel model, int[] vars, long[] values) {
+		PartialVariableAssignment.Builder hint = model.getBuilder().getSolutionHintBuilder();
+		for (int o = 0; o < vars.length; o++)
+			hint.addVars(vars[o]).addValues(values[o]);
+	}
+
+
+
+	/*
+	 * Builds the Advanced encoding into model and returns the index of the start
+	 * variable of every operation, in job-major order.
+	 */
+	static int[] buildModel(CpModel model, int dataset_id, String folder, String filename, Profiler profiler) throws Exception {
+		// Three weeks.
+		int horizon = 0;
+		int nJobs, nMachines;
+		int boundary;
+		profiler.phase("horizon");
 		DataReader data = new DataReader(folder + filename);
 
 		// calculating horizon
@@ -96,10 +353,12 @@ public class SchedJobShopORTools {
 		}
 		System.out.println("Calculated horizon is " + horizon);
 
+		profiler.phase("variables");
 		data = new DataReader(folder + filename);
 		nJobs = data.next();
 		nMachines = data.next();
 		IntVar[] lastOpsEnds = new IntVar[nJobs];
+		ArrayList<IntVar> starts = new ArrayList<IntVar>();
 		ArrayList<IntervalVar>[] machines = (ArrayList<IntervalVar>[]) new ArrayList[nMachines];
 //initialization of machines array list
 		for (int j = 0; j < nMachines; j++)
@@ -122,6 +381,7 @@ public class SchedJobShopORTools {
 
 				end = model.newIntVar(0, horizon, "end" + (i * nJobs + j));
 				op = model.newIntervalVar(start, d, end, "op" + (i * nJobs + j));
+				starts.add(start);
 				
 				machines[m].add(op);
 				if (j > 0) {
@@ -132,6 +392,7 @@ public class SchedJobShopORTools {
 			lastOpsEnds[i] = endPrec;
 		}
 		
+		profiler.phase("noOverlap");
 		for (int j = 0; j < nMachines; j++) {
 			IntervalVar[] machine = new IntervalVar[machines[j].size()];
 			machines[j].toArray(machine);
@@ -140,32 +401,56 @@ public class SchedJobShopORTools {
 		}
 
 		// Makespan objective.
+		profiler.phase("objective");
 		IntVar obj = model.newIntVar(0, horizon, "makespan");
 		model.addMaxEquality(obj, lastOpsEnds);
 		model.minimize(obj);
-		System.out.println("Instantiation finished, starting solving...");
-		// Creates a solver and solves the model.
-		
-		solver.getParameters().setMaxTimeInSeconds(timeout);
-		solver.getParameters().setNumSearchWorkers(n_workers);
-		MySolutionCallback mSC = new MySolutionCallback();
-		long stopTime = System.currentTimeMillis();
-        double instantiation_time = (double)(stopTime - startTime)/1000;
-        if (justInstantiation)
-        	return (filename + ";" +instantiation_time);
-		CpSolverStatus status = solver.solveWithSolutionCallback(model, mSC);
-		String optimal = "No";
-		if (status == CpSolverStatus.OPTIMAL) {
-			System.out.println("Optimal Schedule Length: " + solver.objectiveValue());
-			optimal = "Yes";
-		} else
-			System.out.println("Non Optimal Schedule Length: " + solver.objectiveValue());
-		System.out.println("Solver Walltime: " + solver.wallTime());
 
-		return (filename + ";" + solver.objectiveValue() + ";" + solver.wallTime() + ";" + optimal+";"+solver.numBranches()+";"+solver.numConflicts());
+		int[] startVars = new int[starts.size()];
+		for (int o = 0; o < startVars.length; o++)
+			startVars[o] = starts.get(o).getIndex();
+		return startVars;
 	}
 
+	/* buildModel from an instance already in memory, same variables, names and constraints */
+	static int[] buildModel(CpModel model, JobShopInstance instance, Profiler profiler) {
+		profiler.phase("horizon");
+		int horizon = (int) instance.horizon();
+		System.out.println("Calculated horizon is " + horizon);
+
+		profiler.phase("variables");
+		int nJobs = instance.nJobs;
+		IntVar[] lastOpsEnds = new IntVar[nJobs];
+		int[] startVars = new int[instance.nOps];
+		ArrayList<IntervalVar>[] machines = (ArrayList<IntervalVar>[]) new ArrayList[instance.nMachines];
+		for (int j = 0; j < instance.nMachines; j++)
+			machines[j] = new ArrayList<IntervalVar>();
 
+		for (int i = 0; i < nJobs; i++) {
+			IntVar endPrec = null;
+			for (int o = instance.jobStart[i]; o < instance.jobStart[i + 1]; o++) {
+				int j = o - instance.jobStart[i];
+				IntVar start = model.newIntVar(0, horizon, "start" + (i * nJobs + j));
+				IntVar end = model.newIntVar(0, horizon, "end" + (i * nJobs + j));
+				machines[instance.machine[o]].add(model.newIntervalVar(start, instance.duration[o], end, "op" + (i * nJobs + j)));
+				startVars[o] = start.getIndex();
+				if (j > 0)
+					model.addLessOrEqual(endPrec, start);
+				endPrec = end;
+			}
+			lastOpsEnds[i] = endPrec;
+		}
+
+		profiler.phase("noOverlap");
+		for (int j = 0; j < instance.nMachines; j++)
+			model.addNoOverlap(machines[j].toArray(new IntervalVar[machines[j].size()]));
+
+		profiler.phase("objective");
+		IntVar obj = model.newIntVar(0, horizon, "makespan");
+		model.addMaxEquality(obj, lastOpsEnds);
+		model.minimize(obj);
+		return startVars;
+	}
 
 public static String scheduleFromeEdbFile(String folder, String filename, int timeout,boolean justInstantiation) throws Exception {
 		long startTime = System.currentTimeMillis();
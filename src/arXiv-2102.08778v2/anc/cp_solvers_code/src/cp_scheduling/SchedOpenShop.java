@@ -63,6 +63,100 @@ public class SchedOpenShop {
      }
  }
 
+ public static void scheduleFromDirectory(String foldername, int timeout, int n_workers) throws Exception {
+     String outFile = "CPO_OpenShop_" + foldername + "_" + timeout + "_" + n_workers + ".csv";
+     String inFile = INFO.OPENSHOP_PATH + foldername + "/";
+     System.out.println("Using CPOptimizer to solve open shop instances:\ninput= " + inFile + "\noutput= " + outFile + "\ntimeout= " + timeout
+             + "\nworkers= " + n_workers);
+     PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+     File[] files = new File(inFile).listFiles();
+     int i = 0;
+     for (File file : files)
+         if (file.isFile()) {
+             i++;
+             System.out.println("Solving instance" + file.getName() + " " + i + "/" + files.length);
+             writer.println(scheduleFromFile(inFile, file.getName(), timeout, n_workers));
+             writer.flush();
+         }
+     writer.close();
+ }
+
+ /*
+  * Same model as the launcher. The makespan of the dense schedule of
+  * OpenShopInstance bounds the objective and that schedule is the starting
+  * point of the search. Row: filename;objective;time;bound;branches;
+  * lower_bound;dense_makespan, then the statistics columns.
+  */
+ public static String scheduleFromFile(String folder, String filename, int timeout, int n_workers) throws Exception {
+     Profiler profiler = new Profiler("CPO_OpenShop", filename);
+     profiler.phase("variables");
+     OpenShopInstance instance = OpenShopInstance.read(folder, filename);
+     long lb = instance.lowerBound();
+     long[] dense = new long[instance.nOps];
+     long ub = instance.denseSchedule(dense);
+     try {
+         IloCP cp = new IloCP();
+         IntervalVarList[] jobs = new IntervalVarList[instance.nJobs];
+         for (int i = 0; i < instance.nJobs; i++)
+             jobs[i] = new IntervalVarList();
+         IntervalVarList[] machines = new IntervalVarList[instance.nMachines];
+         for (int j = 0; j < instance.nMachines; j++)
+             machines[j] = new IntervalVarList();
+         List<IloIntervalVar> operations = new ArrayList<IloIntervalVar>();
+         IloIntExpr[] ends = new IloIntExpr[instance.nOps];
+         for (int o = 0; o < instance.nOps; o++) {
+             IloIntervalVar ti = cp.intervalVar(instance.duration[o]);
+             operations.add(ti);
+             jobs[o / instance.nMachines].add(ti);
+             machines[o % instance.nMachines].add(ti);
+             ends[o] = cp.endOf(ti);
+         }
+
+         profiler.phase("noOverlap");
+         for (int i = 0; i < instance.nJobs; i++)
+             cp.add(cp.noOverlap(jobs[i].toArray()));
+         for (int j = 0; j < instance.nMachines; j++)
+             cp.add(cp.noOverlap(machines[j].toArray()));
+         IloObjective objective = cp.minimize(cp.max(ends));
+         cp.add(objective);
+
+         IloSolution start = cp.solution();
+         for (int o = 0; o < instance.nOps; o++) {
+             start.add(operations.get(o));
+             start.setStart(operations.get(o), (int) dense[o]);
+         }
+         cp.setStartingPoint(start);
+         profiler.end();
+         double instantiation_time = profiler.seconds("variables") + profiler.seconds("noOverlap");
+
+         cp.setParameter(IloCP.IntParam.Workers, n_workers);
+         cp.setParameter(IloCP.DoubleParam.TimeLimit, (double) timeout);
+         cp.setParameter(IloCP.IntParam.LogVerbosity, IloCP.ParameterValues.Terse);
+         cp.setParameter(IloCP.DoubleParam.RelativeOptimalityTolerance, Main.gap());
+         if (Main.seed() >= 0)
+             cp.setParameter(IloCP.IntParam.RandomSeed, Main.seed());
+         profiler.phase("solve");
+         boolean solved = cp.solve();
+         profiler.end();
+         profiler.stats(cp);
+         String stats = profiler.columns(instantiation_time, instance.nOps);
+         if (solved) {
+             if (ScheduleVerifier.enabled())
+                 instance.verify("CPO_OpenShop", SchedJobShop.schedule(cp, operations, new long[instance.nOps]), cp.getObjValue());
+             System.out.println(filename + ";" + cp.getObjValue() + ";" + cp.getInfo(IloCP.DoubleInfo.TotalTime) + ";" + lb + ";" + ub);
+             return filename + ";" + cp.getObjValue() + ";" + cp.getInfo(IloCP.DoubleInfo.TotalTime) + ";" + Math.max(lb, cp.getObjBound()) + ";"
+                     + cp.getInfo(IloCP.IntInfo.NumberOfBranches) + ";" + lb + ";" + ub + stats;
+         }
+         // the dense schedule is still a solution
+         System.out.println("No solution found, dense schedule " + ub);
+         return filename + ";" + ub + ";" + cp.getInfo(IloCP.DoubleInfo.TotalTime) + ";" + lb + ";" + cp.getInfo(IloCP.IntInfo.NumberOfBranches) + ";"
+                 + lb + ";" + ub + stats;
+     } catch (IloException e) {
+         System.err.println("Error: " + e);
+         return filename + ";ERROR;" + e;
+     }
+ }
+
  public static void launcher(String[] args) throws IOException {
 	 // /cp_scheduling/data/openshop/gp10-4.data
      String filename = "./data/openshop/tai20-6.data";
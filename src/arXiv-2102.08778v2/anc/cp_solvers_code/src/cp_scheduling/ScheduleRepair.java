@@ -0,0 +1,557 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.google.ortools.sat.ConstraintProto;
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpModelProto;
+import com.google.ortools.sat.CpObjectiveProto;
+import com.google.ortools.sat.CpSolver;
+import com.google.ortools.sat.CpSolverStatus;
+import com.google.ortools.sat.IntegerArgumentProto;
+import com.google.ortools.sat.IntegerVariableProto;
+import com.google.ortools.sat.IntervalConstraintProto;
+import com.google.ortools.sat.NoOverlapConstraintProto;
+
+/*
+ * Repair of a schedule after disruptions at time now: machine breakdowns
+ * (machine unavailable over an interval), operations lasting longer or
+ * shorter than planned, and rush jobs released at some time. Operations
+ * started before now are frozen; a running operation hit by a breakdown
+ * resumes when the machine is back, its end pushed by the overlap, while
+ * operations that ended before now are never moved.
+ *
+ * The repair keeps the order of the operations on every machine (rush
+ * operations are put in it at the earliest time they could start) and only
+ * delays operations: every operation is visited once in topological order of
+ * the job and machine arcs and starts at the latest of its planned start,
+ * its predecessors' ends and now, pushed past the breakdowns of its machine.
+ * The visit is linear in the number of operations, the machine orders come
+ * from one sort of the planned starts.
+ *
+ * A Window then re-optimises the repaired schedule with CP-SAT: unstarted
+ * operations starting before the end of the window are free, later ones
+ * keep their machine order and can only slide, and the repaired schedule is
+ * the hint.
+ */
+public class ScheduleRepair {
+
+	static final int DOWN = 0, LATE = 1, RUSH = 2;
+
+	/* one disruption, see the factory methods */
+	public static class Event {
+		final int kind;
+		final int target;
+		final long from, to;
+		final int[] machines, durations;
+
+		private Event(int kind, int target, long from, long to, int[] machines, int[] durations) {
+			this.kind = kind;
+			this.target = target;
+			this.from = from;
+			this.to = to;
+			this.machines = machines;
+			this.durations = durations;
+		}
+
+		/* machine unavailable over [from, to) */
+		public static Event down(int machine, long from, long to) {
+			return new Event(DOWN, machine, from, to, null, null);
+		}
+
+		/* operation o lasts duration instead of its planned duration */
+		public static Event late(int o, int duration) {
+			return new Event(LATE, o, duration, duration, null, null);
+		}
+
+		/* new job released at release */
+		public static Event rush(long release, int[] machines, int[] durations) {
+			return new Event(RUSH, -1, release, release, machines, durations);
+		}
+
+		/* down:<machine>:<from>:<to>, late:<operation>:<duration> or rush:<release>:<machine>,<duration>,... */
+		public static Event parse(String s) {
+			String[] f = s.split(":");
+			if (f.length != (f[0].equals("down") ? 4 : 3))
+				throw new IllegalArgumentException("Malformed disruption " + s + ", expected down:<machine>:<from>:<to>, late:<operation>:<duration> or rush:<release>:<route>");
+			switch (f[0]) {
+			case "down":
+				return down(Integer.parseInt(f[1]), Long.parseLong(f[2]), Long.parseLong(f[3]));
+			case "late":
+				return late(Integer.parseInt(f[1]), Integer.parseInt(f[2]));
+			case "rush":
+				String[] route = f[2].split(",");
+				int[] machines = new int[route.length / 2], durations = new int[route.length / 2];
+				for (int k = 0; k < machines.length; k++) {
+					machines[k] = Integer.parseInt(route[2 * k]);
+					durations[k] = Integer.parseInt(route[2 * k + 1]);
+				}
+				return rush(Long.parseLong(f[1]), machines, durations);
+			default:
+				throw new IllegalArgumentException("Unknown disruption " + s + ", expected down:, late: or rush:");
+			}
+		}
+
+		public String toString() {
+			switch (kind) {
+			case DOWN:
+				return "down:" + target + ":" + from + ":" + to;
+			case LATE:
+				return "late:" + target + ":" + from;
+			default:
+				StringBuilder route = new StringBuilder();
+				for (int k = 0; k < machines.length; k++)
+					route.append(k == 0 ? "" : ",").append(machines[k]).append(',').append(durations[k]);
+				return "rush:" + from + ":" + route;
+			}
+		}
+	}
+
+	/* the disrupted instance, rush jobs appended, and its repaired schedule */
+	final JobShopInstance instance;
+	final long[] starts;
+	final long now;
+	final boolean[] frozen;
+	final long[] release;
+	/* breakdowns of every machine, sorted by start */
+	final long[][] downFrom, downTo;
+	long makespan;
+	int shifted;
+
+	/*
+	 * Applies the events to a copy of the instance and repairs starts, the
+	 * schedule of the original instance. The arguments are not modified.
+	 * Throws IllegalArgumentException for an event on an operation or machine
+	 * that does not exist, or with a negative duration.
+	 */
+	public ScheduleRepair(JobShopInstance original, long[] planned, long now, List<Event> events) {
+		this.now = now;
+		int extraJobs = 0, extraOps = 0;
+		for (Event e : events)
+			validate(e, original);
+		for (Event e : events)
+			if (e.kind == RUSH) {
+				extraJobs++;
+				extraOps += e.machines.length;
+			}
+		int nJobs = original.nJobs + extraJobs;
+		int nOps = original.nOps + extraOps;
+		int[] jobStart = Arrays.copyOf(original.jobStart, nJobs + 1);
+		int[] machine = Arrays.copyOf(original.machine, nOps);
+		int[] duration = Arrays.copyOf(original.duration, nOps);
+		long[] key = Arrays.copyOf(planned, nOps);
+		this.release = new long[nJobs];
+		this.frozen = new boolean[nOps];
+		for (int o = 0; o < original.nOps; o++)
+			frozen[o] = planned[o] < now;
+		int nMachines = original.nMachines;
+		int i = original.nJobs, o = original.nOps;
+		for (Event e : events)
+			if (e.kind == LATE)
+				duration[e.target] = (int) e.from;
+			else if (e.kind == RUSH) {
+				release[i] = e.from;
+				jobStart[i] = o;
+				// ordered on the machines at the earliest time it could start
+				long t = Math.max(now, e.from);
+				for (int k = 0; k < e.machines.length; k++, o++) {
+					machine[o] = e.machines[k];
+					duration[o] = e.durations[k];
+					nMachines = Math.max(nMachines, e.machines[k] + 1);
+					key[o] = t;
+					t += e.durations[k];
+				}
+				jobStart[++i] = o;
+			} else
+				nMachines = Math.max(nMachines, e.target + 1);
+		this.instance = new JobShopInstance(original.name, nJobs, nMachines, jobStart, machine, duration);
+
+		List<long[]> downs = new ArrayList<long[]>();
+		for (Event e : events)
+			if (e.kind == DOWN && e.to > e.from)
+				downs.add(new long[] { e.target, e.from, e.to });
+		downs.sort((a, b) -> Long.compare(a[1], b[1]));
+		int[] count = new int[nMachines];
+		for (long[] d : downs)
+			count[(int) d[0]]++;
+		downFrom = new long[nMachines][];
+		downTo = new long[nMachines][];
+		for (int m = 0; m < nMachines; m++) {
+			downFrom[m] = new long[count[m]];
+			downTo[m] = new long[count[m]];
+		}
+		Arrays.fill(count, 0);
+		for (long[] d : downs) {
+			int m = (int) d[0];
+			downFrom[m][count[m]] = d[1];
+			downTo[m][count[m]++] = d[2];
+		}
+		this.starts = new long[nOps];
+		rightShift(key, planned);
+	}
+
+	private static void validate(Event e, JobShopInstance original) {
+		boolean valid;
+		switch (e.kind) {
+		case DOWN:
+			valid = e.target >= 0;
+			break;
+		case LATE:
+			valid = e.target >= 0 && e.target < original.nOps && e.from >= 0;
+			break;
+		default:
+			valid = true;
+			for (int k = 0; k < e.machines.length; k++)
+				valid &= e.machines[k] >= 0 && e.durations[k] >= 0;
+		}
+		if (!valid)
+			throw new IllegalArgumentException("Invalid disruption " + e + " for " + original.name + " with " + original.nOps + " operations");
+	}
+
+	/* visits the operations in topological order of the job arcs and of the machine orders of key */
+	private void rightShift(long[] key, long[] planned) {
+		int n = instance.nOps;
+		int[] machinePred = new int[n];
+		int[] machineSucc = new int[n];
+		Arrays.fill(machinePred, -1);
+		Arrays.fill(machineSucc, -1);
+		for (int[] ops : instance.operationsByMachine()) {
+			Integer[] order = new Integer[ops.length];
+			for (int k = 0; k < ops.length; k++)
+				order[k] = ops[k];
+			// frozen operations first on ties, they have started
+			Arrays.sort(order, (a, b) -> key[a] != key[b] ? Long.compare(key[a], key[b]) : Boolean.compare(!frozen[a], !frozen[b]));
+			for (int k = 1; k < order.length; k++) {
+				machinePred[order[k]] = order[k - 1];
+				machineSucc[order[k - 1]] = order[k];
+			}
+		}
+		int[] job = new int[n];
+		for (int i = 0; i < instance.nJobs; i++)
+			for (int o = instance.jobStart[i]; o < instance.jobStart[i + 1]; o++)
+				job[o] = i;
+		int[] indegree = new int[n];
+		int[] queue = new int[n];
+		int head = 0, tail = 0;
+		for (int o = 0; o < n; o++) {
+			indegree[o] = (machinePred[o] >= 0 ? 1 : 0) + (o > instance.jobStart[job[o]] ? 1 : 0);
+			if (indegree[o] == 0)
+				queue[tail++] = o;
+		}
+		long[] end = new long[n];
+		makespan = 0;
+		shifted = 0;
+		while (head < tail) {
+			int o = queue[head++];
+			int m = instance.machine[o];
+			int d = instance.duration[o];
+			long s;
+			if (frozen[o]) {
+				s = key[o];
+				starts[o] = s;
+				end[o] = end(o);
+			} else {
+				s = Math.max(Math.max(key[o], now), release[job[o]]);
+				if (o > instance.jobStart[job[o]])
+					s = Math.max(s, end[o - 1]);
+				if (machinePred[o] >= 0)
+					s = Math.max(s, end[machinePred[o]]);
+				for (int k = 0; k < downFrom[m].length; k++)
+					if (downFrom[m][k] < s + d && downTo[m][k] > s)
+						s = downTo[m][k];
+				end[o] = s + d;
+			}
+			starts[o] = s;
+			if (o >= planned.length || s != planned[o])
+				shifted++;
+			makespan = Math.max(makespan, end[o]);
+			if (o + 1 < instance.jobStart[job[o] + 1] && --indegree[o + 1] == 0)
+				queue[tail++] = o + 1;
+			if (machineSucc[o] >= 0 && --indegree[machineSucc[o]] == 0)
+				queue[tail++] = machineSucc[o];
+		}
+		if (tail < n)
+			throw new IllegalStateException("The planned schedule orders " + (n - tail) + " operations in a cycle");
+	}
+
+	/* end of operation o in the repaired schedule; a running operation resumes after the breakdowns that interrupt it */
+	long end(int o) {
+		long e = starts[o] + instance.duration[o];
+		// an operation that ended before now is past any disruption
+		if (frozen[o] && e > now) {
+			int m = instance.machine[o];
+			for (int k = 0; k < downFrom[m].length; k++)
+				if (downFrom[m][k] < e && downTo[m][k] > Math.max(starts[o], now))
+					e += downTo[m][k] - Math.max(downFrom[m][k], Math.max(starts[o], now));
+		}
+		return e;
+	}
+
+	/* unstarted operations of a schedule overlapping a breakdown of their machine */
+	int breakdownViolations(long[] schedule) {
+		int violations = 0;
+		for (int o = 0; o < instance.nOps; o++) {
+			int m = instance.machine[o];
+			if (!frozen[o])
+				for (int k = 0; k < downFrom[m].length; k++)
+					if (downFrom[m][k] < schedule[o] + instance.duration[o] && downTo[m][k] > schedule[o])
+						violations++;
+		}
+		return violations;
+	}
+
+	/* CP-SAT re-optimisation, in a nested class so that the repair alone does not load jniortools */
+	static class Window {
+
+		static {
+			System.loadLibrary("jniortools");
+		}
+
+		long objective = -1;
+		boolean optimal;
+		int free;
+		double seconds;
+
+		/*
+		 * Operations of r starting before windowEnd are free, the later ones keep
+		 * their machine order. Returns the improved schedule, null if none was
+		 * found in the time limit.
+		 */
+		long[] solve(ScheduleRepair r, long windowEnd, double timeout, int n_workers) {
+			long time = System.nanoTime();
+			JobShopInstance in = r.instance;
+			int n = in.nOps;
+			int[] var = new int[n];
+			int[] ops = new int[n];
+			int f = 0;
+			long frozenEnd = 0;
+			long[] machineReady = new long[in.nMachines];
+			for (int o = 0; o < n; o++)
+				if (r.frozen[o]) {
+					var[o] = -1;
+					frozenEnd = Math.max(frozenEnd, r.end(o));
+					machineReady[in.machine[o]] = Math.max(machineReady[in.machine[o]], r.end(o));
+				} else {
+					var[o] = f;
+					ops[f++] = o;
+				}
+			if (f == 0)
+				return null;
+			long ub = r.makespan;
+			CpModel model = new CpModel();
+			CpModelProto.Builder proto = model.getBuilder();
+			// start k, end f + k, makespan 2f as in LeanModelBuilder
+			for (int k = 0; k < f; k++) {
+				int o = ops[k];
+				int i = job(in, o);
+				long lb = Math.max(Math.max(r.now, r.release[i]), machineReady[in.machine[o]]);
+				if (o > in.jobStart[i] && r.frozen[o - 1])
+					lb = Math.max(lb, r.end(o - 1));
+				proto.addVariables(IntegerVariableProto.newBuilder().addDomain(lb).addDomain(ub - in.duration[o]));
+			}
+			for (int k = 0; k < f; k++)
+				proto.addVariables(IntegerVariableProto.newBuilder().addDomain(0).addDomain(ub));
+			int mk = 2 * f;
+			proto.addVariables(IntegerVariableProto.newBuilder().addDomain(frozenEnd).addDomain(ub));
+			for (int k = 0; k < f; k++) {
+				int size = proto.getVariablesCount();
+				proto.addVariables(IntegerVariableProto.newBuilder().addDomain(in.duration[ops[k]]).addDomain(in.duration[ops[k]]));
+				proto.addConstraints(ConstraintProto.newBuilder().setInterval(IntervalConstraintProto.newBuilder().setStart(k).setEnd(f + k).setSize(size)));
+			}
+			NoOverlapConstraintProto.Builder[] machines = new NoOverlapConstraintProto.Builder[in.nMachines];
+			for (int m = 0; m < in.nMachines; m++) {
+				machines[m] = NoOverlapConstraintProto.newBuilder();
+				for (int d = 0; d < r.downFrom[m].length; d++)
+					if (r.downTo[m][d] > r.now) {
+						// breakdowns are fixed intervals
+						int s = proto.getVariablesCount();
+						long from = Math.max(r.downFrom[m][d], r.now);
+						proto.addVariables(IntegerVariableProto.newBuilder().addDomain(from).addDomain(from));
+						proto.addVariables(IntegerVariableProto.newBuilder().addDomain(r.downTo[m][d]).addDomain(r.downTo[m][d]));
+						proto.addVariables(IntegerVariableProto.newBuilder().addDomain(r.downTo[m][d] - from).addDomain(r.downTo[m][d] - from));
+						machines[m].addIntervals(proto.getConstraintsCount());
+						proto.addConstraints(ConstraintProto.newBuilder().setInterval(IntervalConstraintProto.newBuilder().setStart(s).setEnd(s + 1).setSize(s + 2)));
+					}
+			}
+			free = 0;
+			int[][] byMachine = new int[in.nMachines][];
+			int[] size = new int[in.nMachines];
+			for (int m = 0; m < in.nMachines; m++)
+				byMachine[m] = new int[4];
+			for (int k = 0; k < f; k++) {
+				int o = ops[k];
+				int m = in.machine[o];
+				machines[m].addIntervals(k);
+				if (o + 1 < in.jobStart[job(in, o) + 1])
+					proto.addConstraints(ConstraintProto.newBuilder().setLinear(LeanModelBuilder.difference(var[o + 1], f + k, 0, ub)));
+				if (r.starts[o] < windowEnd)
+					free++;
+				if (size[m] == byMachine[m].length)
+					byMachine[m] = Arrays.copyOf(byMachine[m], 2 * size[m]);
+				byMachine[m][size[m]++] = o;
+			}
+			// after the window the machine orders of the repaired schedule are kept
+			for (int m = 0; m < in.nMachines; m++) {
+				Integer[] order = new Integer[size[m]];
+				for (int k = 0; k < size[m]; k++)
+					order[k] = byMachine[m][k];
+				Arrays.sort(order, (a, b) -> Long.compare(r.starts[a], r.starts[b]));
+				int firstLate = -1;
+				for (int k = 0; k < order.length; k++) {
+					int o = order[k];
+					if (r.starts[o] < windowEnd)
+						continue;
+					if (firstLate < 0) {
+						firstLate = o;
+						for (int w = 0; w < k; w++)
+							proto.addConstraints(ConstraintProto.newBuilder().setLinear(LeanModelBuilder.difference(var[o], f + var[order[w]], 0, ub)));
+					} else
+						proto.addConstraints(ConstraintProto.newBuilder().setLinear(LeanModelBuilder.difference(var[o], f + var[order[k - 1]], 0, ub)));
+				}
+				if (size[m] > 0)
+					proto.addConstraints(ConstraintProto.newBuilder().setNoOverlap(machines[m]));
+			}
+			IntegerArgumentProto.Builder max = IntegerArgumentProto.newBuilder().setTarget(mk);
+			for (int k = 0; k < f; k++)
+				max.addVars(f + k);
+			proto.addConstraints(ConstraintProto.newBuilder().setIntMax(max));
+			proto.setObjective(CpObjectiveProto.newBuilder().addVars(mk).addCoeffs(1));
+			int[] startVars = new int[f];
+			long[] hint = new long[f];
+			for (int k = 0; k < f; k++) {
+				startVars[k] = k;
+				hint[k] = r.starts[ops[k]];
+			}
+			SchedJobShopORTools.addHints(model, startVars, hint);
+
+			CpSolver solver = new CpSolver();
+			solver.getParameters().setMaxTimeInSeconds(timeout);
+			solver.getParameters().setRelativeGapLimit(Main.gap());
+			if (Main.seed() >= 0)
+				solver.getParameters().setRandomSeed(Main.seed());
+			solver.getParameters().setNumSearchWorkers(n_workers);
+			CpSolverStatus status = solver.solve(model);
+			seconds = (System.nanoTime() - time) / 1e9;
+			if (status != CpSolverStatus.OPTIMAL && status != CpSolverStatus.FEASIBLE)
+				return null;
+			objective = Math.round(solver.objectiveValue());
+			optimal = status == CpSolverStatus.OPTIMAL;
+			long[] schedule = Arrays.copyOf(r.starts, n);
+			long[] solved = SchedJobShopORTools.schedule(solver, startVars);
+			for (int k = 0; k < f; k++)
+				schedule[ops[k]] = solved[k];
+			return schedule;
+		}
+
+		private static int job(JobShopInstance in, int o) {
+			int i = Arrays.binarySearch(in.jobStart, 0, in.nJobs + 1, o);
+			if (i < 0)
+				return -i - 2;
+			// jobs without operations share their start
+			while (i + 1 < in.nJobs && in.jobStart[i + 1] == o)
+				i++;
+			return i;
+		}
+	}
+
+	/*
+	 * Disruptions of repair_events, separated by '/', or else a breakdown of
+	 * the most loaded machine over 5% of the makespan from now, one unstarted
+	 * operation lasting 50% longer and a rush job with the route of a random job
+	 * released at now.
+	 */
+	static List<Event> events(JobShopInstance instance, long[] planned, long makespan, long now, long seed) {
+		List<Event> events = new ArrayList<Event>();
+		String spec = Main.option("repair_events", "");
+		if (!spec.isEmpty()) {
+			for (String e : spec.split("/"))
+				events.add(Event.parse(e));
+			return events;
+		}
+		long[] loads = instance.machineLoads();
+		int bottleneck = 0;
+		for (int m = 1; m < loads.length; m++)
+			if (loads[m] > loads[bottleneck])
+				bottleneck = m;
+		events.add(Event.down(bottleneck, now, now + Math.max(1, makespan / 20)));
+		SplittableRandom random = new SplittableRandom(KnownOptimaGenerator.mix(seed, instance.nOps));
+		for (int tries = 0; tries < 100; tries++) {
+			int o = random.nextInt(instance.nOps);
+			if (planned[o] >= now) {
+				events.add(Event.late(o, instance.duration[o] + Math.max(1, instance.duration[o] / 2)));
+				break;
+			}
+		}
+		int i = random.nextInt(instance.nJobs);
+		events.add(Event.rush(now, Arrays.copyOfRange(instance.machine, instance.jobStart[i], instance.jobStart[i + 1]),
+				Arrays.copyOfRange(instance.duration, instance.jobStart[i], instance.jobStart[i + 1])));
+		return events;
+	}
+
+	static final String COLUMNS = "instance;operations;events;now;base_makespan;repaired_makespan;repair_ms;shifted;window_ops;window_makespan;window_s;"
+			+ "full_makespan;full_s;full_optimal;status";
+
+	/*
+	 * For every instance of the folder: greedy schedule, disruptions at
+	 * repair_now (0.25) of its makespan, repair, re-optimisation of the
+	 * repair_window (by default up to the end of the last shifted operation)
+	 * for repair_s (1) seconds, and for comparison a re-solve of all unstarted
+	 * operations for timeout seconds.
+	 */
+	public static void repairFromDirectory(int dataset_id, String foldername, int timeout, int n_workers) throws Exception {
+		String outFile = "Repair_" + INFO.dataset_folder[dataset_id].substring(15, 20) + "_" + foldername + "_" + timeout + "_" + n_workers + ".csv";
+		String inFile = INFO.dataset_folder[dataset_id] + foldername + "/";
+		System.out.println("Schedule repair after disruptions:\ninput= " + inFile + "\noutput= " + outFile + "\ntimeout= " + timeout + "\nworkers= " + n_workers);
+		double at = Double.parseDouble(Main.option("repair_now", "0.25"));
+		double windowSeconds = Double.parseDouble(Main.option("repair_s", "1"));
+		long seed = Long.parseLong(Main.option("repair_seed", "1"));
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		writer.println(COLUMNS);
+		for (File file : new File(inFile).listFiles())
+			if (file.isFile()) {
+				JobShopInstance instance = JobShopInstance.read(dataset_id, inFile, file.getName());
+				long[] planned = new long[instance.nOps];
+				long base = instance.greedySchedule(planned);
+				long now = (long) (at * base);
+				List<Event> events = events(instance, planned, base, now, seed);
+
+				long time = System.nanoTime();
+				ScheduleRepair repair = new ScheduleRepair(instance, planned, now, events);
+				double repairMs = (System.nanoTime() - time) / 1e6;
+				long windowEnd = Long.parseLong(Main.option("repair_window", "-1"));
+				if (windowEnd < 0) {
+					windowEnd = now;
+					for (int o = 0; o < repair.instance.nOps; o++)
+						if (o >= planned.length || repair.starts[o] != planned[o])
+							windowEnd = Math.max(windowEnd, repair.starts[o] + repair.instance.duration[o]);
+				} else
+					windowEnd += now;
+
+				Window window = new Window();
+				long[] improved = window.solve(repair, windowEnd, windowSeconds, n_workers);
+				Window full = new Window();
+				full.solve(repair, Long.MAX_VALUE, timeout, n_workers);
+				long[] schedule = improved != null ? improved : repair.starts;
+				long makespan = improved != null ? window.objective : repair.makespan;
+				ScheduleVerifier.Result check = new ScheduleVerifier(repair.instance).check("Repair", schedule, null, Double.NaN);
+				int downs = repair.breakdownViolations(schedule);
+				if (downs > 0)
+					System.out.println(downs + " operations of " + file.getName() + " overlap a breakdown");
+				if (ScheduleVerifier.enabled())
+					ScheduleVerifier.record(check);
+				String row = file.getName() + ";" + repair.instance.nOps + ";" + events.size() + ";" + now + ";" + base + ";" + repair.makespan + ";"
+						+ repairMs + ";" + repair.shifted + ";" + window.free + ";" + makespan + ";" + window.seconds + ";"
+						+ (full.objective < 0 ? "NoSolution" : String.valueOf(full.objective)) + ";" + full.seconds + ";" + (full.optimal ? "Yes" : "No") + ";"
+						+ (downs > 0 ? "BREAKDOWN_OVERLAP" : check.status());
+				System.out.println(row);
+				writer.println(row);
+				writer.flush();
+			}
+		writer.close();
+	}
+}
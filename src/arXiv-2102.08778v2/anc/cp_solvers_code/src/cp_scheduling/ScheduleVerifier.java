@@ -0,0 +1,276 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Independent feasibility check of a schedule given as one start time per
+ * operation, in the job-major order of JobShopInstance. Precedences are
+ * checked in one pass over the jobs and every machine by sorting its
+ * operations by start time and sweeping them, O(n log n) overall. A verifier
+ * keeps its scratch arrays, so checking every incumbent of a run allocates
+ * only the Result.
+ *
+ * The final schedule of every scheduleFromFile call is audited unless the
+ * verify option is off, with the end times the solver reports when it has
+ * them, and Main prints the audit report when the mode ends. With
+ * verify=incumbents every incumbent the ORTools Advanced callback extracts is
+ * checked too, only the failed checks being kept for the report.
+ */
+public class ScheduleVerifier {
+
+	public static class Result {
+		final String instance;
+		final String solver;
+		int nOps;
+		double reported;
+		long makespan;
+		long reference = -1;
+		int negativeStarts, durationMismatches, precedenceViolations, overlaps;
+		String firstViolation = "";
+
+		Result(String instance, String solver) {
+			this.instance = instance;
+			this.solver = solver;
+		}
+
+		public boolean feasible() {
+			return negativeStarts + durationMismatches + precedenceViolations + overlaps == 0;
+		}
+
+		/* OK, INFEASIBLE, MISMATCH (makespan differs from the reported objective) or BELOW_OPTIMUM */
+		public String status() {
+			if (!feasible())
+				return "INFEASIBLE";
+			if (!Double.isNaN(reported) && makespan != Math.round(reported))
+				return "MISMATCH";
+			if (reference >= 0 && makespan < reference)
+				return "BELOW_OPTIMUM";
+			return "OK";
+		}
+
+		String row() {
+			return instance + ";" + solver + ";" + nOps + ";" + reported + ";" + makespan + ";" + reference + ";" + negativeStarts + ";"
+					+ durationMismatches + ";" + precedenceViolations + ";" + overlaps + ";" + status() + ";" + firstViolation;
+		}
+
+		private void violation(String what) {
+			if (firstViolation.isEmpty())
+				firstViolation = what;
+		}
+	}
+
+	static final String COLUMNS = "instance;solver;operations;reported;makespan;reference;negative_starts;duration_mismatches;precedence_violations;overlaps;status;first_violation";
+
+	private static final List<Result> audited = new ArrayList<Result>();
+
+	private final JobShopInstance instance;
+	private final int[][] byMachine;
+	private int incumbentsChecked, incumbentsFailed;
+	private final long[] ends;
+	private final long[] keys;
+
+	public ScheduleVerifier(JobShopInstance instance) {
+		this.instance = instance;
+		this.byMachine = instance.operationsByMachine();
+		this.ends = new long[instance.nOps];
+		int longest = 0;
+		for (int[] ops : byMachine)
+			longest = Math.max(longest, ops.length);
+		this.keys = new long[longest];
+	}
+
+	public static boolean enabled() {
+		return !Main.option("verify", "on").equals("off");
+	}
+
+	/* verify=incumbents: also check the incumbents of the solves that extract them */
+	public static boolean incumbents() {
+		return Main.option("verify", "on").equals("incumbents");
+	}
+
+	/*
+	 * Checks starts and, when not null, the end times reported by the solver
+	 * against the durations. reported is the objective value of the solver, NaN
+	 * if there is none.
+	 */
+	public Result check(String solver, long[] starts, long[] reportedEnds, double reported) {
+		Result r = new Result(instance.name, solver);
+		r.nOps = instance.nOps;
+		r.reported = reported;
+		if (starts.length != instance.nOps) {
+			r.negativeStarts = instance.nOps;
+			r.violation(starts.length + " start times for " + instance.nOps + " operations");
+			return r;
+		}
+		long makespan = 0;
+		for (int o = 0; o < instance.nOps; o++) {
+			if (starts[o] < 0) {
+				r.negativeStarts++;
+				r.violation("operation " + o + " starts at " + starts[o]);
+			}
+			ends[o] = starts[o] + instance.duration[o];
+			if (reportedEnds != null && reportedEnds[o] != ends[o]) {
+				r.durationMismatches++;
+				r.violation("operation " + o + " lasts " + (reportedEnds[o] - starts[o]) + " instead of " + instance.duration[o]);
+			}
+			makespan = Math.max(makespan, ends[o]);
+		}
+		r.makespan = makespan;
+
+		for (int i = 0; i < instance.nJobs; i++)
+			for (int o = instance.jobStart[i] + 1; o < instance.jobStart[i + 1]; o++)
+				if (ends[o - 1] > starts[o]) {
+					r.precedenceViolations++;
+					r.violation("job " + i + ": operation " + o + " starts at " + starts[o] + " before its predecessor ends at " + ends[o - 1]);
+				}
+
+		for (int m = 0; m < instance.nMachines; m++)
+			sweep(m, starts, r);
+		return r;
+	}
+
+	/* Checks an incumbent of a running solve, called from the solution callback. Failed checks are recorded for the report. */
+	public synchronized Result checkIncumbent(String solver, long[] starts, double reported) {
+		Result r = check(solver, starts, null, reported);
+		incumbentsChecked++;
+		if (!r.status().equals("OK")) {
+			incumbentsFailed++;
+			record(r);
+		}
+		return r;
+	}
+
+	public synchronized String incumbentSummary() {
+		return "Verified " + incumbentsChecked + " incumbents, " + incumbentsFailed + " failed";
+	}
+
+	/* sorts the operations of machine m by start time and counts those starting before the previous ones end */
+	private void sweep(int m, long[] starts, Result r) {
+		int[] ops = byMachine[m];
+		int n = ops.length;
+		// start and position packed in one long, so a primitive sort is enough
+		int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, n - 1));
+		long limit = 1L << (62 - bits);
+		for (int k = 0; k < n; k++) {
+			long s = starts[ops[k]];
+			if (s < 0 || s >= limit) {
+				sweepBoxed(m, starts, r);
+				return;
+			}
+			keys[k] = (s << bits) | k;
+		}
+		Arrays.sort(keys, 0, n);
+		long busyUntil = Long.MIN_VALUE;
+		int last = -1;
+		for (int k = 0; k < n; k++) {
+			int o = ops[(int) (keys[k] & ((1L << bits) - 1))];
+			if (starts[o] < busyUntil && !empty(o, starts)) {
+				r.overlaps++;
+				r.violation("machine " + m + ": operation " + o + " starts at " + starts[o] + " while operation " + last + " runs until " + busyUntil);
+			}
+			if (ends[o] > busyUntil) {
+				busyUntil = ends[o];
+				last = o;
+			}
+		}
+	}
+
+	/* same sweep for start times too large or negative to be packed */
+	private void sweepBoxed(int m, long[] starts, Result r) {
+		Integer[] ops = new Integer[byMachine[m].length];
+		for (int k = 0; k < ops.length; k++)
+			ops[k] = byMachine[m][k];
+		Arrays.sort(ops, (a, b) -> Long.compare(starts[a], starts[b]));
+		long busyUntil = Long.MIN_VALUE;
+		int last = -1;
+		for (int o : ops) {
+			if (starts[o] < busyUntil && !empty(o, starts)) {
+				r.overlaps++;
+				r.violation("machine " + m + ": operation " + o + " starts at " + starts[o] + " before " + busyUntil);
+			}
+			if (ends[o] > busyUntil) {
+				busyUntil = ends[o];
+				last = o;
+			}
+		}
+	}
+
+	/*
+	 * a zero-duration operation holds the machine for no time, so it overlaps
+	 * nothing: the sort may put it after an operation starting at the same time,
+	 * and the no-overlap and cumulative constraints of CP-SAT place it anywhere
+	 */
+	private boolean empty(int o, long[] starts) {
+		return ends[o] == starts[o];
+	}
+
+	/* audit of a solver that reports no end times, such as the heuristics whose ends are start plus duration */
+	public static Result audit(int dataset_id, String folder, String filename, String solver, long[] starts, double reported) throws Exception {
+		return audit(dataset_id, folder, filename, solver, starts, null, reported);
+	}
+
+	/*
+	 * Verifies the final schedule of a run, with the end times reported by the
+	 * solver when ends is not null, and records it for the report. On the
+	 * known-optima dataset the makespan is also compared to the optimum.
+	 */
+	public static Result audit(int dataset_id, String folder, String filename, String solver, long[] starts, long[] ends, double reported) throws Exception {
+		return audit(JobShopInstance.read(dataset_id, folder, filename), dataset_id, solver, starts, ends, reported);
+	}
+
+	/* same for an instance already read */
+	public static Result audit(JobShopInstance instance, int dataset_id, String solver, long[] starts, long[] ends, double reported) {
+		Result r = new ScheduleVerifier(instance).check(solver, starts, ends, reported);
+		if (dataset_id == 1)
+			r.reference = INFO.KNOWN_OPTIMUM;
+		return record(r);
+	}
+
+	/* Prints a failed check and keeps the result for the report. */
+	static Result record(Result r) {
+		if (!r.status().equals("OK"))
+			System.out.println("Schedule check " + r.status() + " for " + r.instance + ": " + r.firstViolation + " makespan " + r.makespan + " reported " + r.reported);
+		synchronized (audited) {
+			audited.add(r);
+		}
+		return r;
+	}
+
+	/* Appends the audited schedules to results/audit.csv and prints a summary, nothing if no schedule was audited. */
+	public static void report() throws Exception {
+		synchronized (audited) {
+			if (audited.isEmpty())
+				return;
+			int ok = 0, infeasible = 0, mismatched = 0, optimal = 0;
+			boolean header = !new File(Main.RESULTS_PATH + "audit.csv").isFile();
+			try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(Main.RESULTS_PATH + "audit.csv", true), "UTF-8"))) {
+				if (header)
+					writer.println(COLUMNS);
+				for (Result r : audited) {
+					writer.println(r.row());
+					switch (r.status()) {
+					case "OK":
+						ok++;
+						break;
+					case "INFEASIBLE":
+						infeasible++;
+						break;
+					default:
+						mismatched++;
+					}
+					if (r.reference >= 0 && r.makespan == r.reference)
+						optimal++;
+				}
+			}
+			System.out.println("Schedule audit: " + audited.size() + " schedules, " + ok + " ok, " + infeasible + " infeasible, " + mismatched
+					+ " with a wrong makespan" + (optimal > 0 ? ", " + optimal + " at the known optimum" : "") + " (" + Main.RESULTS_PATH + "audit.csv)");
+			audited.clear();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package cp_scheduling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpModelProto;
+import com.google.ortools.sat.CpSolver;
+import com.google.ortools.sat.DecisionStrategyProto;
+import com.google.ortools.sat.SatParameters;
+
+import ilog.concert.IloException;
+import ilog.concert.IloIntervalSequenceVar;
+import ilog.cp.IloCP;
+import ilog.cp.IloSearchPhase;
+
+/*
+ * Search strategies of the Advanced encoders, selected by the strategy option:
+ *
+ *   0  solver defaults
+ *   1  bottleneck machines first, earliest start first: CP-SAT branches on the
+ *      start variables of the machines in bottleneck order, lowest minimum
+ *      first, and CP Optimizer sequences the machines in that order, one
+ *      search phase per machine
+ *   2  bottleneck machines first, least slack first: CP-SAT takes the start
+ *      variable with the smallest domain, ties in bottleneck order, and CP
+ *      Optimizer sequences the bottleneck machines (bound within 10% of the
+ *      largest) in one phase and then the others
+ *
+ * The bottleneck order ranks machines by their lower bound: smallest head of
+ * their operations, plus their load, plus smallest tail, ties by load.
+ */
+public class SearchStrategy {
+
+	static final String[] NAMES = { "default", "bottleneck-earliest-start", "bottleneck-min-slack" };
+
+	public static int id() {
+		int id = Integer.parseInt(Main.option("strategy", "0"));
+		if (id < 0 || id >= NAMES.length)
+			throw new IllegalArgumentException("Unknown strategy " + id + ", expected 0 to " + (NAMES.length - 1));
+		return id;
+	}
+
+	/* machine lower bounds: smallest head + load + smallest tail */
+	static long[] machineBounds(JobShopInstance instance) {
+		long[] head = new long[instance.nMachines];
+		long[] tail = new long[instance.nMachines];
+		Arrays.fill(head, Long.MAX_VALUE);
+		Arrays.fill(tail, Long.MAX_VALUE);
+		for (int i = 0; i < instance.nJobs; i++) {
+			long h = 0;
+			for (int o = instance.jobStart[i]; o < instance.jobStart[i + 1]; o++) {
+				head[instance.machine[o]] = Math.min(head[instance.machine[o]], h);
+				h += instance.duration[o];
+			}
+			long t = 0;
+			for (int o = instance.jobStart[i + 1] - 1; o >= instance.jobStart[i]; o--) {
+				tail[instance.machine[o]] = Math.min(tail[instance.machine[o]], t);
+				t += instance.duration[o];
+			}
+		}
+		long[] load = instance.machineLoads();
+		long[] bound = new long[instance.nMachines];
+		for (int m = 0; m < instance.nMachines; m++)
+			bound[m] = load[m] == 0 && head[m] == Long.MAX_VALUE ? 0 : head[m] + load[m] + tail[m];
+		return bound;
+	}
+
+	/* machines by decreasing bound, then decreasing load, then index */
+	static int[] bottleneckOrder(JobShopInstance instance) {
+		long[] bound = machineBounds(instance);
+		long[] load = instance.machineLoads();
+		Integer[] order = new Integer[instance.nMachines];
+		for (int m = 0; m < order.length; m++)
+			order[m] = m;
+		Arrays.sort(order, (a, b) -> bound[a] != bound[b] ? Long.compare(bound[b], bound[a])
+				: load[a] != load[b] ? Long.compare(load[b], load[a]) : Integer.compare(a, b));
+		int[] result = new int[order.length];
+		for (int m = 0; m < order.length; m++)
+			result[m] = order[m];
+		return result;
+	}
+
+	/* Adds the decision strategy of id to a CP-SAT model whose start variables are startVars. */
+	public static void apply(int id, CpModel model, CpSolver solver, JobShopInstance instance, int[] startVars, int n_workers) {
+		if (id == 0)
+			return;
+		int[][] byMachine = instance.operationsByMachine();
+		DecisionStrategyProto.Builder strategy = DecisionStrategyProto.newBuilder()
+				.setVariableSelectionStrategy(id == 1 ? DecisionStrategyProto.VariableSelectionStrategy.CHOOSE_LOWEST_MIN
+						: DecisionStrategyProto.VariableSelectionStrategy.CHOOSE_MIN_DOMAIN_SIZE)
+				.setDomainReductionStrategy(DecisionStrategyProto.DomainReductionStrategy.SELECT_MIN_VALUE);
+		for (int m : bottleneckOrder(instance))
+			for (int o : byMachine[m])
+				strategy.addVariables(startVars[o]);
+		CpModelProto.Builder proto = model.getBuilder();
+		proto.addSearchStrategy(strategy);
+		// several workers keep their portfolio, one of them follows the strategy
+		if (n_workers == 1)
+			solver.getParameters().setSearchBranching(SatParameters.SearchBranching.FIXED_SEARCH);
+	}
+
+	/*
+	 * Search phases of id for CP Optimizer over the sequence variables of the
+	 * machines, sequences[m] being the one of machine m. Null for id 0.
+	 */
+	public static IloSearchPhase[] phases(int id, IloCP cp, IloIntervalSequenceVar[] sequences, JobShopInstance instance) throws IloException {
+		if (id == 0)
+			return null;
+		int[] order = bottleneckOrder(instance);
+		List<IloSearchPhase> phases = new ArrayList<IloSearchPhase>();
+		if (id == 1) {
+			for (int m : order)
+				phases.add(cp.searchPhase(new IloIntervalSequenceVar[] { sequences[m] }));
+		} else {
+			long[] bound = machineBounds(instance);
+			long threshold = bound[order[0]] - bound[order[0]] / 10;
+			List<IloIntervalSequenceVar> bottleneck = new ArrayList<IloIntervalSequenceVar>();
+			List<IloIntervalSequenceVar> others = new ArrayList<IloIntervalSequenceVar>();
+			for (int m : order)
+				(bound[m] >= threshold ? bottleneck : others).add(sequences[m]);
+			phases.add(cp.searchPhase(bottleneck.toArray(new IloIntervalSequenceVar[0])));
+			if (!others.isEmpty())
+				phases.add(cp.searchPhase(others.toArray(new IloIntervalSequenceVar[0])));
+		}
+		return phases.toArray(new IloSearchPhase[0]);
+	}
+}
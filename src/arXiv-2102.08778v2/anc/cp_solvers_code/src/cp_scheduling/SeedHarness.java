@@ -0,0 +1,263 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+import ilog.cp.IloCP;
+
+/*
+ * Multi-seed runs of the encoders. CP-SAT with several workers, and CP
+ * Optimizer, are not deterministic: one run per instance is not enough to
+ * tell two encoders apart. Every instance of the folder is solved by every
+ * encoder of seed_encoders once per seed in seed_base .. seed_base + seeds - 1
+ * (given to the solvers as random_seed), and the harness writes
+ *
+ *   Seeds_<folder>.csv          one row per run: objective, bound, solve time,
+ *                               time to target and final gap
+ *   Seeds_<folder>_summary.csv  per instance and encoder, median, interquartile
+ *                               range and bootstrap confidence interval of the
+ *                               median of time to target and of final gap
+ *   Seeds_<folder>_profile.csv  Dolan-More performance profiles of the median
+ *                               time to target: for each ratio tau, the share
+ *                               of instances an encoder brings to the target
+ *                               within tau times the time of the best encoder
+ *
+ * The reference of an instance is the target option, the known optimum on the
+ * known-optima dataset, or else the best objective of all its runs. Time to
+ * target is the solve time of the first incumbent within seed_target_gap of
+ * the reference, infinite when there is none. The Advanced encoders report
+ * every incumbent, the others only their final solution.
+ *
+ * The resampling indices of the bootstrap are drawn from a stream of its own
+ * for every instance and encoder, derived from seed_base, so the intervals of
+ * two encoders are independent estimates and not a paired comparison, even
+ * though both encoders run the same solver seeds.
+ */
+public class SeedHarness {
+
+	static final String COLUMNS = "instance;encoder;seed;objective;bound;solve_s;time_to_target_s;final_gap";
+	static final String SUMMARY_COLUMNS = "instance;encoder;runs;reached;ttt_median;ttt_q1;ttt_q3;ttt_ci_low;ttt_ci_high;gap_median;gap_q1;gap_q3;gap_ci_low;gap_ci_high";
+	/* times below this are equal, so that instant solutions do not give infinite ratios */
+	static final double TIME_RESOLUTION = 1e-3;
+
+	/* the incumbents of one run, kept in memory instead of being published */
+	static class Trace extends Telemetry.Run {
+		final int seed;
+		private double[] times = new double[16];
+		private double[] values = new double[16];
+		private int n;
+		double objective = Double.NaN;
+		double bound = Double.NaN;
+		double solveTime = Double.NaN;
+		double timeToTarget = Double.POSITIVE_INFINITY;
+		double gap = Double.NaN;
+
+		Trace(String instance, String encoder, int seed) {
+			super(null, -1, instance, encoder, Double.NaN);
+			this.seed = seed;
+		}
+
+		@Override
+		public synchronized void solution(double objective, double bound, double wallTime, double deterministicTime, long conflicts, long branches, String worker) {
+			if (n == times.length) {
+				times = Arrays.copyOf(times, 2 * n);
+				values = Arrays.copyOf(values, 2 * n);
+			}
+			times[n] = wallTime;
+			values[n] = objective;
+			n++;
+		}
+
+		@Override
+		public void end(double objective, double bound, double wallTime) {
+		}
+
+		synchronized void evaluate(double reference, double within) {
+			if (n == 0 && objective > 0)
+				solution(objective, bound, solveTime, Double.NaN, 0, 0, null);
+			for (int k = 0; k < n; k++)
+				if (Telemetry.gap(values[k], reference) <= within) {
+					timeToTarget = Math.max(TIME_RESOLUTION, times[k]);
+					break;
+				}
+			gap = objective > 0 ? Telemetry.gap(objective, reference) : Double.NaN;
+		}
+
+		String row() {
+			return solver + ";" + seed + ";" + objective + ";" + bound + ";" + solveTime + ";" + timeToTarget + ";" + gap;
+		}
+	}
+
+	public static void scheduleFromDirectory(int dataset_id, String foldername, int timeout, int n_workers) throws Exception {
+		int seeds = Integer.parseInt(Main.option("seeds", "5"));
+		int seedBase = Integer.parseInt(Main.option("seed_base", "1"));
+		String[] encoders = Main.option("seed_encoders", "ORT_Adv,CPO_Adv").split(",");
+		double within = Double.parseDouble(Main.option("seed_target_gap", "0.01"));
+		int resamples = Integer.parseInt(Main.option("seed_bootstrap", "2000"));
+		// every seed is a new run
+		Properties runOptions = new Properties();
+		runOptions.setProperty("store", "off");
+		String inFile = INFO.dataset_folder[dataset_id] + foldername + "/";
+		String outFile = "Seeds_" + INFO.dataset_folder[dataset_id].substring(15, 20) + "_" + foldername + "_" + timeout + "_" + n_workers;
+		System.out.println("Multi-seed runs of " + String.join(",", encoders) + " with seeds " + seedBase + ".." + (seedBase + seeds - 1) + ":\ninput= "
+				+ inFile + "\noutput= " + outFile + ".csv\ntimeout= " + timeout + "\nworkers= " + n_workers);
+
+		PrintWriter runs = new PrintWriter(Main.RESULTS_PATH + outFile + ".csv", "UTF-8");
+		runs.println(COLUMNS);
+		PrintWriter summary = new PrintWriter(Main.RESULTS_PATH + outFile + "_summary.csv", "UTF-8");
+		summary.println(SUMMARY_COLUMNS);
+		List<double[]> medians = new ArrayList<double[]>();
+		File[] files = new File(inFile).listFiles();
+		Arrays.sort(files);
+		for (File file : files)
+			if (file.isFile()) {
+				String filename = file.getName();
+				Trace[][] traces = new Trace[encoders.length][seeds];
+				double best = Double.POSITIVE_INFINITY;
+				for (int e = 0; e < encoders.length; e++) {
+					// the naive encoders only read the Taillard layout
+					if (dataset_id == 1 && !encoders[e].endsWith("_Adv"))
+						continue;
+					for (int s = 0; s < seeds; s++) {
+						Trace trace = new Trace(filename, encoders[e], seedBase + s);
+						runOptions.setProperty("random_seed", Integer.toString(trace.seed));
+						System.out.println("Solving instance " + filename + " with " + encoders[e] + ", seed " + trace.seed);
+						String encoder = encoders[e];
+						Main.withOptions(runOptions, () -> {
+							solve(trace, encoder, dataset_id, inFile, filename, timeout, n_workers);
+							return null;
+						});
+						traces[e][s] = trace;
+						if (trace.objective > 0)
+							best = Math.min(best, trace.objective);
+					}
+				}
+
+				double target = Telemetry.target(dataset_id);
+				double reference = Double.isNaN(target) ? best : target;
+				double[] instanceMedians = new double[encoders.length];
+				Arrays.fill(instanceMedians, Double.POSITIVE_INFINITY);
+				for (int e = 0; e < encoders.length; e++) {
+					if (traces[e][0] == null)
+						continue;
+					double[] ttt = new double[seeds];
+					double[] gap = new double[seeds];
+					int reached = 0;
+					for (int s = 0; s < seeds; s++) {
+						Trace trace = traces[e][s];
+						trace.evaluate(reference, within);
+						runs.println(filename + ";" + trace.row());
+						ttt[s] = trace.timeToTarget;
+						// a run without solution is as far as can be from the reference
+						gap[s] = Double.isNaN(trace.gap) ? 1 : trace.gap;
+						if (trace.timeToTarget < Double.POSITIVE_INFINITY)
+							reached++;
+					}
+					// a stream per instance and encoder, see the class comment
+					SplittableRandom random = new SplittableRandom(KnownOptimaGenerator.mix(KnownOptimaGenerator.mix(seedBase, e), filename.hashCode()));
+					double[] tttCi = bootstrapMedian(ttt, resamples, random);
+					double[] gapCi = bootstrapMedian(gap, resamples, random);
+					Arrays.sort(ttt);
+					Arrays.sort(gap);
+					instanceMedians[e] = quantile(ttt, 0.5);
+					summary.println(filename + ";" + encoders[e] + ";" + seeds + ";" + reached + ";" + quantile(ttt, 0.5) + ";" + quantile(ttt, 0.25) + ";"
+							+ quantile(ttt, 0.75) + ";" + tttCi[0] + ";" + tttCi[1] + ";" + quantile(gap, 0.5) + ";" + quantile(gap, 0.25) + ";"
+							+ quantile(gap, 0.75) + ";" + gapCi[0] + ";" + gapCi[1]);
+				}
+				runs.flush();
+				summary.flush();
+				medians.add(instanceMedians);
+			}
+		runs.close();
+		summary.close();
+		writeProfile(Main.RESULTS_PATH + outFile + "_profile.csv", encoders, medians);
+	}
+
+	static void solve(Trace trace, String encoder, int dataset_id, String folder, String filename, int timeout, int n_workers) throws Exception {
+		String row;
+		if (encoder.equals("ORT_Adv"))
+			row = SchedJobShopORTools.scheduleFromFile(dataset_id, folder, filename, timeout, false, n_workers, null, trace);
+		else if (encoder.equals("CPO_Adv"))
+			row = SchedJobShop.scheduleFromFile(dataset_id, folder, filename, timeout, IloCP.ParameterValues.Restart, 100, 1.15, n_workers, trace);
+		else
+			row = ScalingBenchmark.solve(encoder, dataset_id, folder, filename, timeout, n_workers);
+		String[] cols = row.split(";", -1);
+		if (cols.length < 3)
+			return;
+		trace.objective = ScalingBenchmark.number(cols[1]);
+		trace.solveTime = ScalingBenchmark.number(cols[2]);
+		int b = ScalingBenchmark.boundColumn(encoder);
+		if (trace.objective > 0 && b > 0 && b < cols.length)
+			trace.bound = ScalingBenchmark.number(cols[b]);
+	}
+
+	/* q-quantile of sorted values, linear between neighbours */
+	static double quantile(double[] sorted, double q) {
+		double h = q * (sorted.length - 1);
+		int lo = (int) Math.floor(h);
+		int hi = Math.min(lo + 1, sorted.length - 1);
+		double a = sorted[lo];
+		double b = sorted[hi];
+		if (h == lo || a == b)
+			return a;
+		return Double.isInfinite(b) ? b : a + (h - lo) * (b - a);
+	}
+
+	/* 95% percentile bootstrap confidence interval of the median */
+	static double[] bootstrapMedian(double[] values, int resamples, SplittableRandom random) {
+		double[] medians = new double[resamples];
+		double[] sample = new double[values.length];
+		for (int r = 0; r < resamples; r++) {
+			for (int k = 0; k < sample.length; k++)
+				sample[k] = values[random.nextInt(values.length)];
+			Arrays.sort(sample);
+			medians[r] = quantile(sample, 0.5);
+		}
+		Arrays.sort(medians);
+		return new double[] { quantile(medians, 0.025), quantile(medians, 0.975) };
+	}
+
+	/*
+	 * Dolan-More profile: rho_e(tau) is the share of instances where the median
+	 * time to target of e is at most tau times the best median of all encoders,
+	 * tau running over every ratio that occurs.
+	 */
+	static void writeProfile(String path, String[] encoders, List<double[]> medians) throws Exception {
+		List<double[]> ratios = new ArrayList<double[]>();
+		TreeSet<Double> taus = new TreeSet<Double>();
+		taus.add(1.0);
+		for (double[] t : medians) {
+			double best = Double.POSITIVE_INFINITY;
+			for (double v : t)
+				best = Math.min(best, v);
+			double[] r = new double[t.length];
+			for (int e = 0; e < t.length; e++) {
+				r[e] = best < Double.POSITIVE_INFINITY ? t[e] / best : Double.POSITIVE_INFINITY;
+				if (r[e] < Double.POSITIVE_INFINITY)
+					taus.add(r[e]);
+			}
+			ratios.add(r);
+		}
+		try (PrintWriter out = new PrintWriter(path, "UTF-8")) {
+			out.println("tau;" + String.join(";", encoders));
+			for (double tau : taus) {
+				StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%.6g", tau));
+				for (int e = 0; e < encoders.length; e++) {
+					int within = 0;
+					for (double[] r : ratios)
+						if (r[e] <= tau)
+							within++;
+					line.append(';').append(ratios.isEmpty() ? 0 : (double) within / ratios.size());
+				}
+				out.println(line);
+			}
+		}
+	}
+}
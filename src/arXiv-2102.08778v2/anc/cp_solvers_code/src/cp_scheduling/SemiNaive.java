@@ -106,11 +106,14 @@ public class SemiNaive {
 		int nbJobs, nbMachines;
 
 		IloCP cp = new IloCP();
+		Profiler profiler = new Profiler("CPO_SemiNaive", filename);
+		profiler.phase("variables");
 		DataReader data = new DataReader(folder + filename);
 		try {
 			nbJobs = data.next();
 			nbMachines = data.next();
 			List<IloIntExpr> ends = new ArrayList<>();
+			List<IloIntervalVar> operations = new ArrayList<>();
 			IntervalVarList[] machines = new IntervalVarList[nbMachines];
 			for (int j = 0; j < nbMachines; j++)
 				machines[j] = new IntervalVarList();
@@ -122,6 +125,7 @@ public class SemiNaive {
 					m = data.next();
 					d = data.next();
 					IloIntervalVar ti = cp.intervalVar(d);
+					operations.add(ti);
 					machines[m].add(ti);
 					if (j > 0) {
 						// cp.add(cp.endBeforeStart(prec, ti));
@@ -137,6 +141,7 @@ public class SemiNaive {
 			 * cp.add(cp.noOverlap(machines[j].toArray()));
 			 */
 
+			profiler.phase("disjunctions");
 			for (int m = 0; m < nbMachines; m++) {
 				for (int x = 0; x < nbJobs - 1; x++) {
 					for (int y = x + 1; y < nbJobs; y++) {
@@ -154,17 +159,29 @@ public class SemiNaive {
 			cp.setParameter(IloCP.IntParam.Workers, 1);
 			cp.setParameter(IloCP.DoubleParam.TimeLimit, timeout);
 			cp.setParameter(IloCP.IntParam.LogVerbosity, IloCP.ParameterValues.Terse);
-	        cp.setParameter(IloCP.DoubleParam.RelativeOptimalityTolerance, 0);
+	        cp.setParameter(IloCP.DoubleParam.RelativeOptimalityTolerance, Main.gap());
+	        if (Main.seed() >= 0)
+	        	cp.setParameter(IloCP.IntParam.RandomSeed, Main.seed());
 	        
 			IloObjective objective = cp.minimize(cp.max(arrayFromList(ends)));
 			cp.add(objective);
 
-			 if (cp.solve()) {
+			profiler.end();
+			double instantiation_time = profiler.seconds("variables") + profiler.seconds("disjunctions");
+			profiler.phase("solve");
+			boolean solved = cp.solve();
+			profiler.end();
+			profiler.stats(cp);
+			String stats = profiler.columns(instantiation_time, nbJobs * nbMachines);
+			if (solved && ScheduleVerifier.enabled())
+				ScheduleVerifier.audit(0, folder, filename, "CPO_SemiNaive", SchedJobShop.schedule(cp, operations, new long[operations.size()]),
+						SchedJobShop.ends(cp, operations, new long[operations.size()]), cp.getObjValue());
+			 if (solved) {
 	             System.out.println(filename+";"+cp.getObjValue()+";"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getObjBound()+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches));
-	             return(filename+";"+cp.getObjValue()+";"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getObjBound()+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches));
+	             return(filename+";"+cp.getObjValue()+";"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getObjBound()+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches)+stats);
 	         } else {
 	             System.out.println("No solution found.");
-	             return(filename+";NoSolution;"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches));
+	             return(filename+";NoSolution;"+cp.getInfo(IloCP.DoubleInfo.TotalTime)+";"+cp.getInfo(IloCP.IntInfo.NumberOfBranches)+stats);
 	         }
 		} catch (IloException e) {
 			System.err.println("Error: " + e);
@@ -0,0 +1,170 @@
+package cp_scheduling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+import com.google.ortools.sat.ConstraintProto;
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpModelProto;
+import com.google.ortools.sat.IntegerVariableProto;
+import com.google.ortools.sat.IntervalConstraintProto;
+import com.google.ortools.sat.NoOverlapConstraintProto;
+
+/*
+ * Parallel LeanModelBuilder for the Advanced encoding of very large instances.
+ * The interval and precedence sections are built in shards of consecutive jobs
+ * and the no-overlap section in shards of consecutive machines, as immutable
+ * ConstraintProto messages on a ForkJoinPool. Every variable and constraint
+ * index is fixed before the shards start (same layout as LeanModelBuilder,
+ * the size variables being numbered by a sequential pass), so merging is just
+ * appending the shards in order: the model is message for message the one of
+ * LeanModelBuilder, whatever the number of threads.
+ */
+public class ShardedModelBuilder {
+
+	/* operations per shard, enough to amortise the task overhead */
+	static final int SHARD_OPS = 1 << 15;
+
+	private static ForkJoinPool shared;
+
+	private final CpModelProto.Builder proto;
+	private final JobShopInstance instance;
+	private final ForkJoinPool pool;
+	private final long horizon;
+
+	public ShardedModelBuilder(CpModel model, JobShopInstance instance, ForkJoinPool pool) {
+		this.proto = model.getBuilder();
+		this.instance = instance;
+		this.pool = pool;
+		this.horizon = instance.horizon();
+	}
+
+	public static boolean enabled() {
+		return Main.option("builder", "default").equals("sharded");
+	}
+
+	/* Pool of the builder_threads option, the common pool (all cores) by default. */
+	public static synchronized ForkJoinPool pool() {
+		int n = Integer.parseInt(Main.option("builder_threads", "0"));
+		if (n <= 0)
+			return ForkJoinPool.commonPool();
+		if (shared == null)
+			shared = new ForkJoinPool(n);
+		return shared;
+	}
+
+	/* Advanced encoding, returns the start variable indices. */
+	public int[] advanced(Profiler profiler) {
+		int n = instance.nOps;
+		profiler.phase("variables");
+		// starts, ends and makespan have the same domain, one immutable message is shared
+		IntegerVariableProto var = IntegerVariableProto.newBuilder().addDomain(0).addDomain(horizon).build();
+		proto.addAllVariables(Collections.nCopies(2 * n + 1, var));
+		int[] sizeVar = sizeVariables();
+
+		int[] jobs = cuts(instance.nJobs, i -> instance.jobStart[i + 1] - instance.jobStart[i]);
+		append(shards(jobs.length - 1, s -> intervals(jobs[s], jobs[s + 1], sizeVar)));
+		append(shards(jobs.length - 1, s -> precedences(jobs[s], jobs[s + 1])));
+
+		profiler.phase("noOverlap");
+		int[][] byMachine = instance.operationsByMachine();
+		int[] machines = cuts(instance.nMachines, m -> byMachine[m].length);
+		append(shards(machines.length - 1, s -> noOverlaps(machines[s], machines[s + 1], byMachine)));
+
+		profiler.phase("objective");
+		LeanModelBuilder.objective(proto, instance);
+		int[] index = new int[n];
+		for (int o = 0; o < n; o++)
+			index[o] = LeanModelBuilder.start(instance, o);
+		return index;
+	}
+
+	/* one fixed variable per distinct duration, numbered by first occurrence as in LeanModelBuilder */
+	private int[] sizeVariables() {
+		int maxDuration = 0;
+		for (int d : instance.duration)
+			maxDuration = Math.max(maxDuration, d);
+		int[] sizeVar = new int[maxDuration + 1];
+		Arrays.fill(sizeVar, -1);
+		for (int d : instance.duration)
+			if (sizeVar[d] < 0) {
+				proto.addVariables(IntegerVariableProto.newBuilder().addDomain(d).addDomain(d));
+				sizeVar[d] = proto.getVariablesCount() - 1;
+			}
+		return sizeVar;
+	}
+
+	/* boundaries 0 = c0 < c1 < ... = n of consecutive ranges holding about SHARD_OPS operations each */
+	static int[] cuts(int n, IntUnaryOperator ops) {
+		List<Integer> cuts = new ArrayList<Integer>();
+		cuts.add(0);
+		long inShard = 0;
+		for (int k = 0; k < n; k++) {
+			inShard += ops.applyAsInt(k);
+			if (inShard >= SHARD_OPS && k + 1 < n) {
+				cuts.add(k + 1);
+				inShard = 0;
+			}
+		}
+		cuts.add(n);
+		int[] c = new int[cuts.size()];
+		for (int k = 0; k < c.length; k++)
+			c[k] = cuts.get(k);
+		return c;
+	}
+
+	private ConstraintProto[][] shards(int nShards, IntFunction<ConstraintProto[]> shard) {
+		List<ForkJoinTask<ConstraintProto[]>> tasks = new ArrayList<ForkJoinTask<ConstraintProto[]>>(nShards);
+		for (int s = 0; s < nShards; s++) {
+			final int id = s;
+			tasks.add(pool.submit(() -> shard.apply(id)));
+		}
+		ConstraintProto[][] result = new ConstraintProto[nShards][];
+		for (int s = 0; s < nShards; s++)
+			result[s] = tasks.get(s).join();
+		return result;
+	}
+
+	private void append(ConstraintProto[][] shards) {
+		for (ConstraintProto[] shard : shards)
+			proto.addAllConstraints(Arrays.asList(shard));
+	}
+
+	/* the interval of o is constraint o, job ranges are contiguous operation ranges */
+	private ConstraintProto[] intervals(int fromJob, int toJob, int[] sizeVar) {
+		int first = instance.jobStart[fromJob];
+		ConstraintProto[] c = new ConstraintProto[instance.jobStart[toJob] - first];
+		for (int k = 0; k < c.length; k++) {
+			int o = first + k;
+			c[k] = ConstraintProto.newBuilder().setInterval(IntervalConstraintProto.newBuilder().setStart(LeanModelBuilder.start(instance, o))
+					.setEnd(LeanModelBuilder.end(instance, o)).setSize(sizeVar[instance.duration[o]])).build();
+		}
+		return c;
+	}
+
+	private ConstraintProto[] precedences(int fromJob, int toJob) {
+		List<ConstraintProto> c = new ArrayList<ConstraintProto>(instance.jobStart[toJob] - instance.jobStart[fromJob]);
+		for (int i = fromJob; i < toJob; i++)
+			for (int o = instance.jobStart[i] + 1; o < instance.jobStart[i + 1]; o++)
+				c.add(ConstraintProto.newBuilder().setLinear(LeanModelBuilder.difference(LeanModelBuilder.end(instance, o - 1),
+						LeanModelBuilder.start(instance, o), -horizon, 0)).build());
+		return c.toArray(new ConstraintProto[c.size()]);
+	}
+
+	private ConstraintProto[] noOverlaps(int fromMachine, int toMachine, int[][] byMachine) {
+		ConstraintProto[] c = new ConstraintProto[toMachine - fromMachine];
+		for (int m = fromMachine; m < toMachine; m++) {
+			NoOverlapConstraintProto.Builder noOverlap = NoOverlapConstraintProto.newBuilder();
+			for (int o : byMachine[m])
+				noOverlap.addIntervals(o);
+			c[m - fromMachine] = ConstraintProto.newBuilder().setNoOverlap(noOverlap).build();
+		}
+		return c;
+	}
+}
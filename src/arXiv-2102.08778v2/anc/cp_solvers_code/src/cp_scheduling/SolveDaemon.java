@@ -0,0 +1,293 @@
+package cp_scheduling;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ilog.cp.IloCP;
+
+/*
+ * Resident solver: one JVM with the native libraries loaded and CP Optimizer
+ * initialised once, serving solve requests on a loopback port. Requests are
+ * lines of text, several of them can be sent on one connection:
+ *
+ *   solve <mode> <dataset> <instance path> [timeout] [workers] [key=value ...]
+ *   inline <mode> <dataset> [timeout] [workers] [key=value ...]
+ *     followed by the lines of the instance and a line "end"
+ *   stats
+ *   shutdown
+ *
+ * mode is 0 (ORTools Advanced), 1 (CPOptimizer Advanced), 2 (ORTools Naive) or
+ * 3 (CPOptimizer Naive); timeout and workers default to those given to Main,
+ * and the key=value options of a request override those of Main for that
+ * request only. Every request is answered at once with "queued <id>" (or
+ * "busy <id>" when the queue is full), then the Advanced encodings stream
+ * "incumbent <id> <objective> <bound> <seconds>" lines, and the request ends
+ * with "result <id> <milliseconds> <result row>" or "error <id> <message>".
+ *
+ * Requests run on daemon_threads threads (default 1) with at most
+ * daemon_queue (64) waiting. Inline instances are written once to
+ * daemon_cache (./results/daemon/), named after the SHA-256 of their content,
+ * so the results store recognises repeated requests. The daemon_instances
+ * (64) most recently used instances are kept in memory, parsed for the
+ * ORTools Advanced encoding, the verifier and the strategies, and as the
+ * numbers of the file for the other encoders, see JobShopInstance.enableCache.
+ * With several threads the heap and resident set peaks of the stats option
+ * are those of the whole process, so they are not reported, see
+ * Profiler.concurrent.
+ */
+public class SolveDaemon {
+
+	private final ServerSocket server;
+	private final ThreadPoolExecutor executor;
+	private final int timeout;
+	private final int n_workers;
+	private final File cacheDir;
+	private final AtomicInteger ids = new AtomicInteger();
+	private final long[] latencies = new long[4096];
+	private int served;
+	private volatile boolean running = true;
+
+	/* streams the incumbents of a request to its client */
+	static class Stream extends Telemetry.Run {
+		final Connection connection;
+		final int request;
+
+		Stream(Connection connection, int request, String instance, String encoder) {
+			super(null, -1, instance, encoder, Double.NaN);
+			this.connection = connection;
+			this.request = request;
+		}
+
+		@Override
+		public void solution(double objective, double bound, double wallTime, double deterministicTime, long conflicts, long branches, String worker) {
+			connection.send("incumbent " + request + " " + objective + " " + bound + " " + wallTime);
+		}
+
+		@Override
+		public void end(double objective, double bound, double wallTime) {
+		}
+	}
+
+	/* one client, its replies are written under the lock of the connection */
+	static class Connection {
+		final Socket socket;
+		final PrintWriter out;
+
+		Connection(Socket socket) throws Exception {
+			this.socket = socket;
+			this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+		}
+
+		synchronized void send(String line) {
+			out.println(line);
+			out.flush();
+		}
+	}
+
+	SolveDaemon(int port, int timeout, int n_workers) throws Exception {
+		this.timeout = timeout;
+		this.n_workers = n_workers;
+		int threads = Integer.parseInt(Main.option("daemon_threads", "1"));
+		Profiler.concurrent = threads > 1;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(Integer.parseInt(Main.option("daemon_queue", "64"))));
+		this.cacheDir = new File(Main.option("daemon_cache", Main.RESULTS_PATH + "daemon/"));
+		cacheDir.mkdirs();
+		this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+	}
+
+	/* Loads the solver libraries, then serves requests until a shutdown request. */
+	public static void run(String port, int timeout, int n_workers) throws Exception {
+		long start = System.nanoTime();
+		warmUp();
+		JobShopInstance.enableCache(Integer.parseInt(Main.option("daemon_instances", "64")));
+		SolveDaemon daemon = new SolveDaemon(Integer.parseInt(port), timeout, n_workers);
+		System.out.println("Solver daemon warmed up in " + (System.nanoTime() - start) / 1000000 + " ms, listening on "
+				+ daemon.server.getInetAddress().getHostAddress() + ":" + daemon.server.getLocalPort());
+		daemon.serve();
+	}
+
+	/* static initialisers load jniortools, the first IloCP initialises CP Optimizer */
+	static void warmUp() throws Exception {
+		Class.forName(SchedJobShopORTools.class.getName());
+		Class.forName(ORToolsNaive.class.getName());
+		new IloCP().end();
+	}
+
+	void serve() throws Exception {
+		while (running) {
+			Socket socket;
+			try {
+				socket = server.accept();
+			} catch (Exception e) {
+				if (!running)
+					break;
+				throw e;
+			}
+			Thread reader = new Thread(() -> read(socket), "daemon-client-" + socket.getPort());
+			reader.setDaemon(true);
+			reader.start();
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		System.out.println("Solver daemon stopped after " + served + " requests");
+	}
+
+	private void read(Socket socket) {
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+			Connection connection = new Connection(socket);
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] words = line.trim().split("\\s+");
+				switch (words[0]) {
+				case "":
+					break;
+				case "solve":
+					submit(connection, words, 4, words.length > 3 ? words[3] : null);
+					break;
+				case "inline":
+					submit(connection, words, 3, inline(in));
+					break;
+				case "stats":
+					connection.send(stats());
+					break;
+				case "shutdown":
+					connection.send("bye");
+					running = false;
+					server.close();
+					return;
+				default:
+					connection.send("error - unknown request " + words[0]);
+				}
+			}
+		} catch (Exception e) {
+			System.err.println("Daemon client error: " + e);
+		} finally {
+			try {
+				socket.close();
+			} catch (Exception e) {
+			}
+		}
+	}
+
+	/* writes the instance lines up to "end" to the cache, once per content */
+	private String inline(BufferedReader in) throws Exception {
+		StringBuilder data = new StringBuilder();
+		String line;
+		while ((line = in.readLine()) != null && !line.trim().equals("end"))
+			data.append(line).append('\n');
+		byte[] bytes = data.toString().getBytes(StandardCharsets.UTF_8);
+		File file = new File(cacheDir, "inline_" + ResultsStore.hash(bytes) + ".txt");
+		synchronized (this) {
+			if (!file.isFile())
+				try (FileOutputStream out = new FileOutputStream(file)) {
+					out.write(bytes);
+				}
+		}
+		return file.getPath();
+	}
+
+	/* words[first..] are the optional timeout, workers and options */
+	private void submit(Connection connection, String[] words, int first, String path) {
+		int id = ids.incrementAndGet();
+		if (path == null || words.length < 3) {
+			connection.send("error " + id + " expected a mode, a dataset and an instance");
+			return;
+		}
+		int mode, dataset;
+		int requestTimeout = timeout, requestWorkers = n_workers;
+		Properties options = new Properties();
+		try {
+			mode = Integer.parseInt(words[1]);
+			dataset = Integer.parseInt(words[2]);
+			int positional = 0;
+			for (int w = first; w < words.length; w++) {
+				int eq = words[w].indexOf('=');
+				if (eq > 0)
+					options.setProperty(words[w].substring(0, eq), words[w].substring(eq + 1));
+				else if (positional++ == 0)
+					requestTimeout = Integer.parseInt(words[w]);
+				else
+					requestWorkers = Integer.parseInt(words[w]);
+			}
+		} catch (NumberFormatException e) {
+			connection.send("error " + id + " " + e.getMessage());
+			return;
+		}
+		if (mode < 0 || mode > 3) {
+			connection.send("error " + id + " mode " + mode + " is not served, expected 0 to 3");
+			return;
+		}
+		long queued = System.nanoTime();
+		int t = requestTimeout, w = requestWorkers;
+		// the first reply of the worker waits for "queued"
+		synchronized (connection) {
+			try {
+				executor.execute(() -> solve(connection, id, mode, dataset, path, t, w, options, queued));
+				connection.send("queued " + id);
+			} catch (RejectedExecutionException e) {
+				connection.send("busy " + id);
+			}
+		}
+	}
+
+	private void solve(Connection connection, int id, int mode, int dataset, String path, int timeout, int n_workers, Properties options, long queued) {
+		int slash = path.lastIndexOf('/');
+		String folder = path.substring(0, slash + 1);
+		String filename = path.substring(slash + 1);
+		Main.requestOptions.set(options);
+		try {
+			String row;
+			switch (mode) {
+			case 0:
+				row = SchedJobShopORTools.scheduleFromFile(dataset, folder, filename, timeout, false, n_workers, null, new Stream(connection, id, filename, "ORT_Adv"),
+						JobShopInstance.read(dataset, folder, filename));
+				break;
+			case 1:
+				row = SchedJobShop.scheduleFromFile(dataset, folder, filename, timeout, IloCP.ParameterValues.Restart, 100, 1.15, n_workers, new Stream(connection, id, filename, "CPO_Adv"));
+				break;
+			case 2:
+				row = ORToolsNaive.scheduleFromFile(dataset, folder, filename, timeout, false);
+				break;
+			default:
+				row = NaiveJobShop.scheduleFromFile(folder, filename, timeout);
+			}
+			long ms = (System.nanoTime() - queued) / 1000000;
+			latency(ms);
+			connection.send("result " + id + " " + ms + " " + row);
+		} catch (Throwable e) {
+			connection.send("error " + id + " " + e);
+		} finally {
+			Main.requestOptions.remove();
+		}
+	}
+
+	private synchronized void latency(long ms) {
+		latencies[served % latencies.length] = ms;
+		served++;
+	}
+
+	/* latency percentiles of the last requests, queueing included */
+	synchronized String stats() {
+		int n = Math.min(served, latencies.length);
+		long[] sorted = Arrays.copyOf(latencies, n);
+		Arrays.sort(sorted);
+		return "stats served=" + served + " queued=" + executor.getQueue().size() + " active=" + executor.getActiveCount()
+				+ (n == 0 ? "" : " p50_ms=" + sorted[(n - 1) / 2] + " p90_ms=" + sorted[(int) (0.9 * (n - 1))] + " max_ms=" + sorted[n - 1]);
+	}
+}
@@ -0,0 +1,198 @@
+package cp_scheduling;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import com.google.ortools.sat.ConstraintProto;
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpModelProto;
+import com.google.ortools.sat.CumulativeConstraintProto;
+import com.google.ortools.sat.IntegerVariableProto;
+import com.google.ortools.sat.LinearConstraintProto;
+
+/*
+ * Redundant constraints added to a built Advanced OR-Tools model, whatever
+ * its builder, to help the solver prove bounds. The strengthen option lists
+ * the ones to add (all for every one, off by default):
+ *
+ *   tails       makespan >= start + duration + tail for every operation that
+ *               is not the last of its job, tail being the work left in the job
+ *   heads       start domains cut to [head, horizon - duration - tail], head
+ *               being the work before the operation in its job
+ *   loads       per machine, a variable below every start on the machine and
+ *               makespan >= that variable + load + smallest tail on the machine
+ *   cumulative  all intervals in one cumulative of capacity nMachines
+ *
+ * Variables are found from the start indices returned by the builders, the
+ * makespan from the objective and the intervals from their start variable.
+ */
+public class Strengthening {
+
+	static final String ALL = "tails,heads,loads,cumulative";
+
+	private final Set<String> constraints;
+
+	Strengthening(String list) {
+		constraints = new LinkedHashSet<String>(Arrays.asList((list.equals("all") ? ALL : list).split(",")));
+		for (String c : constraints)
+			if (!Arrays.asList(ALL.split(",")).contains(c))
+				throw new IllegalArgumentException("Unknown strengthening " + c + ", expected some of " + ALL);
+	}
+
+	/* The strengthening of the strengthen option, null when it is off. */
+	public static Strengthening fromOptions() {
+		String list = Main.option("strengthen", "off");
+		return list.equals("off") ? null : new Strengthening(list);
+	}
+
+	/* Adds the constraints to model and returns how many of each were added. */
+	public String apply(CpModel model, JobShopInstance instance, int[] startVars) {
+		CpModelProto.Builder proto = model.getBuilder();
+		int mk = proto.getObjective().getVars(0);
+		IntegerVariableProto mkVar = proto.getVariables(mk);
+		long horizon = mkVar.getDomain(mkVar.getDomainCount() - 1);
+		long[] head = new long[instance.nOps];
+		long[] tail = new long[instance.nOps];
+		for (int i = 0; i < instance.nJobs; i++) {
+			long h = 0;
+			for (int o = instance.jobStart[i]; o < instance.jobStart[i + 1]; o++) {
+				head[o] = h;
+				h += instance.duration[o];
+			}
+			long t = 0;
+			for (int o = instance.jobStart[i + 1] - 1; o >= instance.jobStart[i]; o--) {
+				tail[o] = t;
+				t += instance.duration[o];
+			}
+		}
+		StringBuilder added = new StringBuilder();
+
+		if (constraints.contains("tails")) {
+			int n = 0;
+			for (int o = 0; o < instance.nOps; o++)
+				if (tail[o] > 0) {
+					proto.addConstraints(ConstraintProto.newBuilder().setLinear(LeanModelBuilder.difference(mk, startVars[o], instance.duration[o] + tail[o], horizon)));
+					n++;
+				}
+			added.append("tails=").append(n);
+		}
+
+		if (constraints.contains("heads")) {
+			int n = 0;
+			for (int o = 0; o < instance.nOps; o++) {
+				IntegerVariableProto.Builder var = proto.getVariablesBuilder(startVars[o]);
+				if (var.getDomainCount() != 2)
+					continue;
+				long lb = Math.max(var.getDomain(0), head[o]);
+				long ub = Math.min(var.getDomain(1), horizon - instance.duration[o] - tail[o]);
+				if (lb > var.getDomain(0) || ub < var.getDomain(1)) {
+					var.setDomain(0, lb).setDomain(1, Math.max(lb, ub));
+					n++;
+				}
+			}
+			added.append(added.length() > 0 ? "," : "").append("heads=").append(n);
+		}
+
+		if (constraints.contains("loads")) {
+			int[][] byMachine = instance.operationsByMachine();
+			long[] load = instance.machineLoads();
+			int n = 0;
+			for (int m = 0; m < instance.nMachines; m++) {
+				if (byMachine[m].length == 0)
+					continue;
+				long minHead = Long.MAX_VALUE;
+				long minTail = Long.MAX_VALUE;
+				for (int o : byMachine[m]) {
+					minHead = Math.min(minHead, head[o]);
+					minTail = Math.min(minTail, tail[o]);
+				}
+				// first start on the machine
+				int first = proto.getVariablesCount();
+				proto.addVariables(IntegerVariableProto.newBuilder().addDomain(minHead).addDomain(Math.max(minHead, horizon)));
+				for (int o : byMachine[m])
+					proto.addConstraints(ConstraintProto.newBuilder().setLinear(LeanModelBuilder.difference(first, startVars[o], -horizon, 0)));
+				proto.addConstraints(ConstraintProto.newBuilder().setLinear(LeanModelBuilder.difference(mk, first, load[m] + minTail, horizon)));
+				n++;
+			}
+			added.append(added.length() > 0 ? "," : "").append("loads=").append(n);
+		}
+
+		if (constraints.contains("cumulative")) {
+			int[] intervalOf = intervals(proto, startVars);
+			if (intervalOf == null)
+				added.append(added.length() > 0 ? "," : "").append("cumulative=0 (no intervals)");
+			else {
+				int one = proto.getVariablesCount();
+				proto.addVariables(IntegerVariableProto.newBuilder().addDomain(1).addDomain(1));
+				int capacity = proto.getVariablesCount();
+				proto.addVariables(IntegerVariableProto.newBuilder().addDomain(instance.nMachines).addDomain(instance.nMachines));
+				CumulativeConstraintProto.Builder cumulative = CumulativeConstraintProto.newBuilder().setCapacity(capacity);
+				for (int c : intervalOf)
+					cumulative.addIntervals(c).addDemands(one);
+				proto.addConstraints(ConstraintProto.newBuilder().setCumulative(cumulative));
+				added.append(added.length() > 0 ? "," : "").append("cumulative=1");
+			}
+		}
+		return added.toString();
+	}
+
+	/* interval constraint of every operation, by its start variable, null if one has none */
+	static int[] intervals(CpModelProto.Builder proto, int[] startVars) {
+		int[] byStart = new int[proto.getVariablesCount()];
+		Arrays.fill(byStart, -1);
+		for (int c = 0; c < proto.getConstraintsCount(); c++) {
+			ConstraintProto constraint = proto.getConstraints(c);
+			if (constraint.getConstraintCase() == ConstraintProto.ConstraintCase.INTERVAL)
+				byStart[constraint.getInterval().getStart()] = c;
+		}
+		int[] intervalOf = new int[startVars.length];
+		for (int o = 0; o < startVars.length; o++)
+			if ((intervalOf[o] = byStart[startVars[o]]) < 0)
+				return null;
+		return intervalOf;
+	}
+
+	/*
+	 * Effect of every strengthening on bound proving: each instance of the
+	 * folder is solved with the Advanced encoding once per set of
+	 * strengthen_sets (sets separated by commas, constraints of a set joined by
+	 * +, default off,tails,heads,loads,cumulative,all). The instance is read
+	 * once for all the sets, and the store and strengthen options of the runs
+	 * only apply to this thread, the options of the user being left as given.
+	 */
+	public static void compareFromDirectory(int dataset_id, String foldername, int timeout, int n_workers) throws Exception {
+		String[] sets = Main.option("strengthen_sets", "off,tails,heads,loads,cumulative,all").split(",");
+		String outFile = "ORT_Strengthen_" + INFO.dataset_folder[dataset_id].substring(15, 20) + "_" + foldername + "_" + timeout + "_" + n_workers + ".csv";
+		String inFile = INFO.dataset_folder[dataset_id] + foldername + "/";
+		System.out.println("Comparing strengthenings " + String.join(" ", sets) + ":\ninput= " + inFile + "\noutput= " + outFile + "\ntimeout= " + timeout
+				+ "\nworkers= " + n_workers);
+		// every set is a new run
+		Properties runOptions = new Properties();
+		runOptions.setProperty("store", "off");
+		PrintWriter writer = new PrintWriter(Main.RESULTS_PATH + outFile, "UTF-8");
+		writer.println("instance;strengthening;objective;time;optimal;bound;proof_time");
+		for (File file : new File(inFile).listFiles())
+			if (file.isFile()) {
+				JobShopInstance instance = JobShopInstance.read(dataset_id, inFile, file.getName());
+				for (String set : sets) {
+					runOptions.setProperty("strengthen", set.replace('+', ','));
+					System.out.println("Solving instance" + file.getName() + " with strengthening " + set);
+					String row = Main.withOptions(runOptions,
+							() -> SchedJobShopORTools.scheduleFromFile(dataset_id, inFile, file.getName(), timeout, false, n_workers, null, null, instance));
+					String[] cols = row.split(";", -1);
+					if (cols.length < 7) {
+						writer.println(file.getName() + ";" + set + ";ERROR;;;;");
+						continue;
+					}
+					boolean optimal = cols[3].equals("Yes");
+					writer.println(file.getName() + ";" + set + ";" + cols[1] + ";" + cols[2] + ";" + cols[3] + ";" + cols[6] + ";" + (optimal ? cols[2] : "NaN"));
+					writer.flush();
+				}
+			}
+		writer.close();
+	}
+}
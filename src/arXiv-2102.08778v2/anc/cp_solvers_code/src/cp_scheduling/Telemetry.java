@@ -0,0 +1,269 @@
+package cp_scheduling;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Anytime telemetry of the solvers. Solution callbacks push events into a
+ * bounded lock-free ring buffer of primitive columns, a background thread
+ * drains it into a JSONL file (one event per line) and, when an instance ends,
+ * appends its convergence metrics to a summary CSV: time to first solution,
+ * time to within 1% and 5% of the reference value, and primal integral. The
+ * reference is the target given with the target option, the known optimum on
+ * the known-optima dataset, or else the final bound of the run.
+ *
+ * A full buffer never blocks a solver thread, the event is dropped and counted.
+ */
+public class Telemetry {
+
+	static final int CAPACITY = 1 << 14;
+	static final int SOLUTION = 0;
+	static final int END = 1;
+
+	/* one instance solved by one solver */
+	public static class Run {
+		final Telemetry telemetry;
+		final int id;
+		final String instance;
+		final String solver;
+		final double target;
+
+		Run(Telemetry telemetry, int id, String instance, String solver, double target) {
+			this.telemetry = telemetry;
+			this.id = id;
+			this.instance = instance;
+			this.solver = solver;
+			this.target = target;
+		}
+
+		public void solution(double objective, double bound, double wallTime, double deterministicTime, long conflicts, long branches, String worker) {
+			telemetry.push(SOLUTION, id, objective, bound, wallTime, deterministicTime, conflicts, branches, worker);
+		}
+
+		/* unlike solutions the end of a run is never dropped, it waits for room in the buffer */
+		public void end(double objective, double bound, double wallTime) {
+			while (!telemetry.push(END, id, objective, bound, wallTime, 0, 0, 0, null))
+				LockSupport.parkNanos(1_000_000L);
+		}
+	}
+
+	// ring buffer columns, slot = sequence & mask
+	private final int mask = CAPACITY - 1;
+	private final int[] kind = new int[CAPACITY];
+	private final int[] run = new int[CAPACITY];
+	private final double[] objective = new double[CAPACITY];
+	private final double[] bound = new double[CAPACITY];
+	private final double[] wallTime = new double[CAPACITY];
+	private final double[] detTime = new double[CAPACITY];
+	private final long[] conflicts = new long[CAPACITY];
+	private final long[] branches = new long[CAPACITY];
+	private final String[] worker = new String[CAPACITY];
+	/* sequence + 1 of the event a slot holds once it is completely written */
+	private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+	private final AtomicLong head = new AtomicLong();
+	private volatile long tail;
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final PrintWriter events;
+	private final PrintWriter summary;
+	private final Thread writer;
+	private volatile boolean closed;
+	private Run[] runs = new Run[16];
+	private int nRuns;
+
+	// convergence state of the runs being drained, only touched by the writer thread
+	private double[][] times = new double[16][];
+	private double[][] values = new double[16][];
+	private int[] counts = new int[16];
+
+	/* Telemetry of a directory run when the telemetry option is on, otherwise null. */
+	public static Telemetry open(String outFile) throws IOException {
+		if (!Main.option("telemetry", "false").equals("true"))
+			return null;
+		String base = Main.RESULTS_PATH + outFile.substring(0, outFile.length() - 4);
+		return new Telemetry(base + "_telemetry.jsonl", base + "_telemetry.csv");
+	}
+
+	public Telemetry(String eventsFile, String summaryFile) throws IOException {
+		events = new PrintWriter(new OutputStreamWriter(new FileOutputStream(eventsFile, true), "UTF-8"));
+		summary = new PrintWriter(new OutputStreamWriter(new FileOutputStream(summaryFile, true), "UTF-8"));
+		writer = new Thread(this::drainLoop, "telemetry-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/* Reference value of an instance: target option, known optimum, or NaN for the final bound. */
+	public static double target(int dataset_id) {
+		String target = Main.option("target", null);
+		if (target != null)
+			return Double.parseDouble(target);
+		return dataset_id == 1 ? INFO.KNOWN_OPTIMUM : Double.NaN;
+	}
+
+	public synchronized Run begin(String instance, String solver, double target) {
+		if (nRuns == runs.length)
+			runs = Arrays.copyOf(runs, 2 * nRuns);
+		Run r = new Run(this, nRuns, instance, solver, target);
+		runs[nRuns++] = r;
+		return r;
+	}
+
+	private synchronized Run run(int id) {
+		return runs[id];
+	}
+
+	boolean push(int k, int r, double obj, double bnd, double wall, double det, long nConflicts, long nBranches, String w) {
+		long seq;
+		do {
+			seq = head.get();
+			if (seq - tail >= CAPACITY) {
+				if (k == SOLUTION)
+					dropped.incrementAndGet();
+				return false;
+			}
+		} while (!head.compareAndSet(seq, seq + 1));
+		int slot = (int) (seq & mask);
+		kind[slot] = k;
+		run[slot] = r;
+		objective[slot] = obj;
+		bound[slot] = bnd;
+		wallTime[slot] = wall;
+		detTime[slot] = det;
+		conflicts[slot] = nConflicts;
+		branches[slot] = nBranches;
+		worker[slot] = w;
+		published.lazySet(slot, seq + 1);
+		return true;
+	}
+
+	private void drainLoop() {
+		while (true) {
+			boolean wasClosed = closed;
+			if (drain() == 0) {
+				if (wasClosed)
+					break;
+				LockSupport.parkNanos(10_000_000L);
+			}
+		}
+		events.flush();
+		summary.flush();
+	}
+
+	private int drain() {
+		int n = 0;
+		long t = tail;
+		while (true) {
+			int slot = (int) (t & mask);
+			if (published.get(slot) != t + 1)
+				break;
+			consume(slot);
+			worker[slot] = null;
+			t++;
+			tail = t;
+			n++;
+		}
+		if (n > 0)
+			events.flush();
+		return n;
+	}
+
+	private void consume(int slot) {
+		Run r = run(run[slot]);
+		if (kind[slot] == SOLUTION) {
+			events.println("{\"instance\":" + json(r.instance) + ",\"solver\":" + json(r.solver) + ",\"t\":" + wallTime[slot]
+					+ ",\"dt\":" + (Double.isNaN(detTime[slot]) ? "null" : detTime[slot]) + ",\"obj\":" + objective[slot] + ",\"bound\":" + bound[slot]
+					+ ",\"conflicts\":" + conflicts[slot] + ",\"branches\":" + branches[slot]
+					+ ",\"worker\":" + json(worker[slot]) + "}");
+			record(r.id, wallTime[slot], objective[slot]);
+		} else {
+			double reference = Double.isNaN(r.target) ? bound[slot] : r.target;
+			summary.println(r.instance + ";" + r.solver + ";" + reference + ";" + objective[slot] + ";" + wallTime[slot]
+					+ ";" + firstTime(r.id, Double.POSITIVE_INFINITY, reference) + ";" + firstTime(r.id, 0.05, reference)
+					+ ";" + firstTime(r.id, 0.01, reference) + ";" + primalIntegral(r.id, reference, wallTime[slot])
+					+ ";" + dropped.get());
+			summary.flush();
+			if (r.id < counts.length) {
+				times[r.id] = null;
+				values[r.id] = null;
+				counts[r.id] = 0;
+			}
+		}
+	}
+
+	/* JSON string literal of s, null when s is null */
+	static String json(String s) {
+		if (s == null)
+			return "null";
+		StringBuilder b = new StringBuilder(s.length() + 2).append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				b.append('\\').append(c);
+			else if (c < 0x20)
+				b.append(String.format("\\u%04x", (int) c));
+			else
+				b.append(c);
+		}
+		return b.append('"').toString();
+	}
+
+	private void record(int id, double time, double value) {
+		if (id >= times.length) {
+			times = Arrays.copyOf(times, 2 * id);
+			values = Arrays.copyOf(values, 2 * id);
+			counts = Arrays.copyOf(counts, 2 * id);
+		}
+		if (times[id] == null) {
+			times[id] = new double[16];
+			values[id] = new double[16];
+		}
+		int n = counts[id];
+		if (n == times[id].length) {
+			times[id] = Arrays.copyOf(times[id], 2 * n);
+			values[id] = Arrays.copyOf(values[id], 2 * n);
+		}
+		times[id][n] = time;
+		values[id][n] = value;
+		counts[id] = n + 1;
+	}
+
+	static double gap(double value, double reference) {
+		double denominator = Math.max(Math.abs(value), Math.abs(reference));
+		return denominator == 0 ? 0 : Math.abs(value - reference) / denominator;
+	}
+
+	/* first time the incumbent was within the given relative gap of reference, -1 if never */
+	private double firstTime(int id, double within, double reference) {
+		for (int k = 0; id < counts.length && k < counts[id]; k++)
+			if (gap(values[id][k], reference) <= within)
+				return times[id][k];
+		return -1;
+	}
+
+	/* integral over [0, end] of the primal gap, which is 1 until the first solution */
+	private double primalIntegral(int id, double reference, double end) {
+		double integral = 0;
+		double previousTime = 0;
+		double previousGap = 1;
+		for (int k = 0; id < counts.length && k < counts[id]; k++) {
+			integral += previousGap * (times[id][k] - previousTime);
+			previousTime = times[id][k];
+			previousGap = gap(values[id][k], reference);
+		}
+		return integral + previousGap * Math.max(0, end - previousTime);
+	}
+
+	/* Waits for the writer to drain everything pushed so far. */
+	public void close() throws InterruptedException {
+		closed = true;
+		writer.join();
+		events.close();
+		summary.close();
+	}
+}